@@ -0,0 +1,389 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * A small HTTP server on the loopback address that analyzes positions for web front-ends and
+ * answers in JSON:
+ *
+ *   GET /analyze?fen=W:W21,22:B1,K14&amp;depth=8   (or POST /analyze with the FEN as the body)
+ *     {"position":"...","turn":"red","result":"ONGOING","moves":["22-17",...],
+ *      "mustJump":false,"jumpers":[],"evaluation":-100,"depth":8,"bestMove":"22-17",
+ *      "score":-85,"pv":["22-17",...],"nodes":1234}
+ *   GET /stats
+ *     {"requests":...,"hits":...,"coalesced":...,"computed":...,"cached":...}
+ *
+ * The FEN may end with ":J" and the square of a checker in the middle of a multi-jump (see
+ * PackedPosition.toText); the moves are then the jumps that checker can go on with. The
+ * scores are for the side to move in hundredths of a man. Errors are answered with a 4xx
+ * status and {"error":"..."}.
+ *
+ * Popular positions are asked for over and over, so every analysis goes into an LRU cache
+ * of a fixed number of entries, keyed by the PackedPosition encoding and the depth. Requests
+ * for a position that is being analyzed don't start another search: they wait for the
+ * running one and get its answer. Every handler thread has its own Search
+ *
+ * Usage: java AnalysisServer [port] [threads] [cache entries]
+ */
+public class AnalysisServer {
+
+	//Constants
+	public static final int DEFAULT_PORT = 5151, DEFAULT_DEPTH = 8, MAX_DEPTH = 20, DEFAULT_CACHE = 100_000;
+	private static final int BODY_LIMIT = 4096;
+
+	//Fields
+	private final HttpServer server;
+	private final ExecutorService executor;
+	private final Map<Key, String> cache;
+	private final ConcurrentHashMap<Key, CompletableFuture<String>> running = new ConcurrentHashMap<Key, CompletableFuture<String>>();
+	private final Evaluator evaluator = new Evaluator();
+	private final ThreadLocal<Search> searches = ThreadLocal.withInitial(() -> new Search(evaluator, new TranspositionTable(8)));
+	private final LongAdder requests = new LongAdder(), hits = new LongAdder(), coalesced = new LongAdder(),
+			computed = new LongAdder();
+
+	/**
+	 * The cache key of an analysis: the packed position and the depth
+	 */
+	private static final class Key {
+
+		private final long low;
+		private final int high, depth;
+
+		/**
+		 * Constructs a key
+		 * @param p the position
+		 * @param jumpSquare the square of the checker in the middle of a multi-jump, or NO_JUMP
+		 * @param depth the search depth
+		 */
+		Key(Position p, int jumpSquare, int depth) {
+			ByteBuffer packed = ByteBuffer.wrap(PackedPosition.encode(p, jumpSquare));
+			low = packed.getLong();
+			high = (packed.getShort() & 0xFFFF) | (packed.get() & 0xFF) << 16;
+			this.depth = depth;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Key)) return false;
+			Key k = (Key) o;
+			return low == k.low && high == k.high && depth == k.depth;
+		}
+
+		@Override
+		public int hashCode() {
+			return Long.hashCode(low * 0x9E3779B97F4A7C15L) ^ high * 31 ^ depth;
+		}
+	}
+
+	/**
+	 * Constructs a server listening on the loopback address
+	 * @param port the port, 0 for any free port
+	 * @param threads the number of handler threads
+	 * @param cacheEntries the most analyses kept in the cache
+	 * @throws IOException if the port can't be opened
+	 */
+	public AnalysisServer(int port, int threads, final int cacheEntries) throws IOException {
+		cache = Collections.synchronizedMap(new LinkedHashMap<Key, String>(1024, 0.75f, true) {
+			protected boolean removeEldestEntry(Map.Entry<Key, String> eldest) {
+				return size() > cacheEntries;
+			}
+		});
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 1024);
+		executor = Executors.newFixedThreadPool(threads);
+		server.setExecutor(executor);
+		server.createContext("/analyze", this::handleAnalyze);
+		server.createContext("/stats", this::handleStats);
+	}
+
+	/**
+	 * Starts answering requests on the handler threads
+	 */
+	public void start() {
+		server.start();
+	}
+
+	/**
+	 * Stops the server
+	 */
+	public void stop() {
+		server.stop(0);
+		executor.shutdown();
+	}
+
+	/**
+	 * Gets the port the server listens on
+	 * @return the port
+	 */
+	public int getPort() {
+		return server.getAddress().getPort();
+	}
+
+	/**
+	 * Answers an analysis request
+	 * @param exchange the request and response
+	 * @throws IOException if the response can't be sent
+	 */
+	private void handleAnalyze(HttpExchange exchange) throws IOException {
+		requests.increment();
+		try {
+			Map<String, String> params = parseQuery(exchange.getRequestURI().getRawQuery());
+			String fen = params.get("fen");
+			if (exchange.getRequestMethod().equals("POST")) fen = readBody(exchange.getRequestBody());
+			else if (!exchange.getRequestMethod().equals("GET")) {
+				send(exchange, 405, error("use GET or POST"));
+				return;
+			}
+			if (fen == null || fen.trim().isEmpty()) {
+				send(exchange, 400, error("missing fen"));
+				return;
+			}
+			int depth = DEFAULT_DEPTH;
+			if (params.containsKey("depth")) depth = Integer.parseInt(params.get("depth"));
+			if (depth < 1 || depth > MAX_DEPTH) {
+				send(exchange, 400, error("depth must be from 1 to " + MAX_DEPTH));
+				return;
+			}
+			Position p = new Position();
+			int jumpSquare;
+			try {
+				jumpSquare = PackedPosition.fromText(fen, p);
+			}
+			catch (RuntimeException e) {
+				send(exchange, 400, error("bad position"));
+				return;
+			}
+			send(exchange, 200, lookup(p, jumpSquare, depth));
+		}
+		catch (NumberFormatException e) {
+			send(exchange, 400, error("bad depth"));
+		}
+		catch (IllegalArgumentException e) {
+			send(exchange, 400, error(e.getMessage()));
+		}
+		catch (InterruptedException | ExecutionException | RuntimeException e) {
+			send(exchange, 500, error(e.toString()));
+		}
+	}
+
+	/**
+	 * Answers a request for the cache statistics
+	 * @param exchange the request and response
+	 * @throws IOException if the response can't be sent
+	 */
+	private void handleStats(HttpExchange exchange) throws IOException {
+		send(exchange, 200, "{\"requests\":" + requests.sum() + ",\"hits\":" + hits.sum() + ",\"coalesced\":"
+				+ coalesced.sum() + ",\"computed\":" + computed.sum() + ",\"cached\":" + cache.size() + "}");
+	}
+
+	/**
+	 * Gets the analysis of a position from the cache, from the search already running on it,
+	 * or from a new search
+	 * @param p the position
+	 * @param jumpSquare the square of the checker in the middle of a multi-jump, or NO_JUMP
+	 * @param depth the search depth
+	 * @return the analysis as JSON
+	 * @throws InterruptedException if interrupted while waiting for another request's search
+	 * @throws ExecutionException if another request's search failed
+	 */
+	String lookup(Position p, int jumpSquare, int depth) throws InterruptedException, ExecutionException {
+		Key key = new Key(p, jumpSquare, depth);
+		String json = cache.get(key);
+		if (json != null) {
+			hits.increment();
+			return json;
+		}
+		CompletableFuture<String> mine = new CompletableFuture<String>();
+		CompletableFuture<String> other = running.putIfAbsent(key, mine);
+		if (other != null) {
+			coalesced.increment();
+			return other.get();
+		}
+		try {
+			//The search that was running may have finished between the cache miss and now
+			json = cache.get(key);
+			if (json == null) {
+				json = analyze(p, jumpSquare, depth);
+				computed.increment();
+				cache.put(key, json);
+			}
+			mine.complete(json);
+			return json;
+		}
+		catch (RuntimeException e) {
+			mine.completeExceptionally(e);
+			throw e;
+		}
+		finally {
+			//Removed only once the answer is in the cache, so later requests find one or the other
+			running.remove(key, mine);
+		}
+	}
+
+	/**
+	 * Analyzes a position
+	 * @param p the position
+	 * @param jumpSquare the square of the checker in the middle of a multi-jump, or NO_JUMP
+	 * @param depth the search depth
+	 * @return the analysis as JSON
+	 */
+	String analyze(Position p, int jumpSquare, int depth) {
+		long[] moves = new long[Position.MAX_MOVES];
+		int n = PackedPosition.generateMoves(p, jumpSquare, moves);
+		boolean black = p.isBlackToMove();
+		StringBuilder sb = new StringBuilder("{\"position\":").append(quote(PackedPosition.toText(p, jumpSquare)));
+		sb.append(",\"turn\":\"").append(black ? "black" : "red").append('"');
+		sb.append(",\"result\":\"").append(GameServer.RESULTS[n > 0 ? GameState.ONGOING : black ? GameState.RED_WIN : GameState.BLACK_WIN]).append('"');
+		sb.append(",\"moves\":[");
+		for (int i = 0; i < n; i++) sb.append(i > 0 ? "," : "").append(quote(Move.toPathString(moves[i], p)));
+		int jumpers = jumpSquare == PackedPosition.NO_JUMP ? p.capturers(black) : 1 << jumpSquare;
+		sb.append("],\"mustJump\":").append(n > 0 && Move.isCapture(moves[0])).append(",\"jumpers\":[");
+		for (int b = jumpers, i = 0; b != 0; b &= b - 1, i++) sb.append(i > 0 ? "," : "").append(Integer.numberOfTrailingZeros(b) + 1);
+		Search search = searches.get();
+		sb.append("],\"evaluation\":").append(evaluator.evaluate(p)).append(",\"depth\":").append(depth);
+		if (n == 0) return sb.append(",\"bestMove\":null,\"score\":").append(-Search.WIN).append(",\"pv\":[],\"nodes\":0}").toString();
+		long best;
+		int score;
+		long[] line;
+		long nodes = 0;
+		if (jumpSquare == PackedPosition.NO_JUMP) {
+			best = search.search(p, Long.MAX_VALUE, depth);
+			score = search.getScore();
+			line = search.getPrincipalVariation();
+			nodes = search.getNodes();
+		}
+		else {
+			//The search only knows whole moves, so every jump the checker can go on with is searched one ply less
+			best = 0;
+			score = -Search.WIN - 1;
+			line = new long[0];
+			Position child = new Position();
+			for (int i = 0; i < n; i++) {
+				child.copyFrom(p);
+				child.makeMove(moves[i]);
+				int value = Search.WIN - 1;
+				long[] rest = new long[0];
+				if (child.hasMoves()) {
+					search.search(child, Long.MAX_VALUE, Math.max(depth - 1, 1));
+					value = -search.getScore();
+					rest = search.getPrincipalVariation();
+					nodes += search.getNodes();
+				}
+				if (value <= score) continue;
+				best = moves[i];
+				score = value;
+				line = new long[rest.length + 1];
+				line[0] = best;
+				System.arraycopy(rest, 0, line, 1, rest.length);
+			}
+		}
+		sb.append(",\"bestMove\":").append(quote(Move.toPathString(best, p))).append(",\"score\":").append(score).append(",\"pv\":[");
+		//The line is played out on a copy, since a path needs the position its move starts from
+		Position q = new Position();
+		q.copyFrom(p);
+		for (int i = 0; i < line.length; i++) {
+			sb.append(i > 0 ? "," : "").append(quote(Move.toPathString(line[i], q)));
+			q.makeMove(line[i]);
+		}
+		return sb.append("],\"nodes\":").append(nodes).append('}').toString();
+	}
+
+	/**
+	 * Splits a URL query into its decoded parameters
+	 * @param query the raw query, or null
+	 * @return the parameters by name
+	 */
+	static Map<String, String> parseQuery(String query) {
+		Map<String, String> params = new HashMap<String, String>();
+		if (query == null) return params;
+		for (String pair : query.split("&")) {
+			int eq = pair.indexOf('=');
+			if (eq < 0) continue;
+			params.put(URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8),
+					URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+		}
+		return params;
+	}
+
+	/**
+	 * Reads a short request body
+	 * @param in the body
+	 * @return the text of the body
+	 * @throws IOException if the body can't be read
+	 * @throws IllegalArgumentException if the body is too long
+	 */
+	private static String readBody(InputStream in) throws IOException {
+		byte[] body = in.readNBytes(BODY_LIMIT + 1);
+		if (body.length > BODY_LIMIT) throw new IllegalArgumentException("Request body too long");
+		return new String(body, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Formats a string as a JSON string literal
+	 * @param s the string
+	 * @return the quoted and escaped string
+	 */
+	static String quote(String s) {
+		StringBuilder sb = new StringBuilder(s.length() + 2).append('"');
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (c == '"' || c == '\\') sb.append('\\').append(c);
+			else if (c < ' ') sb.append(String.format("\\u%04x", (int) c));
+			else sb.append(c);
+		}
+		return sb.append('"').toString();
+	}
+
+	/**
+	 * Formats an error as JSON
+	 * @param message the message
+	 * @return the JSON object
+	 */
+	private static String error(String message) {
+		return "{\"error\":" + quote(message) + "}";
+	}
+
+	/**
+	 * Sends a JSON response and closes the exchange
+	 * @param exchange the request and response
+	 * @param status the HTTP status
+	 * @param json the body
+	 * @throws IOException if the response can't be sent
+	 */
+	private static void send(HttpExchange exchange, int status, String json) throws IOException {
+		byte[] body = json.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+		exchange.sendResponseHeaders(status, body.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(body);
+		}
+	}
+
+	//Main method
+	public static void main(String[] args) throws IOException {
+		int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+		int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+		int entries = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_CACHE;
+		AnalysisServer server = new AnalysisServer(port, threads, entries);
+		server.start();
+		System.out.println("Analyzing positions on http://localhost:" + server.getPort() + "/analyze with " + threads
+				+ " threads and " + entries + " cache entries");
+	}
+}
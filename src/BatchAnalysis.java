@@ -0,0 +1,219 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A command line tool that analyzes a file of positions, one FEN per line (anything after a
+ * ';' is ignored, so SelfPlay training data can be read as it is), with a fixed-depth search
+ * on every core. Every input line gives one output line, in input order:
+ *
+ *   fen;score;best move;number of legal moves
+ *
+ * where the score is for the side to move and the best move is "-" if there is none; a line
+ * that isn't a position gives "line;ERR message". Lines are read in chunks that are searched
+ * on a work-stealing pool, and only a fixed number of chunks are read ahead of the output,
+ * so any number of positions can be streamed through in constant memory.
+ *
+ * Every thread keeps its transposition table from one position to the next, which is
+ * faster but lets the scores depend on which thread searched what before; -reproducible
+ * clears the table before every position, so the output is the same for any thread count
+ *
+ * Usage: java BatchAnalysis [-depth D] [-threads T] [-table MB] [-chunk N] [-window W]
+ *                           [-reproducible] [-out file] [file]
+ * where the positions are read from the standard input if no file is given
+ */
+public class BatchAnalysis {
+
+	//Constants
+	private static final ForkJoinTask<String> SENTINEL = ForkJoinTask.adapt(() -> "");
+
+	//Fields
+	private final int depth, chunk, tableMegabytes;
+	private final boolean reproducible;
+	private final ForkJoinPool pool;
+	private final BlockingQueue<ForkJoinTask<String>> window;
+	private final ThreadLocal<Search> searches;
+	private final AtomicLong nodes = new AtomicLong();
+	private long positions;
+	private volatile Exception failure;
+
+	/**
+	 * Constructs an analysis run
+	 * @param depth the search depth in plies
+	 * @param threads the number of threads
+	 * @param tableMegabytes the size of the transposition table of every thread
+	 * @param chunk the number of lines searched as one task
+	 * @param window the number of chunks read ahead of the output
+	 * @param reproducible true to clear the transposition table before every position
+	 */
+	public BatchAnalysis(int depth, int threads, int tableMegabytes, int chunk, int window, boolean reproducible) {
+		this.depth = depth;
+		this.reproducible = reproducible;
+		this.chunk = chunk;
+		this.tableMegabytes = tableMegabytes;
+		this.pool = new ForkJoinPool(threads);
+		this.window = new ArrayBlockingQueue<ForkJoinTask<String>>(window);
+		this.searches = ThreadLocal.withInitial(() -> new Search(new Evaluator(), new TranspositionTable(this.tableMegabytes)));
+	}
+
+	/**
+	 * Analyzes every line of the input
+	 * @param in the positions
+	 * @param out where to write the results
+	 * @throws IOException if the input can't be read or the output can't be written
+	 */
+	public void run(BufferedReader in, Writer out) throws IOException {
+		//The output is written by its own thread while this one reads and submits chunks. After
+		//a failure the writer still takes the chunks, so the reader is never left waiting
+		Thread writer = new Thread(() -> {
+			try {
+				for (ForkJoinTask<String> task = window.take(); task != SENTINEL; task = window.take()) {
+					if (failure == null) {
+						try {
+							out.write(task.join());
+						}
+						catch (IOException | RuntimeException e) {
+							failure = e;
+						}
+					}
+				}
+				if (failure == null) out.flush();
+			}
+			catch (IOException e) {
+				failure = e;
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}, "BatchAnalysis-writer");
+		writer.start();
+		try {
+			String[] lines = new String[chunk];
+			int n = 0;
+			for (String line = in.readLine(); line != null && failure == null; line = in.readLine()) {
+				lines[n++] = line;
+				positions++;
+				if (n == chunk) {
+					submit(lines, n);
+					lines = new String[chunk];
+					n = 0;
+				}
+			}
+			if (n > 0) submit(lines, n);
+			window.put(SENTINEL);
+			writer.join();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		finally {
+			pool.shutdown();
+		}
+		if (failure instanceof IOException) throw (IOException) failure;
+		if (failure != null) throw new IllegalStateException(failure);
+	}
+
+	/**
+	 * Submits a chunk of lines, waiting while the output is a full window behind
+	 * @param lines the lines
+	 * @param n the number of lines
+	 * @throws InterruptedException if the thread is interrupted while waiting
+	 */
+	private void submit(String[] lines, int n) throws InterruptedException {
+		window.put(pool.submit(() -> analyze(lines, n)));
+	}
+
+	/**
+	 * Analyzes a chunk of lines
+	 * @param lines the lines
+	 * @param n the number of lines
+	 * @return the result lines
+	 */
+	private String analyze(String[] lines, int n) {
+		Search search = searches.get();
+		Position p = new Position();
+		long[] moves = new long[Position.MAX_MOVES];
+		StringBuilder sb = new StringBuilder(n * 96);
+		for (int i = 0; i < n; i++) {
+			String line = lines[i], fen = line;
+			int end = line.indexOf(';');
+			if (end >= 0) fen = line.substring(0, end);
+			fen = fen.trim();
+			try {
+				p.copyFrom(Position.fromFen(fen));
+			}
+			catch (RuntimeException e) {
+				sb.append(line).append(";ERR ").append(e.getMessage()).append('\n');
+				continue;
+			}
+			int legal = p.generateMoves(moves);
+			if (reproducible) search.getTable().clear();
+			long best = legal == 0 ? 0 : search.search(p, Long.MAX_VALUE, depth);
+			int score = legal == 0 ? -Search.WIN : search.getScore();
+			nodes.addAndGet(search.getNodes());
+			sb.append(fen).append(';').append(score).append(';')
+				.append(best == 0 ? "-" : Move.toPathString(best, p)).append(';').append(legal).append('\n');
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Gets the number of lines read
+	 * @return the number of lines
+	 */
+	public long getPositions() {
+		return positions;
+	}
+
+	/**
+	 * Gets the number of nodes searched
+	 * @return the number of nodes
+	 */
+	public long getNodes() {
+		return nodes.get();
+	}
+
+	//Main method
+	public static void main(String[] args) throws IOException {
+		int depth = 8, threads = Runtime.getRuntime().availableProcessors(), table = 4, chunk = 256, window = 0;
+		String input = null, output = null;
+		boolean reproducible = false;
+		for (int i = 0; i < args.length; i++) {
+			switch (args[i]) {
+			case "-depth": depth = Integer.parseInt(args[++i]); break;
+			case "-threads": threads = Integer.parseInt(args[++i]); break;
+			case "-table": table = Integer.parseInt(args[++i]); break;
+			case "-chunk": chunk = Integer.parseInt(args[++i]); break;
+			case "-window": window = Integer.parseInt(args[++i]); break;
+			case "-reproducible": reproducible = true; break;
+			case "-out": output = args[++i]; break;
+			default:
+				if (args[i].startsWith("-") || input != null) throw new IllegalArgumentException("Unknown option: " + args[i]);
+				input = args[i];
+			}
+		}
+		//By default a few chunks per thread, enough to keep every thread busy
+		if (window <= 0) window = 4 * threads;
+		Reader reader = input == null ? new InputStreamReader(System.in) : new FileReader(input);
+		Writer writer = output == null ? new OutputStreamWriter(System.out) : new FileWriter(output);
+		BatchAnalysis analysis = new BatchAnalysis(depth, threads, table, chunk, window, reproducible);
+		long start = System.nanoTime();
+		try (BufferedReader in = new BufferedReader(reader, 1 << 16); Writer out = new BufferedWriter(writer, 1 << 16)) {
+			analysis.run(in, out);
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+		System.err.printf("%d positions in %.2f s (%.0f positions/s, %.0f nodes/s) at depth %d on %d threads%n",
+				analysis.getPositions(), seconds, analysis.getPositions() / seconds, analysis.getNodes() / seconds, depth, threads);
+	}
+}
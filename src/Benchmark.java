@@ -0,0 +1,288 @@
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * A class that benchmarks the rules hot path: move generation, the jump search and capture path listing, capture detection
+ * (Position.capturers and CheckerBoard.captureable), full CheckerBoard.setCheckersState
+ * refreshes, perft, international draughts move generation and perft, and board drawing. Every benchmark runs warm-up rounds before the measured rounds and
+ * the results can be appended to a CSV file so the numbers can be tracked per commit
+ *
+ * Usage: java -Djava.awt.headless=true Benchmark [label] [csv file]
+ */
+public class Benchmark {
+
+	//Constants
+	private static final int POSITIONS = 4096, WARMUP_ROUNDS = 5, MEASURED_ROUNDS = 10;
+	private static final long ROUND_NANOS = 200_000_000L;
+
+	/**
+	 * A piece of work that is timed by the benchmark
+	 */
+	interface Task {
+		/**
+		 * Runs the work once over every sample position
+		 * @return a value that depends on the work so it can't be optimized away
+		 */
+		long run();
+	}
+
+	//Fields
+	private final Position[] positions;
+	private final List<String> results = new ArrayList<String>();
+	private long sink;
+
+	/**
+	 * Constructs a benchmark over positions sampled from random games
+	 * @param seed the random seed for the sample games
+	 */
+	public Benchmark(long seed) {
+		positions = samplePositions(POSITIONS, new Random(seed));
+	}
+
+	/**
+	 * Plays random games from the initial position and keeps the positions reached
+	 * @param count the number of positions to keep
+	 * @param random the random number generator
+	 * @return the sampled positions
+	 */
+	static Position[] samplePositions(int count, Random random) {
+		Position[] sample = new Position[count];
+		long[] moves = new long[Position.MAX_MOVES];
+		Position p = new Position();
+		for (int i = 0; i < count; i++) {
+			int n = p.generateMoves(moves);
+			if (n == 0) {
+				p = new Position();
+				n = p.generateMoves(moves);
+			}
+			p.makeMove(moves[random.nextInt(n)]);
+			sample[i] = new Position(p);
+		}
+		return sample;
+	}
+
+	/**
+	 * Plays random games of a draughts variant and keeps the positions reached
+	 * @param variant the variant
+	 * @param count the number of positions to keep
+	 * @param random the random number generator
+	 * @return the sampled positions
+	 */
+	static DraughtsPosition[] sampleDraughts(Variant variant, int count, Random random) {
+		DraughtsPosition[] sample = new DraughtsPosition[count];
+		DraughtsMoves moves = new DraughtsMoves();
+		DraughtsPosition p = new DraughtsPosition(variant);
+		for (int i = 0; i < count; i++) {
+			int n = p.generateMoves(moves);
+			if (n == 0) {
+				p = new DraughtsPosition(variant);
+				n = p.generateMoves(moves);
+			}
+			p.makeMove(moves, random.nextInt(n));
+			sample[i] = new DraughtsPosition(p);
+		}
+		return sample;
+	}
+
+	/**
+	 * Times a task and records the operations per second
+	 * @param name the name of the benchmark
+	 * @param opsPerRun the number of operations done by one run of the task
+	 * @param task the task to time
+	 */
+	void measure(String name, long opsPerRun, Task task) {
+		double best = 0, total = 0;
+		for (int round = 0; round < WARMUP_ROUNDS + MEASURED_ROUNDS; round++) {
+			long ops = 0, start = System.nanoTime(), elapsed;
+			do {
+				sink += task.run();
+				ops += opsPerRun;
+				elapsed = System.nanoTime() - start;
+			} while (elapsed < ROUND_NANOS);
+			if (round < WARMUP_ROUNDS) continue;
+			double rate = ops * 1e9 / elapsed;
+			total += rate;
+			best = Math.max(best, rate);
+		}
+		double mean = total / MEASURED_ROUNDS;
+		System.out.printf("%-28s %,16.0f ops/s (best %,.0f)%n", name, mean, best);
+		results.add(name + "," + (long) mean + "," + (long) best);
+	}
+
+	/**
+	 * Runs every benchmark
+	 */
+	public void runAll() {
+		final long[] moves = new long[Position.MAX_MOVES];
+		measure("generateMoves", positions.length, new Task() {
+			public long run() {
+				long n = 0;
+				for (Position p : positions) n += p.generateMoves(moves);
+				return n;
+			}
+		});
+		//The jump search alone, over the sampled positions where the side to move must capture
+		List<Position> jumping = new ArrayList<Position>();
+		for (Position p : positions)
+			if (p.capturers(p.isBlackToMove()) != 0) jumping.add(p);
+		final Position[] captures = jumping.toArray(new Position[0]);
+		measure("generateCaptures", captures.length, new Task() {
+			public long run() {
+				long n = 0;
+				for (Position p : captures) n += p.generateCaptures(moves);
+				return n;
+			}
+		});
+		final CaptureEnumerator enumerator = new CaptureEnumerator();
+		measure("CaptureEnumerator.generate", captures.length, new Task() {
+			public long run() {
+				long n = 0;
+				for (Position p : captures) n += enumerator.generate(p);
+				return n;
+			}
+		});
+		measure("capturers", positions.length * 2L, new Task() {
+			public long run() {
+				long n = 0;
+				for (Position p : positions) n += p.capturers(true) ^ p.capturers(false);
+				return n;
+			}
+		});
+		measure("makeUnmake", positions.length, new Task() {
+			public long run() {
+				long n = 0;
+				for (Position p : positions) {
+					if (p.generateMoves(moves) == 0) continue;
+					p.makeMove(moves[0]);
+					n += p.getBlack();
+					p.unmakeMove(moves[0]);
+				}
+				return n;
+			}
+		});
+		final Perft perft = new Perft(7);
+		final long perftNodes = Perft.INITIAL_TOTALS[7];
+		measure("perft(7) nodes", perftNodes, new Task() {
+			public long run() {
+				return perft.perft(new Position(), 7);
+			}
+		});
+
+		//International draughts on 10x10: flying kings, backward captures and the maximum-capture rule
+		final DraughtsPosition[] draughts = sampleDraughts(Variant.INTERNATIONAL, positions.length, new Random(2));
+		final DraughtsMoves draughtsMoves = new DraughtsMoves();
+		measure("draughts generateMoves", draughts.length, new Task() {
+			public long run() {
+				long n = 0;
+				for (DraughtsPosition p : draughts) n += p.generateMoves(draughtsMoves);
+				return n;
+			}
+		});
+		final DraughtsPosition[] stack = new DraughtsPosition[7];
+		final DraughtsMoves[] lists = new DraughtsMoves[7];
+		for (int i = 0; i < stack.length; i++) {
+			stack[i] = new DraughtsPosition(Variant.INTERNATIONAL);
+			lists[i] = new DraughtsMoves();
+		}
+		measure("draughts perft(6) nodes", 167140, new Task() {
+			public long run() {
+				return stack[0].perft(6, stack, lists, 0);
+			}
+		});
+
+		//Walking what-if lines: eight random moves forward, then all of them back
+		final MoveJournal journal = new MoveJournal();
+		final long[] line = new long[Position.MAX_MOVES];
+		final Random random = new Random(1);
+		measure("MoveJournal play+undo", positions.length * 8L, new Task() {
+			public long run() {
+				long n = 0;
+				for (Position p : positions) {
+					for (int i = 0; i < 8; i++) {
+						int count = p.generateMoves(line);
+						if (count == 0) break;
+						journal.play(p, line[random.nextInt(count)]);
+					}
+					while (journal.canUndo()) n += journal.undo(p);
+				}
+				return n;
+			}
+		});
+
+		final CheckerBoard[] boards = new CheckerBoard[64];
+		for (int i = 0; i < boards.length; i++) {
+			boards[i] = new CheckerBoard(new Position().toBoardStatus());
+			boards[i].setPosition(positions[i * (positions.length / boards.length)]);
+		}
+		measure("CheckerBoard.captureable", boards.length * 64L, new Task() {
+			public long run() {
+				long n = 0;
+				for (CheckerBoard cb : boards)
+					for (int i = 0; i < 8; i++)
+						for (int j = 0; j < 8; j++)
+							if (cb.captureable(i, j)) n++;
+				return n;
+			}
+		});
+		measure("CheckerBoard.setCheckersState", boards.length, new Task() {
+			public long run() {
+				long n = 0;
+				for (CheckerBoard cb : boards) {
+					cb.setCheckersState();
+					n += cb.getBlackCanCapture();
+				}
+				return n;
+			}
+		});
+
+		//Drawing a whole board, as a full repaint does, against drawing the squares a move changes
+		final BoardRenderer renderer = new BoardRenderer(CheckerBoard.DEFAULT_SIDE);
+		final BufferedImage image = new BufferedImage(8 * CheckerBoard.DEFAULT_SIDE, 8 * CheckerBoard.DEFAULT_SIDE,
+				BufferedImage.TYPE_INT_RGB);
+		final char[][] status = positions[0].toBoardStatus();
+		measure("BoardRenderer.paintBoard", 1, new Task() {
+			public long run() {
+				Graphics g = image.getGraphics();
+				renderer.paintBoard(g, status, 0, 0);
+				g.dispose();
+				return image.getRGB(1, 1);
+			}
+		});
+		measure("BoardRenderer.paintSquare x3", 1, new Task() {
+			public long run() {
+				Graphics g = image.getGraphics();
+				for (int i = 0; i < 3; i++)
+					renderer.paintSquare(g, 2 + i, 1 + i, status[2 + i][1 + i], (1 + i) * renderer.getSide(), (2 + i) * renderer.getSide());
+				g.dispose();
+				return image.getRGB(1, 1);
+			}
+		});
+	}
+
+	/**
+	 * Appends the results to a CSV file (label, benchmark, mean ops/s, best ops/s)
+	 * @param file the CSV file
+	 * @param label the label of the run, e.g. a commit id
+	 * @throws IOException if the file can't be written
+	 */
+	public void appendCsv(String file, String label) throws IOException {
+		try (PrintWriter out = new PrintWriter(new FileWriter(file, true))) {
+			for (String r : results) out.println(label + "," + r);
+		}
+	}
+
+	//Main method
+	public static void main(String[] args) throws IOException {
+		System.setProperty("java.awt.headless", "true");
+		Benchmark b = new Benchmark(20200430L);
+		b.runAll();
+		if (args.length > 1) b.appendCsv(args[1], args[0]);
+		if (b.sink == 42) System.out.println();
+	}
+}
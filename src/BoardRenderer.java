@@ -0,0 +1,102 @@
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+
+/**
+ * A class that draws checker squares at any size. Every kind of checker is drawn once per
+ * square size into a cached image, so painting a square is a fill and an image copy, and
+ * one renderer can be shared by every board on the screen of the same size
+ */
+public class BoardRenderer {
+
+	//Constants
+	public static final Color LIGHT = Color.WHITE, DARK = Color.GREEN;
+	private static final String PIECES = "brkq";
+
+	//Fields
+	private int side;
+	private BufferedImage[] images = new BufferedImage[PIECES.length()];
+
+	/**
+	 * Constructs a renderer for a square size
+	 * @param side the side of a square in pixels
+	 */
+	public BoardRenderer(int side) {
+		setSide(side);
+	}
+
+	/**
+	 * Gets the side of a square
+	 * @return the side in pixels
+	 */
+	public int getSide() {
+		return side;
+	}
+
+	/**
+	 * Sets the side of a square, drawing the checker images again if it changed
+	 * @param side the side in pixels
+	 */
+	public void setSide(int side) {
+		side = Math.max(side, 4);
+		if (side == this.side) return;
+		this.side = side;
+		for (int i = 0; i < images.length; i++) images[i] = renderPiece(PIECES.charAt(i));
+	}
+
+	/**
+	 * Draws a checker at the current size: a disk two thirds of the square, black or red,
+	 * with a yellow ring for a king
+	 * @param status the status of the square (b, r, k or q)
+	 * @return the image
+	 */
+	private BufferedImage renderPiece(char status) {
+		BufferedImage image = new BufferedImage(side, side, BufferedImage.TYPE_INT_ARGB);
+		Graphics2D g = image.createGraphics();
+		g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+		int margin = side / 6, diameter = side - 2 * margin;
+		g.setColor(status == 'b' || status == 'k' ? Color.BLACK : Color.RED);
+		g.fillOval(margin, margin, diameter, diameter);
+		boolean king = status == 'k' || status == 'q';
+		g.setColor(king ? Color.YELLOW : Color.BLACK);
+		g.setStroke(new BasicStroke(king ? Math.max(1f, side / 20f) : 1f));
+		g.drawOval(margin, margin, diameter, diameter);
+		g.dispose();
+		return image;
+	}
+
+	/**
+	 * Paints one square with its checker
+	 * @param g the graphics to paint on
+	 * @param row the row of the square
+	 * @param col the column of the square
+	 * @param status the status of the square (e, b, r, k or q)
+	 * @param x the left edge of the square
+	 * @param y the top edge of the square
+	 */
+	public void paintSquare(Graphics g, int row, int col, char status, int x, int y) {
+		g.setColor((row + col) % 2 == 0 ? LIGHT : DARK);
+		g.fillRect(x, y, side, side);
+		g.setColor(Color.BLACK);
+		g.drawLine(x, y, x + side - 1, y);
+		g.drawLine(x, y, x, y + side - 1);
+		int piece = PIECES.indexOf(status);
+		if (piece >= 0) g.drawImage(images[piece], x, y, null);
+	}
+
+	/**
+	 * Paints a whole board
+	 * @param g the graphics to paint on
+	 * @param boardStatus the status of every square by rows and columns
+	 * @param x the left edge of the board
+	 * @param y the top edge of the board
+	 */
+	public void paintBoard(Graphics g, char[][] boardStatus, int x, int y) {
+		for (int i = 0; i < boardStatus.length; i++)
+			for (int j = 0; j < boardStatus[i].length; j++)
+				paintSquare(g, i, j, boardStatus[i][j], x + j * side, y + i * side);
+	}
+}
@@ -0,0 +1,205 @@
+/**
+ * A class that lists every complete capture path of a position: the squares a capturing
+ * checker lands on, jump by jump, until it can't jump any more or is crowned (which ends
+ * the move). Unlike Position.generateCaptures, which keeps one packed move per result, the
+ * different paths a king can take to the same result are all listed, which is what a player
+ * or a PDN move with every landing square has to be matched against.
+ *
+ * The search walks the jumps with its own stack instead of recursion, and the paths are
+ * written into buffers that are kept from one call to the next, so once the buffers are
+ * large enough enumerating creates no garbage. An enumerator isn't thread safe; every
+ * thread needs its own
+ */
+public class CaptureEnumerator {
+
+	//Constants
+	public static final int MAX_JUMPS = 12;
+	private static final int PATH_LENGTH = MAX_JUMPS + 1;
+
+	//Fields
+	private long[] moves = new long[Position.MAX_MOVES];
+	private byte[] paths = new byte[Position.MAX_MOVES * PATH_LENGTH];
+	private byte[] lengths = new byte[Position.MAX_MOVES];
+	private int count;
+	//The search stack: the square, the checkers captured so far, the next direction to try and
+	//whether any jump was found, at every depth of the path
+	private final int[] stackSquare = new int[PATH_LENGTH], stackCaptured = new int[PATH_LENGTH];
+	private final int[] stackDir = new int[PATH_LENGTH];
+	private final boolean[] stackJumped = new boolean[PATH_LENGTH];
+
+	/**
+	 * Lists the capture paths of the side to move
+	 * @param p the position
+	 * @return the number of paths, 0 if the side to move can't capture
+	 */
+	public int generate(Position p) {
+		count = 0;
+		for (int c = p.capturers(p.isBlackToMove()); c != 0; c &= c - 1) follow(p, Integer.numberOfTrailingZeros(c));
+		return count;
+	}
+
+	/**
+	 * Lists the capture paths of one checker of the side to move, e.g. the checker in the
+	 * middle of a multi-jump
+	 * @param p the position
+	 * @param from the square of the checker
+	 * @return the number of paths, 0 if the checker can't capture
+	 */
+	public int generate(Position p, int from) {
+		count = 0;
+		int own = p.isBlackToMove() ? p.getBlack() : p.getRed();
+		if (from >= 0 && from < Position.SQUARES && (own & 1 << from) != 0) follow(p, from);
+		return count;
+	}
+
+	/**
+	 * Follows every jump sequence of one checker and records the complete ones
+	 * @param p the position
+	 * @param from the square of the checker
+	 */
+	private void follow(Position p, int from) {
+		boolean black = p.isBlackToMove(), king = (p.getKings() & 1 << from) != 0;
+		int opp = black ? p.getRed() : p.getBlack(), empty = p.getEmpty() | 1 << from;
+		int crowning = king ? 0 : black ? Position.BLACK_KING_ROW : Position.RED_KING_ROW;
+		//Black men jump down the board (directions 0 and 1), red men up (2 and 3), kings both ways
+		int first = king || black ? 0 : 2, last = king || !black ? Squares.DIRECTIONS : 2;
+		int depth = 0;
+		stackSquare[0] = from;
+		stackCaptured[0] = 0;
+		stackDir[0] = first;
+		stackJumped[0] = false;
+		while (depth >= 0) {
+			int dir = stackDir[depth];
+			if (dir == last) {
+				if (!stackJumped[depth] && depth > 0) record(p, depth, king, false);
+				depth--;
+				continue;
+			}
+			stackDir[depth] = dir + 1;
+			int i = Squares.index(dir, stackSquare[depth]), captured = stackCaptured[depth];
+			int over = Squares.NEIGHBOR[i] & opp & ~captured;
+			if (over == 0) continue;
+			int land = Squares.JUMP[i] & empty;
+			if (land == 0) continue;
+			stackJumped[depth] = true;
+			depth++;
+			stackSquare[depth] = Integer.numberOfTrailingZeros(land);
+			stackCaptured[depth] = captured | over;
+			if ((land & crowning) != 0) {
+				//A man that reaches the last row is crowned and its move ends there
+				record(p, depth, false, true);
+				depth--;
+				continue;
+			}
+			stackDir[depth] = first;
+			stackJumped[depth] = false;
+		}
+	}
+
+	/**
+	 * Records the path on the stack
+	 * @param p the position
+	 * @param depth the number of jumps
+	 * @param king true if a king is moving
+	 * @param promotes true if the move crowns the checker
+	 */
+	private void record(Position p, int depth, boolean king, boolean promotes) {
+		if (count == moves.length) grow();
+		int captured = stackCaptured[depth];
+		moves[count] = Move.encode(stackSquare[0], stackSquare[depth], captured, captured & p.getKings(), king, promotes);
+		lengths[count] = (byte) (depth + 1);
+		int base = count * PATH_LENGTH;
+		for (int k = 0; k <= depth; k++) paths[base + k] = (byte) stackSquare[k];
+		count++;
+	}
+
+	/**
+	 * Doubles the path buffers
+	 */
+	private void grow() {
+		long[] moreMoves = new long[moves.length * 2];
+		System.arraycopy(moves, 0, moreMoves, 0, count);
+		byte[] morePaths = new byte[paths.length * 2], moreLengths = new byte[lengths.length * 2];
+		System.arraycopy(paths, 0, morePaths, 0, paths.length);
+		System.arraycopy(lengths, 0, moreLengths, 0, count);
+		moves = moreMoves;
+		paths = morePaths;
+		lengths = moreLengths;
+	}
+
+	/**
+	 * Gets the number of paths found by the last call to generate
+	 * @return the number of paths
+	 */
+	public int size() {
+		return count;
+	}
+
+	/**
+	 * Gets the packed move of a path, as Position.generateMoves makes it
+	 * @param path the index of the path
+	 * @return the packed move
+	 */
+	public long getMove(int path) {
+		return moves[path];
+	}
+
+	/**
+	 * Gets the number of squares of a path, the starting square included
+	 * @param path the index of the path
+	 * @return the number of squares (the number of jumps + 1)
+	 */
+	public int getLength(int path) {
+		return lengths[path];
+	}
+
+	/**
+	 * Gets a square of a path
+	 * @param path the index of the path
+	 * @param k 0 for the starting square, then 1 for the landing square of every jump
+	 * @return the square
+	 */
+	public int getSquare(int path, int k) {
+		return paths[path * PATH_LENGTH + k];
+	}
+
+	/**
+	 * Finds the first path of a move
+	 * @param move the packed move
+	 * @return the index of the path, or -1 if no path makes the move
+	 */
+	public int find(long move) {
+		for (int i = 0; i < count; i++)
+			if (moves[i] == move) return i;
+		return -1;
+	}
+
+	/**
+	 * Copies the moves of the paths, each move once, the way Position.generateCaptures lists them
+	 * @param buffer the buffer to write the moves to (at least Position.MAX_MOVES long)
+	 * @return the number of moves
+	 */
+	public int getMoves(long[] buffer) {
+		int n = 0;
+		outer:
+		for (int i = 0; i < count; i++) {
+			for (int j = 0; j < n; j++)
+				if (buffer[j] == moves[i]) continue outer;
+			buffer[n++] = moves[i];
+		}
+		return n;
+	}
+
+	/**
+	 * Appends a path in PDN notation, e.g. "15x24x31"
+	 * @param sb the text to append to
+	 * @param path the index of the path
+	 * @return the text
+	 */
+	public StringBuilder appendPath(StringBuilder sb, int path) {
+		int base = path * PATH_LENGTH;
+		sb.append(paths[base] + 1);
+		for (int k = 1; k < lengths[path]; k++) sb.append('x').append(paths[base + k] + 1);
+		return sb;
+	}
+}
@@ -1,9 +1,10 @@
 import java.awt.Color;
 import java.awt.Component;
 import java.awt.Graphics;
-import java.awt.GridLayout;
+import java.awt.Dimension;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
+import java.awt.image.BufferedImage;
 import java.util.Arrays;
 
 import javax.swing.JButton;
@@ -11,14 +12,30 @@ import javax.swing.JPanel;
 
 /**
  * A class that extends the JPanel to represents a checker board that
- * draws the entire checker board by drawing individual checker squares
+ * draws the entire checker board on one surface. The squares are kept drawn in an
+ * off-screen image at the current size, and a change to a square redraws and repaints
+ * only that square. An English checkers board is mirrored by a Position; the boards of
+ * other variants, such as 10x10 international draughts, by a DraughtsPosition
  * @author Thuy 'Kim' Ha
  * April 30, 2020
  */
 public class CheckerBoard extends JPanel{
 
-	private int black, red, blackCanCapture, redCanCapture;
+	public static final int DEFAULT_SIDE = 60;
+
+	private int black, red, blackCanCapture, redCanCapture, blackMoveable, redMoveable;
+	private int capturerSquares, moverSquares, size;
 	private char[][] boardStatus;
+	private CheckerPiece[][] pieces;
+	private BoardRenderer renderer;
+	private BufferedImage buffer;
+	private Position position;
+	private Variant variant;
+	private DraughtsPosition draughts;
+	private DraughtsMoves draughtsMoves, otherMoves;
+	private Tablebase tablebase;
+	private int adjudication = Tablebase.UNKNOWN;
+	private boolean jumpPending;
 
 	
 	/**
@@ -27,13 +44,35 @@ public class CheckerBoard extends JPanel{
 	 * squares by rows and columns
 	 */
 	public CheckerBoard(char[][] boardStatus) {
-		black = 12; red = 12;
-		this.boardStatus = new char[8][8];
-		setLayout(new GridLayout(8, 8));
+		this(Variant.ENGLISH, boardStatus);
+	}
+	
+	/**
+	 * Construct using inputs to create a CheckerBoard object of a draughts variant
+	 * @param variant the variant, which gives the size of the board and the rules
+	 * @param boardStatus the 2D array that shows the status (b, r, or e) of the checker
+	 * squares by rows and columns
+	 */
+	public CheckerBoard(Variant variant, char[][] boardStatus) {
+		this.variant = variant;
+		this.size = variant.getSize();
+		this.boardStatus = new char[size][size];
+		this.pieces = new CheckerPiece[size][size];
+		if (variant == Variant.ENGLISH) this.position = Position.fromBoardStatus(boardStatus, true);
+		else {
+			this.position = new Position();
+			this.draughts = new DraughtsPosition(variant, boardStatus, true);
+			this.draughtsMoves = new DraughtsMoves();
+			this.otherMoves = new DraughtsMoves();
+		}
+		this.renderer = new BoardRenderer(DEFAULT_SIDE);
+		setPreferredSize(new Dimension(size * DEFAULT_SIDE, size * DEFAULT_SIDE));
 		for(int i = 0; i < boardStatus.length; i++) {
 			for (int j = 0; j < boardStatus[i].length; j++) {
 				this.boardStatus[i][j] = boardStatus[i][j];
-				add(new CheckerPiece(i, j, boardStatus[i][j]));
+				pieces[i][j] = new CheckerPiece(i, j, boardStatus[i][j], size);
+				if (boardStatus[i][j] == 'b' || boardStatus[i][j] == 'k') black++;
+				if (boardStatus[i][j] == 'r' || boardStatus[i][j] == 'q') red++;
 			}
 		}
 		setCheckersState();
@@ -45,6 +84,8 @@ public class CheckerBoard extends JPanel{
 	 */
 	public void setBoardStatus(char[][] boardStatus) {
 		this.boardStatus = boardStatus;
+		if (draughts != null) this.draughts = new DraughtsPosition(variant, boardStatus, draughts.isBlackToMove());
+		else this.position = Position.fromBoardStatus(boardStatus, position.isBlackToMove());
 	}
 	
 	/**
@@ -55,7 +96,50 @@ public class CheckerBoard extends JPanel{
 	 */
 	public void setCheckerPiece(int row, int col, char status) {
 		boardStatus[row][col] = status;
-		((CheckerPiece) this.getComponent(row * 8 + col)).setStatus(status);
+		if (draughts != null) draughts.set(row, col, status);
+		else position.set(row, col, status);
+		pieces[row][col].setStatus(status);
+		//Only the changed square is drawn again and repainted
+		if (buffer != null) {
+			Graphics g = buffer.getGraphics();
+			renderer.paintSquare(g, row, col, status, col * renderer.getSide(), row * renderer.getSide());
+			g.dispose();
+			Metrics.SQUARES_REPAINTED.increment();
+			repaint(getBoardX() + col * renderer.getSide(), getBoardY() + row * renderer.getSide(),
+					renderer.getSide(), renderer.getSide());
+		}
+	}
+
+	/**
+	 * Gets the left edge of the board, which is centered in the panel
+	 * @return the x coordinate
+	 */
+	private int getBoardX() {
+		return (getWidth() - size * renderer.getSide()) / 2;
+	}
+
+	/**
+	 * Gets the top edge of the board, which is centered in the panel
+	 * @return the y coordinate
+	 */
+	private int getBoardY() {
+		return (getHeight() - size * renderer.getSide()) / 2;
+	}
+
+	@Override
+	protected void paintComponent(Graphics g) {
+		super.paintComponent(g);
+		Metrics.REPAINTS.increment();
+		//The squares are as large as the panel allows; the image is drawn again when that changes
+		int side = Math.max(1, Math.min(getWidth(), getHeight()) / size);
+		if (buffer == null || side != renderer.getSide()) {
+			renderer.setSide(side);
+			buffer = new BufferedImage(size * renderer.getSide(), size * renderer.getSide(), BufferedImage.TYPE_INT_RGB);
+			Graphics bg = buffer.getGraphics();
+			renderer.paintBoard(bg, boardStatus, 0, 0);
+			bg.dispose();
+		}
+		g.drawImage(buffer, getBoardX(), getBoardY(), null);
 	}
 
 	/**
@@ -121,7 +205,20 @@ public class CheckerBoard extends JPanel{
 	 * @return the CheckerPiece object that associated with the square
 	 */
 	public CheckerPiece getCheckerPiece(int row, int col) {
-		return ((CheckerPiece) this.getComponent(row * 8 + col));
+		return pieces[row][col];
+	}
+	
+	/**
+	 * Gets the CheckerPiece object of the square under a point of the panel
+	 * @param x the x coordinate of the point
+	 * @param y the y coordinate of the point
+	 * @return the CheckerPiece object, or null if the point is off the board
+	 */
+	public CheckerPiece getCheckerPieceAt(int x, int y) {
+		int side = renderer.getSide();
+		int col = Math.floorDiv(x - getBoardX(), side), row = Math.floorDiv(y - getBoardY(), side);
+		if (row < 0 || row >= size || col < 0 || col >= size) return null;
+		return pieces[row][col];
 	}
 	
 	/**
@@ -129,133 +226,141 @@ public class CheckerBoard extends JPanel{
 	 * @param boardStatus the 2D arrays that have the original status of the checker squares
 	 */
 	public void reset(char[][] boardStatus) {
-		black = 12; red = 12;
+		black = 0; red = 0;
 		for(int i = 0; i < boardStatus.length; i++) {
 			for (int j = 0; j < boardStatus[i].length; j++) {
 				//Changes the status of the square if it's not the same as the beginning
 				if (boardStatus[i][j] != this.boardStatus[i][j])
 					setCheckerPiece(i, j, boardStatus[i][j]); 
+				if (boardStatus[i][j] == 'b' || boardStatus[i][j] == 'k') black++;
+				if (boardStatus[i][j] == 'r' || boardStatus[i][j] == 'q') red++;
 			}
 		}
+		position.setBlackToMove(true);
+		if (draughts != null) draughts.setBlackToMove(true);
 		setCheckersState();
 	}
 	
 	/**
-	 * Checks if any more moves can be made
-	 * @return true if no more moves can be made, false otherwise
+	 * Checks if any more moves can be made, or if the endgame database already knows the
+	 * result of the game (see getAdjudication)
+	 * @return true if no more moves can be made or the game was adjudicated, false otherwise
 	 */
 	public boolean notMoveable() {
+		adjudication = Tablebase.UNKNOWN;
 		if (black == 0) return true;
 		if (red == 0) return true;
-		int redMoveable = 0, blackMoveable = 0;
-		for (Component c : getComponents()) {
-			CheckerPiece cp = (CheckerPiece) c;
-			if (cp.isMoveable()) {
-				if (cp.getStatus() == 'b' || cp.getStatus() == 'k') blackMoveable++;
-				if (cp.getStatus() == 'r' || cp.getStatus() == 'q') redMoveable++;
-			}
-		}
-		return redMoveable == 0 || blackMoveable == 0;
+		//In the other variants only the side to move has to be able to move
+		if (draughts != null) return draughts.isBlackToMove() ? blackMoveable == 0 : redMoveable == 0;
+		if (redMoveable == 0 || blackMoveable == 0) return true;
+		//The database doesn't know about a multi-jump that is half done
+		if (tablebase == null || jumpPending) return false;
+		adjudication = tablebase.probe(position);
+		return adjudication != Tablebase.UNKNOWN;
 	}
 	
 	/**
-	 * Sets the captureable and moveable fields of every CheckePiece object
+	 * Gets the result found in the endgame database by the last call to notMoveable
+	 * @return WIN, LOSS or DRAW for the side to move, or UNKNOWN if the game wasn't adjudicated
 	 */
-	public void setCheckersState(){
-		blackCanCapture = 0; redCanCapture = 0;
-		for (Component c : getComponents()) {
-			CheckerPiece cp = (CheckerPiece) c;
-			cp.setCapturable(captureable(cp.getRow(), cp.getCol()));
-			cp.setMoveable(moveable(cp.getRow(), cp.getCol()));
-			if ((cp.getStatus() == 'b' || cp.getStatus() == 'k') && cp.isCapturable()) blackCanCapture++;
-			if ((cp.getStatus() == 'r' || cp.getStatus() == 'q') && cp.isCapturable()) redCanCapture++;
-		}
+	public int getAdjudication() {
+		return adjudication;
 	}
 	
 	/**
-	 * Checks if a black checker is moveable
-	 * @param row the row of the black checker
-	 * @param col the column of the black checker
-	 * @return true if the black checker is moveable, false otherwise
+	 * Sets the endgame database used to adjudicate games
+	 * @param tablebase the endgame database, or null for none
 	 */
-	private boolean blackMoveable(int row, int col) {
-		if (blackCaptureable(row, col)) return true;
-		if (row + 1 <= 7) {
-			if (col - 1 >=  0 && boardStatus[row+1][col-1] == 'e') return true;
-			if (col + 1 <=  7 && boardStatus[row+1][col+1] == 'e') return true;
-		}
-		return false;
+	public void setTablebase(Tablebase tablebase) {
+		this.tablebase = tablebase;
 	}
 	
 	/**
-	 * Checks if a red checker is moveable
-	 * @param row the row of the red checker
-	 * @param col the column of the red checker
-	 * @return true if the red checker is moveable, false otherwise
+	 * Sets whether the side to move is in the middle of a multi-jump
+	 * @param jumpPending true if a multi-jump has to go on, false otherwise
 	 */
-	private boolean redMoveable(int row, int col) {
-		if (redCaptureable(row, col)) return true;
-		if (row - 1 >= 0) {
-			if (col - 1 >=  0 && boardStatus[row-1][col-1] == 'e') return true;
-			if (col + 1 <=  7 && boardStatus[row-1][col+1] == 'e') return true;
-		}
-		return false;
+	public void setJumpPending(boolean jumpPending) {
+		this.jumpPending = jumpPending;
+	}
+
+	/**
+	 * Checks whether the side to move is in the middle of a multi-jump
+	 * @return true if a multi-jump has to go on, false otherwise
+	 */
+	public boolean isJumpPending() {
+		return jumpPending;
 	}
 	
 	/**
-	 * Checks if a red checker can make a capture move
-	 * @param row the row of the red checker 
-	 * @param col the column of the red checker
-	 * @return true if the red checker can make capture move, false otherwise
+	 * Sets the captureable and moveable fields of the CheckerPiece objects whose state changed
+	 * since the last call, and updates the running counts of capturing and moveable checkers.
+	 * A move can only change the state of the squares within jump distance of its origin,
+	 * destination and captured squares, so only those few CheckerPiece objects are touched
 	 */
-	private boolean redCaptureable(int row, int col) {
-		if (row - 2 >= 0) {
-			if (col - 2 >=  0 && boardStatus[row-2][col-2] == 'e' && boardStatus[row-1][col-1] == 'b') {
-				redCanCapture++;
-				return true;
-			}
-			if (col + 2 <=  7 && boardStatus[row-2][col+2] == 'e' && boardStatus[row-1][col+1] == 'b') {
-				redCanCapture++;
-				return true;
-			}
+	public void setCheckersState(){
+		long start = Metrics.start();
+		if (draughts != null) {
+			setDraughtsState();
+			Metrics.SET_CHECKERS_STATE.stop(start);
+			return;
+		}
+		int capturers = position.capturers(true) | position.capturers(false);
+		int movers = position.movers(true) | position.movers(false);
+		for (int c = (capturers ^ capturerSquares) | (movers ^ moverSquares); c != 0; c &= c - 1) {
+			int sq = Integer.numberOfTrailingZeros(c), bit = 1 << sq;
+			CheckerPiece cp = getCheckerPiece(Position.row(sq), Position.col(sq));
+			cp.setCapturable((capturers & bit) != 0);
+			cp.setMoveable((movers & bit) != 0);
 		}
-		return false;
+		capturerSquares = capturers; moverSquares = movers;
+		blackCanCapture = Integer.bitCount(capturers & position.getBlack());
+		redCanCapture = Integer.bitCount(capturers & position.getRed());
+		blackMoveable = Integer.bitCount(movers & position.getBlack());
+		redMoveable = Integer.bitCount(movers & position.getRed());
+		Metrics.SET_CHECKERS_STATE.stop(start);
 	}
-	
+
 	/**
-	 * Checks if a black checker can make a capture move
-	 * @param row the row of the black checker 
-	 * @param col the column of the black checker
-	 * @return true if the black checker can make capture move, false otherwise
+	 * Sets the captureable and moveable fields and the counts from the legal moves of a
+	 * DraughtsPosition: a checker is moveable if a legal move starts on it, and captureable
+	 * if that move is a capture (under the maximum-capture rule only the checkers that can
+	 * take the most are)
 	 */
-	private boolean blackCaptureable(int row, int col) {
-		if (row + 2 <= 7) {
-			if (col - 2 >=  0 && boardStatus[row+2][col-2] == 'e' && boardStatus[row+1][col-1] == 'r') return true;
-			if (col + 2 <=  7 && boardStatus[row+2][col+2] == 'e' && boardStatus[row+1][col+1] == 'r') return true;
+	private void setDraughtsState() {
+		boolean blackToMove = draughts.isBlackToMove();
+		long toMove = draughts.movers(blackToMove, draughtsMoves), other = draughts.movers(!blackToMove, otherMoves);
+		boolean captures = draughtsMoves.size() > 0 && draughtsMoves.isCapture(0);
+		boolean otherCaptures = otherMoves.size() > 0 && otherMoves.isCapture(0);
+		for (int sq = 0; sq < variant.getSquares(); sq++) {
+			long bit = 1L << variant.bit(sq);
+			CheckerPiece cp = pieces[variant.row(sq)][variant.col(sq)];
+			boolean moves = ((toMove | other) & bit) != 0;
+			cp.setMoveable(moves);
+			cp.setCapturable(((toMove & bit) != 0 && captures) || ((other & bit) != 0 && otherCaptures));
 		}
-		return false;
-		
+		long blackMovers = blackToMove ? toMove : other, redMovers = blackToMove ? other : toMove;
+		boolean blackCaptures = blackToMove ? captures : otherCaptures, redCaptures = blackToMove ? otherCaptures : captures;
+		blackMoveable = Long.bitCount(blackMovers);
+		redMoveable = Long.bitCount(redMovers);
+		blackCanCapture = blackCaptures ? blackMoveable : 0;
+		redCanCapture = redCaptures ? redMoveable : 0;
 	}
-	
+
+	/**
+	 * Gets the number of black checkers that can move
+	 * @return the number of moveable black checkers
+	 */
+	public int getBlackMoveable() {
+		return blackMoveable;
+	}
+
 	/**
-	 * Checks if a king checker can make a capture move
-	 * @param row the row of the king checker
-	 * @param col the column of the king checker
-	 * @return true if the king checker can make a capture move, false otherwise
-	 */
-	private boolean kingCaptureable(int row, int col) {
-		return blackCaptureable(row, col) || redCaptureable(row, col);
-	}
-   
-   /**
-    * Checks if a king checker is moveable
-    * @param row the row of the king checker
-    * @param col the column of the king checker
-    * @return true if a king checker is moveable, false otherwise
-    */
-   private boolean kingMoveable(int row, int col) {
-	   return blackMoveable(row, col) || redMoveable(row, col);
-   }
+	 * Gets the number of red checkers that can move
+	 * @return the number of moveable red checkers
+	 */
+	public int getRedMoveable() {
+		return redMoveable;
+	}
 	
 	/**
 	 * Checks if a checker can make a capture move
@@ -264,11 +369,7 @@ public class CheckerBoard extends JPanel{
 	 * @return true if the checker can make a capture move, false otherwise
 	 */
 	boolean captureable(int row, int col) {
-		if (boardStatus[row][col] == 'b') return blackCaptureable(row, col);
-		if (boardStatus[row][col] == 'r') return redCaptureable(row, col);
-		if (boardStatus[row][col] == 'k' || boardStatus[row][col] == 'q') 
-			return kingCaptureable(row, col); 
-		return false;
+		return position.canCapture(row, col);
 	}
 	
 	/**
@@ -278,11 +379,95 @@ public class CheckerBoard extends JPanel{
 	 * @return true if the checker is moveable, false otherwise
 	 */
 	public boolean moveable(int row, int col) {
-		if (boardStatus[row][col] == 'b') return blackMoveable(row, col);
-		if (boardStatus[row][col] == 'r') return redMoveable(row, col);
-		if (boardStatus[row][col] == 'k' || boardStatus[row][col] == 'q') 
-			return kingMoveable(row, col);
-		return false;
+		return position.canMove(row, col);
+	}
+
+	/**
+	 * Sets every checker square and the turn from a rules engine position
+	 * @param p the position to show
+	 */
+	public void setPosition(Position p) {
+		black = 0; red = 0;
+		for (int i = 0; i < size; i++) {
+			for (int j = 0; j < size; j++) {
+				char status = p.get(i, j);
+				if (status != boardStatus[i][j]) setCheckerPiece(i, j, status);
+				if (status == 'b' || status == 'k') black++;
+				if (status == 'r' || status == 'q') red++;
+			}
+		}
+		position.setBlackToMove(p.isBlackToMove());
+		setCheckersState();
+	}
+
+	/**
+	 * Plays a complete move (every jump of a multi-jump) generated by the rules engine
+	 * @param move the packed move
+	 */
+	public void playMove(long move) {
+		Position next = new Position(position);
+		next.makeMove(move);
+		setPosition(next);
+	}
+
+	/**
+	 * Plays a complete move of a variant other than English checkers, removing the captured
+	 * checkers and crowning a man that ends on the last row
+	 * @param moves the legal moves, from getDraughtsMoves
+	 * @param move the index of the move
+	 */
+	public void playDraughtsMove(DraughtsMoves moves, int move) {
+		DraughtsPosition next = new DraughtsPosition(draughts);
+		next.makeMove(moves, move);
+		black = 0; red = 0;
+		for (int i = 0; i < size; i++) {
+			for (int j = 0; j < size; j++) {
+				char status = next.get(i, j);
+				if (status != boardStatus[i][j]) setCheckerPiece(i, j, status);
+				if (status == 'b' || status == 'k') black++;
+				if (status == 'r' || status == 'q') red++;
+			}
+		}
+		draughts.setBlackToMove(next.isBlackToMove());
+		setCheckersState();
+	}
+
+	/**
+	 * Gets the legal moves of the side to move of a variant other than English checkers. The
+	 * list is filled again whenever the board changes
+	 * @return the legal moves, or null for English checkers
+	 */
+	public DraughtsMoves getDraughtsMoves() {
+		return draughtsMoves;
+	}
+
+	/**
+	 * Gets the variant played on the board
+	 * @return the variant
+	 */
+	public Variant getVariant() {
+		return variant;
+	}
+
+	/**
+	 * Gets the rules engine position that mirrors the board
+	 * @return the position
+	 */
+	public Position getPosition() {
+		return position;
+	}
+
+	/**
+	 * Sets whose turn it is in the position that mirrors the board
+	 * @param turnBlack true if it's black turn
+	 */
+	public void setTurnBlack(boolean turnBlack) {
+		position.setBlackToMove(turnBlack);
+		if (draughts != null && draughts.isBlackToMove() != turnBlack) {
+			//The legal moves depend on whose turn it is
+			draughts.setBlackToMove(turnBlack);
+			setCheckersState();
+		}
 	}
 
 	
@@ -2,10 +2,33 @@ import java.awt.BorderLayout;
 import java.awt.GridLayout;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.event.InputEvent;
+import java.awt.event.KeyEvent;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
 import java.awt.event.WindowEvent;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
 
+import javax.swing.ButtonGroup;
+import javax.swing.JCheckBoxMenuItem;
+import javax.swing.JFileChooser;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
 import javax.swing.JMenu;
@@ -13,6 +36,9 @@ import javax.swing.JMenuBar;
 import javax.swing.JMenuItem;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
+import javax.swing.JRadioButtonMenuItem;
+import javax.swing.KeyStroke;
+import javax.swing.SwingUtilities;
 
 /**
  * The CheckerGame application that works as a 2-player game with GUI 
@@ -22,10 +48,28 @@ import javax.swing.JPanel;
 public class CheckerGame extends JFrame implements MouseListener, ActionListener{
 	
 	//Fields
-	private boolean turnBlack, captureMove, mustJump;
+	private static final long THINK_MILLIS = 100;
+	private static final byte[] SNAPSHOT_MAGIC = { 'C', 'K', 'S', 'N' };
+	private static final int GAME_ID = 0;
+	private boolean turnBlack, captureMove, mustJump, crowned;
+	private boolean computerBlack, computerRed, computerThinking, showBook, monteCarloPlayer, showAnalysis;
+	private int computerGeneration;
+	private ExecutorService engine;
+	private ParallelSearch search;
+	private volatile MonteCarloSearch monteCarlo;
+	private Ponderer ponderer;
+	private OpeningBook book;
+	private GameState game;
+	private EventLog log;
+	private Random random;
 	private CheckerBoard cb;
-	private JLabel statusLabel;
-	private int picks;
+	private Variant variant;
+	private Tablebase tablebase;
+	private List<JMenuItem> englishOnly = new ArrayList<JMenuItem>();
+	private JLabel statusLabel, analysisLabel;
+	private String warnings = "";
+	private int picks, clicks;
+	private int[] path = new int[32];
 	private CheckerPiece tbm, dest;
 	private JOptionPane aboutPane, rulesPane;
 	
@@ -47,30 +91,134 @@ public class CheckerGame extends JFrame implements MouseListener, ActionListener
 		//Initializes fields and components
 		picks = 0;
 		turnBlack = true; mustJump = false;
-		setSize(515, 595);
+		Evaluator evaluator = new Evaluator();
+		String weights = System.getProperty("checkers.weights");
+		try {
+			if (weights != null) evaluator = Evaluator.load(new File(weights));
+		}
+		catch (IOException e) {
+			warn("Could not read the weights: " + e.getMessage() + ".");
+		}
+		//One core is left to the event thread so the board keeps painting while the computer thinks
+		search = new ParallelSearch(Math.max(1, Runtime.getRuntime().availableProcessors() - 1), new TranspositionTable(16), evaluator);
+		ponderer = new Ponderer(evaluator, text -> analysisLabel.setText(text));
+		engine = Executors.newSingleThreadExecutor(r -> {
+			Thread t = new Thread(r, "computer-player");
+			t.setDaemon(true);
+			return t;
+		});
+		showAnalysis = true;
+		random = new Random();
+		game = new GameState();
+		Metrics.GAMES_STARTED.increment();
+		try {
+			File bookFile = new File(System.getProperty("checkers.book", "opening.book"));
+			if (bookFile.isFile()) book = new OpeningBook(bookFile);
+		}
+		catch (IOException e) {
+			book = null;
+		}
+		variant = Variant.ENGLISH;
+		Variant chosen = Variant.ENGLISH;
+		String variantName = System.getProperty("checkers.variant", "english");
+		try {
+			chosen = Variant.forName(variantName);
+		}
+		catch (IllegalArgumentException e) {
+			warn("Unknown variant " + variantName + ": " + e.getMessage() + ".");
+		}
 		cb = new CheckerBoard(boardStatus);
+		File endgame = new File(System.getProperty("checkers.tablebase", "endgame"));
+		if (endgame.isDirectory()) tablebase = new Tablebase(endgame);
+		cb.setTablebase(tablebase);
+		String logPath = System.getProperty("checkers.eventlog", "games.log");
+		try {
+			if (!logPath.isEmpty()) log = new EventLog(new File(logPath));
+			if (log != null && log.getSkipped() > 0)
+				warn("Skipped " + log.getSkipped() + " events of the event log that couldn't be replayed.");
+		}
+		catch (IOException e) {
+			warn("Could not open the event log: " + e.getMessage() + ".");
+		}
 		addMouseEvent(cb);
 		JMenuBar menuBar = new JMenuBar();
-		JPanel statusPanel = new JPanel(new GridLayout(2,1));
+		JPanel statusPanel = new JPanel(new GridLayout(3,1));
 		aboutPane = new JOptionPane("About");
 
 		
 		//Set up the status bar
 		statusLabel = new JLabel("New game! Black starts first.", JLabel.CENTER);
+		analysisLabel = new JLabel(" ", JLabel.CENTER);
 		JLabel informationLabel = new JLabel("This game was developed by Aly Ha.", JLabel.CENTER);
 		statusPanel.add(statusLabel);
+		statusPanel.add(analysisLabel);
 		statusPanel.add(informationLabel);
 		
 		//Game menu
 		JMenu gameMenu = new JMenu("Game");
 		JMenuItem newItem = new JMenuItem("New");
 		newItem.addActionListener(this);
+		JMenuItem saveItem = new JMenuItem("Save Game...");
+		saveItem.addActionListener(this);
+		JMenuItem loadItem = new JMenuItem("Load Game...");
+		loadItem.addActionListener(this);
+		JMenuItem saveSnapshotItem = new JMenuItem("Save Snapshot...");
+		saveSnapshotItem.addActionListener(this);
+		JMenuItem loadSnapshotItem = new JMenuItem("Load Snapshot...");
+		loadSnapshotItem.addActionListener(this);
 		JMenuItem exitItem = new JMenuItem("Exit");
 		exitItem.addActionListener(this);
+		JCheckBoxMenuItem computerBlackItem = new JCheckBoxMenuItem("Computer Plays Black");
+		computerBlackItem.addActionListener(this);
+		JCheckBoxMenuItem computerRedItem = new JCheckBoxMenuItem("Computer Plays Red");
+		computerRedItem.addActionListener(this);
+		JCheckBoxMenuItem showBookItem = new JCheckBoxMenuItem("Show Book Moves");
+		showBookItem.addActionListener(this);
+		showBookItem.setEnabled(book != null);
+		JCheckBoxMenuItem monteCarloItem = new JCheckBoxMenuItem("Monte Carlo Player");
+		monteCarloItem.addActionListener(this);
+		JCheckBoxMenuItem showAnalysisItem = new JCheckBoxMenuItem("Show Analysis", showAnalysis);
+		showAnalysisItem.addActionListener(this);
+		//The variant submenu; the engine features only know English checkers
+		JMenu variantMenu = new JMenu("Variant");
+		ButtonGroup variantGroup = new ButtonGroup();
+		for (Variant v : Variant.PRESETS) {
+			JRadioButtonMenuItem variantItem = new JRadioButtonMenuItem(v.toString(), v == chosen);
+			variantItem.setActionCommand("Variant " + v.getName());
+			variantItem.addActionListener(this);
+			variantGroup.add(variantItem);
+			variantMenu.add(variantItem);
+		}
+		englishOnly.addAll(Arrays.asList(saveItem, loadItem, saveSnapshotItem, loadSnapshotItem, computerBlackItem,
+				computerRedItem, monteCarloItem, showAnalysisItem));
+		if (book != null) englishOnly.add(showBookItem);
 		gameMenu.add(newItem);
+		gameMenu.add(variantMenu);
+		gameMenu.add(saveItem);
+		gameMenu.add(loadItem);
+		gameMenu.add(saveSnapshotItem);
+		gameMenu.add(loadSnapshotItem);
+		gameMenu.add(computerBlackItem);
+		gameMenu.add(computerRedItem);
+		gameMenu.add(showBookItem);
+		gameMenu.add(monteCarloItem);
+		gameMenu.add(showAnalysisItem);
 		gameMenu.add(exitItem);
 		
 		
+		//Edit menu
+		JMenu editMenu = new JMenu("Edit");
+		JMenuItem undoItem = new JMenuItem("Undo");
+		undoItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_Z, InputEvent.CTRL_DOWN_MASK));
+		undoItem.addActionListener(this);
+		JMenuItem redoItem = new JMenuItem("Redo");
+		redoItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_Y, InputEvent.CTRL_DOWN_MASK));
+		redoItem.addActionListener(this);
+		editMenu.add(undoItem);
+		editMenu.add(redoItem);
+		englishOnly.add(undoItem);
+		englishOnly.add(redoItem);
+		
 		//Help menu
 		JMenu helpMenu = new JMenu("Help");
 		JMenuItem rulesItem = new JMenuItem("Checker Game Rules");
@@ -81,14 +229,28 @@ public class CheckerGame extends JFrame implements MouseListener, ActionListener
 		helpMenu.add(aboutItem);
 	
 		menuBar.add(gameMenu);
+		menuBar.add(editMenu);
 		menuBar.add(helpMenu);
 		
 		//Add components to the frame
 		setJMenuBar(menuBar);
 		add(cb, BorderLayout.CENTER);
 		add(statusPanel, BorderLayout.SOUTH);
+		pack();
 		setDefaultCloseOperation(EXIT_ON_CLOSE);
 		setVisible(true);	
+		
+		//Goes on with the game that was in progress when the program last stopped
+		GameState recovered = log == null ? null : log.getGames().get(GAME_ID);
+		if (recovered != null && recovered.getResult() == GameState.ONGOING) {
+			game = recovered;
+			showGame("Recovered the game in progress. ");
+		}
+		else log(l -> l.start(GAME_ID, game));
+		if (chosen != Variant.ENGLISH) setVariant(chosen);
+		//The problems found before the status bar was made
+		if (!warnings.isEmpty()) statusLabel.setText(takeWarnings() + statusLabel.getText());
+		ponder();
 	}
 
 	//Main method
@@ -133,14 +295,15 @@ public class CheckerGame extends JFrame implements MouseListener, ActionListener
 			return;
 		}
 		switch (dest.validDestination(tbm, cb.getBoardStatus())){
-		case 2: statusLabel.setText("The square is not empty. Please make another move"); picks = 0; break;
-		case 3: statusLabel.setText("Can only move diagonal. Please make another move"); picks = 0; break;
-		case 4: statusLabel.setText("Cannot move horizontally. Please make another move"); picks = 0; break;
-		case 5: statusLabel.setText("Cannot move backward. Please make another move"); picks = 0; break;
-		case 6: statusLabel.setText("Cannot move more than one space. Please make another move"); picks = 0; break;
+		case 2: statusLabel.setText("The square is not empty. Please make another move"); cancelPick(); break;
+		case 3: statusLabel.setText("Can only move diagonal. Please make another move"); cancelPick(); break;
+		case 4: statusLabel.setText("Cannot move horizontally. Please make another move"); cancelPick(); break;
+		case 5: statusLabel.setText("Cannot move backward. Please make another move"); cancelPick(); break;
+		case 6: statusLabel.setText("Cannot move more than one space. Please make another move"); cancelPick(); break;
 		case 1:
 			this.dest = dest; picks = 2;
-			if (dest.isACapture(tbm, cb.getBoardStatus())) captureMove = true;
+			if (cb.getPosition().isJump(Position.square(tbm.getRow(), tbm.getCol()),
+					Position.square(dest.getRow(), dest.getCol()))) captureMove = true;
 		}
 	}
 	
@@ -158,36 +321,53 @@ public class CheckerGame extends JFrame implements MouseListener, ActionListener
 	}
 
 	/**
-	 * Adds mouseEvent to every CheckerPiece object in the panel
+	 * Adds mouseEvent to the checker board, which finds the CheckerPiece object under the mouse
 	 * @param cb the checker board that has all the checker pieces
 	 */
 	private void addMouseEvent(CheckerBoard cb) {
-		for (int i = 0; i < cb.getBoardStatus().length; i++) {
-			for (int j = 0; j < cb.getBoardStatus().length; j++)
-				((CheckerPiece) cb.getComponent(i * 8 + j)).addMouseListener(this);
-			
-		}
+		cb.addMouseListener(this);
 	}
 	
 	@Override
 	public void mouseClicked(MouseEvent e) {
-		CheckerPiece cp = (CheckerPiece) e.getComponent();
+		long start = Metrics.start();
+		handleClick(e);
+		Metrics.MOUSE_CLICKED.stop(start);
+	}
+
+	/**
+	 * Picks the checker to move or its destination, and moves it once both are picked
+	 * @param e the mouse click on the board
+	 */
+	private void handleClick(MouseEvent e) {
+		CheckerPiece cp = cb.getCheckerPieceAt(e.getX(), e.getY());
+		if (cp == null || !cb.isEnabled()) return;
+		if (isComputerTurn()) {
+			statusLabel.setText("The computer is thinking. Please wait for its move.");
+			return;
+		}
+		if (variant != Variant.ENGLISH) {
+			draughtsClick(cp);
+			ponder();
+			return;
+		}
 		statusLabel.setText(cb.toString());
 		if (picks == 0) setToBeMoved(cp);
 		else if (picks == 1) setDestination(cp);
 		if (picks == 2 && tbm != null && dest != null) {
 			if (mustJump() && !captureMove) {
 				statusLabel.setText("You must make a jump if you can! Please make a jump move");
-				resetFields();
+				cancelPick();
 			}	
 			else {
 				moveChecker(tbm, dest); resetFields();
-				if (turnBlack) statusLabel.setText(cb.toString() + "[Black turn]");
-				else statusLabel.setText(cb.toString() + "[Red turn]");
+				if (turnBlack) statusLabel.setText(takeWarnings() + cb.toString() + "[Black turn]" + bookHint());
+				else statusLabel.setText(takeWarnings() + cb.toString() + "[Red turn]" + bookHint());
 			}
 		}
 		if (cb.notMoveable()) endGame();
-
+		else computerTurn();
+		ponder();
 	}
 	
 	/**
@@ -196,11 +376,16 @@ public class CheckerGame extends JFrame implements MouseListener, ActionListener
 	 * @param second the destination square
 	 */
 	private void moveChecker(CheckerPiece first, CheckerPiece second) {
+		//The analysis is of the position before the move
+		ponderer.cancel();
 		//Captures if it's capturing
 		if (captureMove) 
 			capture(first, second);
-		//Moves the checker to the new destination
-		cb.setCheckerPiece(second.getRow(), second.getCol(), first.getStatus());
+		//Moves the checker to the new destination, crowning it on the last row
+		char status = first.getStatus();
+		if (status == 'b' && second.getRow() == 7) { status = 'k'; crowned = true; }
+		if (status == 'r' && second.getRow() == 0) { status = 'q'; crowned = true; }
+		cb.setCheckerPiece(second.getRow(), second.getCol(), status);
 		cb.setCheckerPiece(first.getRow(), first.getCol(),'e');
 		cb.setCheckersState();
 	}
@@ -209,36 +394,83 @@ public class CheckerGame extends JFrame implements MouseListener, ActionListener
 	 * Displays the winner and disables all moves afterwards
 	 */
 	private void endGame() {
-		if (turnBlack) statusLabel.setText("Red won!");
+		int result = cb.getAdjudication();
+		if (result == Tablebase.DRAW) statusLabel.setText("Draw! (endgame database)");
+		else if (result != Tablebase.UNKNOWN)
+			statusLabel.setText(((result == Tablebase.WIN) == turnBlack ? "Black" : "Red") + " won! (endgame database)");
+		else if (turnBlack) statusLabel.setText("Red won!");
 		else statusLabel.setText("Black won!");
+		if (cb.isEnabled()) Metrics.GAMES_FINISHED.increment();
+		log(l -> l.end(GAME_ID));
 		cb.setEnabled(false);
 	}
 
 	@Override
 	public void actionPerformed(ActionEvent e) {
 		if (e.getActionCommand().equals("New")) reset();
+		if (e.getActionCommand().equals("Save Game...")) saveGame();
+		if (e.getActionCommand().equals("Load Game...")) loadGame();
+		if (e.getActionCommand().equals("Save Snapshot...")) saveSnapshot();
+		if (e.getActionCommand().equals("Load Snapshot...")) loadSnapshot();
+		if (e.getActionCommand().equals("Undo")) undoMove();
+		if (e.getActionCommand().equals("Redo")) redoMove();
 		if (e.getActionCommand().equals("Exit")) dispose();
+		if (e.getActionCommand().equals("Computer Plays Black")) {
+			computerBlack = ((JCheckBoxMenuItem) e.getSource()).isSelected();
+			computerTurn();
+		}
+		if (e.getActionCommand().equals("Computer Plays Red")) {
+			computerRed = ((JCheckBoxMenuItem) e.getSource()).isSelected();
+			computerTurn();
+		}
+		if (e.getActionCommand().equals("Show Book Moves")) {
+			showBook = ((JCheckBoxMenuItem) e.getSource()).isSelected();
+			statusLabel.setText(statusLabel.getText() + bookHint());
+		}
+		if (e.getActionCommand().equals("Monte Carlo Player")) {
+			monteCarloPlayer = ((JCheckBoxMenuItem) e.getSource()).isSelected();
+		}
+		if (e.getActionCommand().startsWith("Variant ")) 
+			setVariant(Variant.forName(e.getActionCommand().substring("Variant ".length())));
+		if (e.getActionCommand().equals("Show Analysis"))
+			showAnalysis = ((JCheckBoxMenuItem) e.getSource()).isSelected();
 		if (e.getActionCommand().equals("Checker Game Rules")) 
 			JOptionPane.showMessageDialog(this, "For more information, use the link:\n"+ 
 		"https://www.wikihow.com/Play-Checkers", "Rules", JOptionPane.INFORMATION_MESSAGE);
 		if (e.getActionCommand().equals("About Checker Game App")) 
 			JOptionPane.showMessageDialog(this, "Aly Ha, hatk@miamioh.edu, Miami University", 
 					"About", JOptionPane.INFORMATION_MESSAGE);
+		ponder();
 	}
 	
 	/**
 	 * Resets the fields to the original state
 	 */
 	private void resetFields() {
-		if ((captureMove && dest.isCapturable()) || (dest.isKing() && dest.isCapturable())) {
+		//A multi-jump goes on with the same checker unless it was just crowned
+		boolean moved = false;
+		if (captureMove && !crowned && dest.isCapturable()) {
 			picks = 1; tbm = dest; dest = null;
 		}
 		else {
-			if (!mustJump || captureMove) turnBlack = !turnBlack; 
+			if (!mustJump || captureMove) { turnBlack = !turnBlack; moved = true; }
 			picks = 0; tbm = null; dest = null;	
 		}
+		cb.setTurnBlack(turnBlack);
+		if (moved) recordMove();
+		cb.setJumpPending(tbm != null);
 		mustJump = mustJump();
-		captureMove = false;
+		captureMove = false; crowned = false;
+	}
+	
+	/**
+	 * Takes back the pick of a destination that can't be played. In the middle of a multi-jump
+	 * the jumping checker stays picked, since no other checker may move
+	 */
+	private void cancelPick() {
+		if (!cb.isJumpPending()) tbm = null;
+		picks = tbm == null ? 0 : 1;
+		dest = null;
 	}
 	
 	/**
@@ -251,13 +483,494 @@ public class CheckerGame extends JFrame implements MouseListener, ActionListener
 		return false;
 	}
 	
+	/**
+	 * Records an event of the game in the event log, if there is one. If the log fails the
+	 * game goes on without it
+	 * @param event the event to record
+	 */
+	private void log(Consumer<EventLog> event) {
+		//The log and the game record only know English checkers
+		if (log == null || variant != Variant.ENGLISH) return;
+		try {
+			event.accept(log);
+		}
+		catch (RuntimeException e) {
+			warn("The game is no longer logged: " + e.getMessage() + ".");
+			log = null;
+		}
+	}
+	
 	/**
 	 * Resets the checker board and all the related fields
 	 */
 	private void reset() {
-		cb.reset(boardStatus);
-		statusLabel.setText("New Game! Black starts first.");
-		mustJump = false; captureMove = false; tbm = null; dest = null; picks = 0; turnBlack = true;
+		cancelComputerMove();
+		cb.reset(variant == Variant.ENGLISH ? boardStatus : variant.initialBoardStatus());
+		cb.setJumpPending(false);
+		cb.setEnabled(true);
+		statusLabel.setText("New Game! Black starts first." + (variant == Variant.ENGLISH ? "" : " Playing " + variant + ".")
+				+ bookHint());
+		mustJump = false; captureMove = false; crowned = false; tbm = null; dest = null; picks = 0; turnBlack = true;
+		clicks = 0;
+		game = new GameState();
+		Metrics.GAMES_STARTED.increment();
+		log(l -> l.start(GAME_ID, game));
+		computerTurn();
+	}
+	
+	/**
+	 * Checks if the computer plays the side to move
+	 * @return true if it's the computer turn, false otherwise
+	 */
+	private boolean isComputerTurn() {
+		return isComputerTurn(turnBlack);
+	}
+	
+	/**
+	 * Checks if the computer plays a side
+	 * @param black true for black, false for red
+	 * @return true if the computer plays the side, false otherwise
+	 */
+	private boolean isComputerTurn(boolean black) {
+		if (variant != Variant.ENGLISH) return false;
+		return black ? computerBlack : computerRed;
+	}
+	
+	/**
+	 * Lets the computer move, if it's its turn. A move from the opening book is played at once;
+	 * otherwise the search runs on the engine thread, with the alpha-beta search on the other cores
+	 * or, if the Monte Carlo player is chosen, with tree search, so the event thread goes on
+	 * painting while the computer thinks. The move is then played on the event thread, unless
+	 * the game was changed in the meantime
+	 */
+	private void computerTurn() {
+		if (computerThinking || picks != 0 || !isComputerTurn() || cb.notMoveable()) return;
+		computerThinking = true;
+		final int generation = computerGeneration;
+		final Position position = new Position(cb.getPosition());
+		long bookMove = book == null ? 0 : book.pickMove(position, random);
+		if (bookMove != 0) {
+			SwingUtilities.invokeLater(() -> playComputerMove(generation, position, bookMove, true));
+			return;
+		}
+		final boolean useMonteCarlo = monteCarloPlayer;
+		engine.execute(() -> {
+			//The node pool is large, so it is only allocated once the Monte Carlo player is used
+			if (useMonteCarlo && monteCarlo == null)
+				monteCarlo = new MonteCarloSearch(Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+			long move = useMonteCarlo ? monteCarlo.search(position, THINK_MILLIS)
+					: search.search(position, THINK_MILLIS, Search.MAX_PLY);
+			SwingUtilities.invokeLater(() -> playComputerMove(generation, position, move, false));
+		});
+	}
+	
+	/**
+	 * Stops the search of the computer move, if one is running, and makes sure its move is
+	 * never played. Called whenever the game on the board is replaced
+	 */
+	private void cancelComputerMove() {
+		computerGeneration++;
+		computerThinking = false;
+		search.stop();
+		if (monteCarlo != null) monteCarlo.stop();
+	}
+	
+	/**
+	 * Plays the move the computer picked, on the event thread
+	 * @param generation the generation of the game when the move was asked for
+	 * @param position the position the move was picked in
+	 * @param move the packed move, or 0 if the computer has no moves
+	 * @param fromBook true if the move comes from the opening book
+	 */
+	private void playComputerMove(int generation, Position position, long move, boolean fromBook) {
+		if (generation != computerGeneration) return;
+		computerThinking = false;
+		//The players may have changed sides meanwhile
+		if (picks != 0 || !isComputerTurn() || cb.notMoveable() || !position.equals(cb.getPosition())) {
+			computerTurn();
+			return;
+		}
+		if (move == 0) {
+			endGame();
+			return;
+		}
+		cb.playMove(move);
+		if (game.getResult() == GameState.ONGOING) {
+			game.play(move);
+			final long played = move;
+			log(l -> l.move(GAME_ID, played));
+		}
+		turnBlack = !turnBlack;
+		cb.setTurnBlack(turnBlack);
+		mustJump = mustJump();
+		statusLabel.setText(takeWarnings() + "Computer played " + Move.toString(move) + (fromBook ? " (book). " : ". ") + cb.toString()
+				+ (turnBlack ? "[Black turn]" : "[Red turn]") + bookHint());
+		if (cb.notMoveable()) endGame();
+		else computerTurn();
+		ponder();
+	}
+	
+	/**
+	 * Adds the move that was just made on the board to the game record. If no legal move
+	 * leads to the board the record starts again from the board, so undo, saving and the
+	 * analysis never lag behind it, and the status bar says so
+	 */
+	private void recordMove() {
+		if (game.getResult() != GameState.ONGOING) return;
+		long[] moves = new long[Position.MAX_MOVES];
+		int n = game.legalMoves(moves);
+		for (int i = 0; i < n; i++) {
+			Position next = new Position(game.getPosition());
+			next.makeMove(moves[i]);
+			if (next.equals(cb.getPosition())) {
+				final long move = moves[i];
+				game.play(move);
+				log(l -> l.move(GAME_ID, move));
+				return;
+			}
+		}
+		warn("The board doesn't follow from the game record, so the record starts again from the board.");
+		game = new GameState(cb.getPosition());
+		log(l -> l.start(GAME_ID, game));
+	}
+	
+	/**
+	 * Saves the moves of the game so far to a Portable Draughts Notation file
+	 */
+	private void saveGame() {
+		JFileChooser chooser = new JFileChooser();
+		if (chooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) return;
+		try (Writer out = new BufferedWriter(new FileWriter(chooser.getSelectedFile()))) {
+			PdnGame record = new PdnGame(game);
+			record.setTag("Event", "Checker Game");
+			record.setTag("Black", computerBlack ? "Computer" : "Player");
+			record.setTag("White", computerRed ? "Computer" : "Player");
+			record.write(out);
+			statusLabel.setText("Game saved to " + chooser.getSelectedFile().getName() + ".");
+		}
+		catch (IOException e) {
+			statusLabel.setText("Could not save the game: " + e.getMessage());
+		}
+	}
+	
+	/**
+	 * Loads the first game of a Portable Draughts Notation file and goes on from its last position
+	 */
+	private void loadGame() {
+		JFileChooser chooser = new JFileChooser();
+		if (chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) return;
+		PdnGame record = new PdnGame();
+		try (PdnReader reader = new PdnReader(chooser.getSelectedFile())) {
+			if (!reader.next(record)) {
+				statusLabel.setText("No game found in " + chooser.getSelectedFile().getName() + ".");
+				return;
+			}
+		}
+		catch (IOException e) {
+			statusLabel.setText("Could not load the game: " + e.getMessage());
+			return;
+		}
+		if (record.getError() != null) {
+			statusLabel.setText("Could not load the game: " + record.getError());
+			return;
+		}
+		try {
+			game = record.toGameState();
+		}
+		catch (IllegalArgumentException e) {
+			statusLabel.setText("Could not load the game: " + e.getMessage());
+			return;
+		}
+		log(l -> l.start(GAME_ID, game));
+		showGame("Loaded a game of " + game.getPlies() + " moves. ");
+	}
+	
+	/**
+	 * Saves the game to a binary snapshot file: the moves so far (see GameState.write) and the
+	 * board as it is now, with the checker in the middle of a multi-jump (see PackedPosition)
+	 */
+	private void saveSnapshot() {
+		JFileChooser chooser = new JFileChooser();
+		if (chooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) return;
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(chooser.getSelectedFile())))) {
+			out.write(SNAPSHOT_MAGIC);
+			game.write(out);
+			int jumpSquare = tbm == null ? PackedPosition.NO_JUMP : Position.square(tbm.getRow(), tbm.getCol());
+			out.write(PackedPosition.encode(cb.getPosition(), jumpSquare));
+			statusLabel.setText("Snapshot saved to " + chooser.getSelectedFile().getName() + ".");
+		}
+		catch (IOException e) {
+			statusLabel.setText("Could not save the snapshot: " + e.getMessage());
+		}
+	}
+	
+	/**
+	 * Loads a snapshot saved by saveSnapshot and goes on from where it was saved
+	 */
+	private void loadSnapshot() {
+		JFileChooser chooser = new JFileChooser();
+		if (chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) return;
+		GameState loaded;
+		Position board = new Position();
+		int jumpSquare;
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+				new FileInputStream(chooser.getSelectedFile())))) {
+			byte[] magic = new byte[SNAPSHOT_MAGIC.length], packed = new byte[PackedPosition.BYTES];
+			in.readFully(magic);
+			if (!Arrays.equals(magic, SNAPSHOT_MAGIC)) throw new IOException("not a snapshot");
+			loaded = GameState.read(in);
+			in.readFully(packed);
+			jumpSquare = PackedPosition.decode(packed, board);
+		}
+		catch (IOException e) {
+			statusLabel.setText("Could not load the snapshot: " + e.getMessage());
+			return;
+		}
+		if (!followsFrom(board, jumpSquare, loaded)) {
+			statusLabel.setText("Could not load the snapshot: the board doesn't match the moves");
+			return;
+		}
+		game = loaded;
+		log(l -> l.start(GAME_ID, game));
+		showGame("Loaded a snapshot of " + game.getPlies() + " moves. ");
+		if (jumpSquare != PackedPosition.NO_JUMP) {
+			//Goes on with the multi-jump that was half done
+			cb.setPosition(board);
+			tbm = cb.getCheckerPiece(Position.row(jumpSquare), Position.col(jumpSquare));
+			picks = 1;
+			cb.setJumpPending(true);
+			mustJump = true;
+			statusLabel.setText("Loaded a snapshot in the middle of a jump. " + cb.toString()
+					+ (turnBlack ? "[Black turn]" : "[Red turn]"));
+		}
+	}
+	
+	/**
+	 * Checks that a board of a snapshot is the position of its game or, in the middle of a
+	 * multi-jump, the position of its game with part of a legal capture played
+	 * @param board the board
+	 * @param jumpSquare the square of the checker in the middle of a multi-jump, or NO_JUMP
+	 * @param g the game
+	 * @return true if the board follows from the game, false otherwise
+	 */
+	private static boolean followsFrom(Position board, int jumpSquare, GameState g) {
+		if (jumpSquare == PackedPosition.NO_JUMP) return board.equals(g.getPosition());
+		if (g.getResult() != GameState.ONGOING) return false;
+		long[] rest = new long[Position.MAX_MOVES], moves = new long[Position.MAX_MOVES];
+		int n = PackedPosition.generateMoves(board, jumpSquare, rest), legal = g.legalMoves(moves);
+		Position finished = new Position(), next = new Position();
+		//The rest of the jump from the board has to end where a whole move of the game ends
+		for (int i = 0; i < n; i++) {
+			finished.copyFrom(board);
+			finished.makeMove(rest[i]);
+			for (int j = 0; j < legal; j++) {
+				next.copyFrom(g.getPosition());
+				next.makeMove(moves[j]);
+				if (next.equals(finished)) return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Takes back the last move, and the computer replies before it so it's a player's turn
+	 * again. A multi-jump that is half done is taken back first
+	 */
+	private void undoMove() {
+		if (!cb.getPosition().equals(game.getPosition()) || tbm != null) {
+			showGame("Move taken back. ");
+			return;
+		}
+		long move = game.undo();
+		if (move == 0) {
+			statusLabel.setText("There is no move to undo.");
+			return;
+		}
+		log(l -> l.undo(GAME_ID));
+		String taken = Move.toString(move);
+		while (isComputerTurn(game.getPosition().isBlackToMove()) && !(computerBlack && computerRed) && game.canUndo()) {
+			taken = Move.toString(game.undo()) + " " + taken;
+			log(l -> l.undo(GAME_ID));
+		}
+		showGame("Took back " + taken + ". ");
+	}
+	
+	/**
+	 * Plays again the last move taken back
+	 */
+	private void redoMove() {
+		if (tbm != null) return;
+		long move = game.redo();
+		if (move == 0) {
+			statusLabel.setText("There is no move to redo.");
+			return;
+		}
+		log(l -> l.move(GAME_ID, move));
+		showGame("Played " + Move.toString(move) + " again. ");
+	}
+	
+	/**
+	 * Shows the current position of the game record on the board and lets the game go on from it
+	 * @param message the message to show before the counts and the turn
+	 */
+	private void showGame(String message) {
+		cancelComputerMove();
+		cb.setPosition(game.getPosition());
+		cb.setEnabled(true);
+		turnBlack = game.getPosition().isBlackToMove();
+		captureMove = false; crowned = false; tbm = null; dest = null; picks = 0;
+		cb.setTurnBlack(turnBlack);
+		cb.setJumpPending(false);
+		mustJump = mustJump();
+		statusLabel.setText(takeWarnings() + message + cb.toString() + (turnBlack ? "[Black turn]" : "[Red turn]"));
+		if (cb.notMoveable()) endGame();
+		else computerTurn();
+	}
+	
+	/**
+	 * Analyzes the position in the background while a player decides on a move, or stops the
+	 * analysis while the computer moves, in the middle of a multi-jump or once the game is over
+	 */
+	private void ponder() {
+		if (showAnalysis && variant == Variant.ENGLISH && cb.isEnabled() && !isComputerTurn() && !cb.notMoveable()
+				&& cb.getPosition().equals(game.getPosition())) {
+			if (ponderer.analyze(cb.getPosition())) analysisLabel.setText("Analyzing...");
+		}
+		else {
+			ponderer.cancel();
+			analysisLabel.setText(" ");
+		}
+	}
+	
+	/**
+	 * Switches to another variant: the board is built again at the size of the variant and a
+	 * new game starts. The features that only know English checkers (the computer players,
+	 * the analysis, undo, saving and loading) are turned off for the other variants
+	 * @param v the variant
+	 */
+	private void setVariant(Variant v) {
+		variant = v;
+		ponderer.cancel();
+		remove(cb);
+		cb = new CheckerBoard(v, v.initialBoardStatus());
+		if (v == Variant.ENGLISH) cb.setTablebase(tablebase);
+		addMouseEvent(cb);
+		add(cb, BorderLayout.CENTER);
+		for (JMenuItem item : englishOnly) item.setEnabled(v == Variant.ENGLISH);
+		pack();
+		reset();
+	}
+	
+	/**
+	 * Picks the checker to move and then its landing squares, one jump at a time, for the
+	 * variants other than English checkers, and plays the move once its path is complete. The
+	 * last square alone is enough when only one legal move of the checker ends there. Every
+	 * click is checked against the legal moves of the rules engine, which knows about flying
+	 * kings and the maximum-capture rule
+	 * @param cp the square that was clicked
+	 */
+	private void draughtsClick(CheckerPiece cp) {
+		DraughtsMoves moves = cb.getDraughtsMoves();
+		int sq = variant.square(cp.getRow(), cp.getCol());
+		if (clicks > 0 && sq >= 0) {
+			path[clicks] = sq;
+			int complete = -1, partial = 0, shortcut = -1, shortcuts = 0;
+			for (int i = 0; i < moves.size(); i++) {
+				if (moves.getFrom(i) != path[0]) continue;
+				int length = moves.getLength(i), k = 1;
+				while (k < clicks && k < length && moves.getSquare(i, k) == path[k]) k++;
+				if (k < clicks) continue;
+				if (k < length && moves.getSquare(i, k) == sq) {
+					if (k + 1 == length && complete < 0) complete = i;
+					else partial++;
+				}
+				else if (moves.getTo(i) == sq) {
+					shortcut = i;
+					shortcuts++;
+				}
+			}
+			if (complete >= 0 || (partial == 0 && shortcuts == 1)) {
+				playDraughtsMove(moves, complete >= 0 ? complete : shortcut);
+				return;
+			}
+			if (partial > 0) {
+				clicks++;
+				statusLabel.setText("Keep jumping. Please pick the next landing square");
+				return;
+			}
+			if (shortcuts > 1) {
+				statusLabel.setText("More than one capture ends there. Please pick the landing squares one by one");
+				return;
+			}
+		}
+		if (sq < 0) {
+			statusLabel.setText("Can only move diagonal. Please make another move");
+			return;
+		}
+		switch (cp.validToBeMoved(turnBlack)) {
+		case 2: statusLabel.setText(clicks > 0 ? "Not a legal move. Please make another move"
+				: "No checker to be moved. Please pick another one"); break;
+		case 3: statusLabel.setText("It's black turn. Please pick a black checker."); break;
+		case 4: statusLabel.setText("It's red turn. Please pick a red checker."); break;
+		case 1:
+			clicks = 0;
+			for (int i = 0; i < moves.size(); i++)
+				if (moves.getFrom(i) == sq) clicks = 1;
+			if (clicks == 0) {
+				if (moves.size() > 0 && moves.isCapture(0))
+					statusLabel.setText(variant.hasMaxCapture() ? "You must capture as many checkers as you can! Please pick another one"
+							: "You must make a jump if you can! Please pick another one");
+				else statusLabel.setText("That checker can't move. Please pick another one");
+				return;
+			}
+			path[0] = sq;
+			statusLabel.setText(turnBlack ? "A black checker was picked" : "A red checker was picked");
+		}
+	}
+	
+	/**
+	 * Plays a move of a variant other than English checkers and passes the turn
+	 * @param moves the legal moves
+	 * @param move the index of the move
+	 */
+	private void playDraughtsMove(DraughtsMoves moves, int move) {
+		String played = moves.toString(move);
+		cb.playDraughtsMove(moves, move);
+		clicks = 0;
+		turnBlack = !turnBlack;
+		statusLabel.setText("Played " + played + ". " + cb.toString() + (turnBlack ? "[Black turn]" : "[Red turn]"));
+		if (cb.notMoveable()) endGame();
+	}
+	
+	/**
+	 * Shows a problem on the status bar. The message is also kept for the next status after a
+	 * move, which would otherwise replace it at once
+	 * @param message the message
+	 */
+	private void warn(String message) {
+		warnings += message + " ";
+		if (statusLabel != null) statusLabel.setText(warnings);
+	}
+	
+	/**
+	 * Gets the problems that haven't been shown with a status yet and forgets them
+	 * @return the messages to put in front of the status, or an empty string
+	 */
+	private String takeWarnings() {
+		String text = warnings;
+		warnings = "";
+		return text;
+	}
+	
+	/**
+	 * Gets the book moves of the position for a player who asked to see them
+	 * @return the book moves to add to the status bar, or an empty string
+	 */
+	private String bookHint() {
+		if (book == null || !showBook || variant != Variant.ENGLISH || isComputerTurn() || tbm != null) return "";
+		String moves = book.describe(cb.getPosition());
+		return moves.isEmpty() ? "" : " Book: " + moves;
 	}
 	
 	@Override
@@ -1,67 +1,51 @@
-import java.awt.Color;
-import java.awt.Graphics;
-import java.awt.event.MouseEvent;
-import java.awt.event.MouseListener;
-
-import javax.swing.JComponent;
-
 /**
- * A class that represents a checker square on the board and draws the
- * appropriate square that matches it status
+ * A class that represents a checker square on the board. The squares are drawn
+ * by the CheckerBoard they belong to (see BoardRenderer)
  * @author Thuy 'Kim' Ha
  * April 30, 2020
  */
-public class CheckerPiece extends JComponent {
+public class CheckerPiece {
 	
 	//Fields
 	private char status;
-	private int row, col;
-	private final int SIDE = 60, RADIUS = 40;
+	private int row, col, size;
 	private boolean capturable, moveable;
 	
 	/**
-	 * Construct a CheckerPiece object using the inputs
+	 * Construct a CheckerPiece object of an 8x8 board using the inputs
 	 * @param row the row of the checker square (0 index)
 	 * @param col the column of the checker square (0 index)
 	 * @param status the status of the checker square (e, b, or r)
 	 */
 	public CheckerPiece(int row, int col, char status) {
-		if (row < 0 || row > 7) 
+		this(row, col, status, 8);
+	}
+	
+	/**
+	 * Construct a CheckerPiece object using the inputs
+	 * @param row the row of the checker square (0 index)
+	 * @param col the column of the checker square (0 index)
+	 * @param status the status of the checker square (e, b, or r)
+	 * @param size the number of rows and columns of the board
+	 */
+	public CheckerPiece(int row, int col, char status, int size) {
+		if (row < 0 || row >= size) 
 			throw new IllegalArgumentException();
-		if (col < 0 || col > 7) 
+		if (col < 0 || col >= size) 
 			throw new IllegalArgumentException();
 		if (status != 'r' && status != 'b' && status != 'e' && status != 'k' && status != 'q') 
 			throw new IllegalArgumentException();
 		if ((col + row) % 2 == 0 && status != 'e')
 			throw new IllegalArgumentException();
-		if ((col + row) % 2 == 1 && status == 'e' && (row < 3 || row > 4))
+		//The dark squares start empty only in the rows between the two armies
+		if ((col + row) % 2 == 1 && status == 'e' && (row < (size - 2) / 2 || row > size / 2))
 			throw new IllegalArgumentException();
 		this.row = row;
 		this.col = col;
 		this.status = status;
+		this.size = size;
 	}
 	
-	@Override
-	public void paintComponent(Graphics g) {
-		if ((col + row) % 2 == 0) g.setColor(Color.WHITE);
-		else g.setColor(Color.GREEN);
-		
-		g.fillRect(0, 0, SIDE, SIDE);
-		g.setColor(Color.BLACK);
-		g.drawRect(0, 0, SIDE, SIDE);
-		
-		if (status == 'e') return;
-		if (status == 'b' || status == 'k') g.setColor(Color.BLACK);
-		if (status == 'r' || status == 'q') g.setColor(Color.RED);
-		
-			
-		g.fillOval(10, 10, RADIUS, RADIUS);
-		g.setColor(Color.BLACK);
-		if (this.isKing()) g.setColor(Color.YELLOW);
-		g.drawOval(10, 10, RADIUS, RADIUS);
-		
-	}
-
 	/**
 	 * Returns the status of the checker square
 	 * @return the status
@@ -76,7 +60,6 @@ public class CheckerPiece extends JComponent {
 	 */
 	public void setStatus(char status) {
 		this.status = status;
-		repaint();
 	}
 
 	/**
@@ -134,7 +117,7 @@ public class CheckerPiece extends JComponent {
 	 * @return true if the checker is a king, false otherwise
 	 */
 	public boolean isKing() {
-		if (status == 'b' & row == 7) {
+		if (status == 'b' & row == size - 1) {
 			status = 'k';
 			return true;
 		}
@@ -166,6 +149,19 @@ public class CheckerPiece extends JComponent {
 	 * @return 1 if the checker piece is valid to be the destination; 2, 3, 4, 5, 6 if not
 	 */
 	public int validDestination (CheckerPiece tbm, char[][] boardStatus) {
+		long start = Metrics.start();
+		int valid = checkDestination(tbm, boardStatus);
+		Metrics.VALID_DESTINATION.stop(start);
+		return valid;
+	}
+
+	/**
+	 * Does the checks of validDestination
+	 * @param tbm the checker piece that will be moved
+	 * @param boardStatus the board status
+	 * @return 1 if the checker piece is valid to be the destination; 2, 3, 4, 5, 6 if not
+	 */
+	private int checkDestination(CheckerPiece tbm, char[][] boardStatus) {
 		if (status != 'e') return 2;
 		if ((row + col) % 2 == 0) return 3;
 		if (tbm.getRow() == this.row) return 4;
@@ -181,11 +177,26 @@ public class CheckerPiece extends JComponent {
 	 * @return true if a checker is being captured, false otherwise
 	 */
 	public boolean isACapture(CheckerPiece tbm, char[][] boardStatus) {
+		long start = Metrics.start();
+		boolean capture = checkCapture(tbm, boardStatus);
+		Metrics.IS_A_CAPTURE.stop(start);
+		return capture;
+	}
+
+	/**
+	 * Does the checks of isACapture
+	 * @param tbm the checker to be moved
+	 * @param boardStatus the board status
+	 * @return true if a checker is being captured, false otherwise
+	 */
+	private boolean checkCapture(CheckerPiece tbm, char[][] boardStatus) {
 		if (Math.abs(row - tbm.getRow()) != 2) return false;
 		if (Math.abs(col - tbm.getCol()) != 2) return false;
 		char mid = boardStatus[(tbm.getRow() + row)/2][(tbm.getCol() + col)/2];
-		if (mid == status || mid == 'e') return false;
-		return true;
+		if (mid == 'e') return false;
+		//Only a checker of the other color can be captured
+		boolean blackMoving = tbm.getStatus() == 'b' || tbm.getStatus() == 'k';
+		return blackMoving == (mid == 'r' || mid == 'q');
 	}
 	
 	/**
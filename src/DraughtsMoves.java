@@ -0,0 +1,147 @@
+/**
+ * A class that holds the legal moves of a DraughtsPosition: the starting and final squares of
+ * every move, the bitboard of the checkers it captures and the squares it lands on, jump by
+ * jump. The buffers are kept from one call to the next and only grow, so once they are large
+ * enough generating moves creates no garbage. A list isn't thread safe; every thread needs
+ * its own
+ */
+public class DraughtsMoves {
+
+	//Constants
+	private static final int PATH_LENGTH = 24;
+
+	//Fields
+	private int[] from = new int[64], to = new int[64];
+	private long[] captured = new long[64];
+	private byte[] paths = new byte[64 * PATH_LENGTH];
+	private byte[] lengths = new byte[64];
+	private int count;
+
+	/**
+	 * Empties the list
+	 */
+	void clear() {
+		count = 0;
+	}
+
+	/**
+	 * Adds a move
+	 * @param path the squares of the move, the starting square first
+	 * @param length the number of squares of the path
+	 * @param capturedBits the bitboard of the captured checkers
+	 */
+	void add(int[] path, int length, long capturedBits) {
+		if (count == from.length) grow();
+		from[count] = path[0];
+		to[count] = path[length - 1];
+		captured[count] = capturedBits;
+		lengths[count] = (byte) length;
+		int base = count * PATH_LENGTH;
+		for (int k = 0; k < length; k++) paths[base + k] = (byte) path[k];
+		count++;
+	}
+
+	/**
+	 * Doubles the buffers
+	 */
+	private void grow() {
+		int n = from.length * 2;
+		int[] moreFrom = new int[n], moreTo = new int[n];
+		long[] moreCaptured = new long[n];
+		byte[] morePaths = new byte[n * PATH_LENGTH], moreLengths = new byte[n];
+		System.arraycopy(from, 0, moreFrom, 0, count);
+		System.arraycopy(to, 0, moreTo, 0, count);
+		System.arraycopy(captured, 0, moreCaptured, 0, count);
+		System.arraycopy(paths, 0, morePaths, 0, count * PATH_LENGTH);
+		System.arraycopy(lengths, 0, moreLengths, 0, count);
+		from = moreFrom; to = moreTo; captured = moreCaptured; paths = morePaths; lengths = moreLengths;
+	}
+
+	/**
+	 * Checks if the list already has a move
+	 * @param start the starting square
+	 * @param end the final square
+	 * @param capturedBits the bitboard of the captured checkers
+	 * @return true if a move with the same squares and captures is in the list
+	 */
+	boolean contains(int start, int end, long capturedBits) {
+		for (int i = 0; i < count; i++)
+			if (from[i] == start && to[i] == end && captured[i] == capturedBits) return true;
+		return false;
+	}
+
+	/**
+	 * Gets the number of moves
+	 * @return the number of moves
+	 */
+	public int size() {
+		return count;
+	}
+
+	/**
+	 * Gets the starting square of a move
+	 * @param move the index of the move
+	 * @return the square number
+	 */
+	public int getFrom(int move) {
+		return from[move];
+	}
+
+	/**
+	 * Gets the final square of a move
+	 * @param move the index of the move
+	 * @return the square number
+	 */
+	public int getTo(int move) {
+		return to[move];
+	}
+
+	/**
+	 * Gets the checkers captured by a move
+	 * @param move the index of the move
+	 * @return the bitboard of the captured checkers (see Variant.square)
+	 */
+	public long getCaptured(int move) {
+		return captured[move];
+	}
+
+	/**
+	 * Checks if a move is a capture
+	 * @param move the index of the move
+	 * @return true if the move captures
+	 */
+	public boolean isCapture(int move) {
+		return captured[move] != 0;
+	}
+
+	/**
+	 * Gets the number of squares of the path of a move, the starting square included
+	 * @param move the index of the move
+	 * @return the number of squares (the number of jumps + 1)
+	 */
+	public int getLength(int move) {
+		return lengths[move];
+	}
+
+	/**
+	 * Gets a square of the path of a move
+	 * @param move the index of the move
+	 * @param k 0 for the starting square, then 1 for the landing square of every jump
+	 * @return the square number
+	 */
+	public int getSquare(int move, int k) {
+		return paths[move * PATH_LENGTH + k];
+	}
+
+	/**
+	 * Formats a move in the standard numeric notation, e.g. "32-28" or "28x19x10"
+	 * @param move the index of the move
+	 * @return the move as text
+	 */
+	public String toString(int move) {
+		StringBuilder sb = new StringBuilder();
+		sb.append(getSquare(move, 0) + 1);
+		for (int k = 1; k < lengths[move]; k++) sb.append(isCapture(move) ? 'x' : '-').append(getSquare(move, k) + 1);
+		return sb.toString();
+	}
+}
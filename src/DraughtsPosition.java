@@ -0,0 +1,405 @@
+/**
+ * A class that holds a draughts position of any Variant in three 64-bit bitboards (black,
+ * red and kings, in the ghost-bit layout described in Variant) and generates its legal moves.
+ * Black starts at the top of the board and moves first, as in CheckerGame.
+ *
+ * Simple moves of men are found for all the men at once with two shifts per side. Captures
+ * are followed checker by checker: a man jumps to a neighbor's neighbor, a flying king looks
+ * along each diagonal for the nearest checker with one bit scan of the precomputed ray, so
+ * no square is visited one at a time. Captured checkers stay on the board until the capture
+ * is over, so a checker can't be jumped twice and blocks the way like any other. When the
+ * variant has the maximum-capture rule only the captures that take the most checkers are
+ * kept
+ */
+public class DraughtsPosition {
+
+	//Fields
+	private final Variant variant;
+	private long black, red, kings;
+	private boolean blackToMove;
+	//The state of the capture being followed: the moving side, the opponent, the empty squares,
+	//the path so far and the most checkers a capture has taken
+	private long opp, empty;
+	private final int[] path = new int[32];
+	private int most;
+
+	/**
+	 * Constructs the starting position of a variant
+	 * @param variant the variant
+	 */
+	public DraughtsPosition(Variant variant) {
+		this(variant, variant.initialBoardStatus(), true);
+	}
+
+	/**
+	 * Constructs a position from a board
+	 * @param variant the variant
+	 * @param boardStatus the status of every square by rows and columns (e, b, r, k or q)
+	 * @param blackToMove true if black is to move
+	 */
+	public DraughtsPosition(Variant variant, char[][] boardStatus, boolean blackToMove) {
+		this.variant = variant;
+		this.blackToMove = blackToMove;
+		for (int row = 0; row < variant.getSize(); row++)
+			for (int col = 0; col < variant.getSize(); col++)
+				if ((row + col) % 2 == 1) set(row, col, boardStatus[row][col]);
+	}
+
+	/**
+	 * Constructs a copy of a position
+	 * @param other the position to copy
+	 */
+	public DraughtsPosition(DraughtsPosition other) {
+		this.variant = other.variant;
+		copyFrom(other);
+	}
+
+	/**
+	 * Copies another position of the same variant into this one
+	 * @param other the position to copy
+	 */
+	public void copyFrom(DraughtsPosition other) {
+		black = other.black;
+		red = other.red;
+		kings = other.kings;
+		blackToMove = other.blackToMove;
+	}
+
+	/**
+	 * Gets the status of a square
+	 * @param row the row (0 index)
+	 * @param col the column (0 index)
+	 * @return e, b, r, k (black king) or q (red king)
+	 */
+	public char get(int row, int col) {
+		int sq = variant.square(row, col);
+		if (sq < 0) return 'e';
+		long b = 1L << variant.bit(sq);
+		if ((black & b) != 0) return (kings & b) != 0 ? 'k' : 'b';
+		if ((red & b) != 0) return (kings & b) != 0 ? 'q' : 'r';
+		return 'e';
+	}
+
+	/**
+	 * Sets the status of a dark square
+	 * @param row the row (0 index)
+	 * @param col the column (0 index)
+	 * @param status e, b, r, k (black king) or q (red king)
+	 */
+	public void set(int row, int col, char status) {
+		long b = 1L << variant.bit(variant.square(row, col));
+		black &= ~b; red &= ~b; kings &= ~b;
+		if (status == 'b' || status == 'k') black |= b;
+		if (status == 'r' || status == 'q') red |= b;
+		if (status == 'k' || status == 'q') kings |= b;
+	}
+
+	/**
+	 * Gets the status of every square
+	 * @return the status of every square by rows and columns
+	 */
+	public char[][] toBoardStatus() {
+		int size = variant.getSize();
+		char[][] status = new char[size][size];
+		for (int row = 0; row < size; row++)
+			for (int col = 0; col < size; col++) status[row][col] = get(row, col);
+		return status;
+	}
+
+	/**
+	 * Gets the variant of the position
+	 * @return the variant
+	 */
+	public Variant getVariant() {
+		return variant;
+	}
+
+	/**
+	 * Gets the black checkers
+	 * @return the bitboard of the black checkers
+	 */
+	public long getBlack() {
+		return black;
+	}
+
+	/**
+	 * Gets the red checkers
+	 * @return the bitboard of the red checkers
+	 */
+	public long getRed() {
+		return red;
+	}
+
+	/**
+	 * Gets the kings of both colors
+	 * @return the bitboard of the kings
+	 */
+	public long getKings() {
+		return kings;
+	}
+
+	/**
+	 * Checks whose turn it is
+	 * @return true if black is to move
+	 */
+	public boolean isBlackToMove() {
+		return blackToMove;
+	}
+
+	/**
+	 * Sets whose turn it is
+	 * @param blackToMove true if black is to move
+	 */
+	public void setBlackToMove(boolean blackToMove) {
+		this.blackToMove = blackToMove;
+	}
+
+	/**
+	 * Generates the legal moves of the side to move: the captures if there are any (only
+	 * those that take the most checkers under the maximum-capture rule), the simple moves
+	 * otherwise
+	 * @param moves the list to fill
+	 * @return the number of moves
+	 */
+	public int generateMoves(DraughtsMoves moves) {
+		moves.clear();
+		long own = blackToMove ? black : red;
+		opp = blackToMove ? red : black;
+		empty = variant.getBoard() & ~(black | red);
+		most = 0;
+		for (long c = own; c != 0; c &= c - 1) {
+			int bit = Long.numberOfTrailingZeros(c);
+			long b = 1L << bit;
+			path[0] = variant.square(bit);
+			//The moving checker leaves its square, which it may land on again
+			empty |= b;
+			if ((kings & b) != 0 && variant.hasFlyingKings()) flyingJumps(moves, bit, 0, 0);
+			else jumps(moves, bit, (kings & b) != 0, 0, 0);
+			empty &= ~b;
+		}
+		if (moves.size() == 0) addSimpleMoves(moves, own);
+		return moves.size();
+	}
+
+	/**
+	 * Follows the jumps of a man, or of a king that doesn't fly, one square over a checker
+	 * @param moves the list to fill
+	 * @param at the bit the checker is on
+	 * @param king true for a king
+	 * @param captured the checkers captured so far
+	 * @param depth the number of jumps so far
+	 */
+	private void jumps(DraughtsMoves moves, int at, boolean king, long captured, int depth) {
+		boolean jumped = false;
+		for (int dir = 0; dir < Variant.DIRECTIONS; dir++) {
+			if (!king && !variant.menCaptureBackward() && (dir < 2) != blackToMove) continue;
+			long over = variant.neighbor(dir, at) & opp & ~captured;
+			if (over == 0) continue;
+			long land = variant.neighbor(dir, Long.numberOfTrailingZeros(over)) & empty;
+			if (land == 0) continue;
+			jumped = true;
+			int to = Long.numberOfTrailingZeros(land);
+			path[depth + 1] = variant.square(to);
+			if (!king && !variant.menCaptureBackward() && (land & variant.getKingRow(blackToMove)) != 0)
+				//Under English rules a man that reaches the last row is crowned and its move ends there
+				record(moves, depth + 1, captured | over);
+			else jumps(moves, to, king, captured | over, depth + 1);
+		}
+		if (!jumped && depth > 0) record(moves, depth, captured);
+	}
+
+	/**
+	 * Follows the jumps of a flying king, which captures the nearest checker along a diagonal
+	 * and lands on any empty square behind it
+	 * @param moves the list to fill
+	 * @param at the bit the king is on
+	 * @param captured the checkers captured so far
+	 * @param depth the number of jumps so far
+	 */
+	private void flyingJumps(DraughtsMoves moves, int at, long captured, int depth) {
+		boolean jumped = false;
+		for (int dir = 0; dir < Variant.DIRECTIONS; dir++) {
+			long ray = variant.ray(dir, at), blockers = ray & ~empty;
+			if (blockers == 0) continue;
+			int hit = Variant.nearest(dir, blockers);
+			long over = 1L << hit;
+			if ((over & opp & ~captured) == 0) continue;
+			long behind = variant.ray(dir, hit), lands = behind & empty;
+			long next = behind & ~empty;
+			if (next != 0) {
+				int stop = Variant.nearest(dir, next);
+				lands &= ~(variant.ray(dir, stop) | 1L << stop);
+			}
+			for (; lands != 0; lands &= lands - 1) {
+				jumped = true;
+				int to = Long.numberOfTrailingZeros(lands);
+				path[depth + 1] = variant.square(to);
+				flyingJumps(moves, to, captured | over, depth + 1);
+			}
+		}
+		if (!jumped && depth > 0) record(moves, depth, captured);
+	}
+
+	/**
+	 * Records the capture on the path, keeping only the longest ones under the maximum-capture rule
+	 * @param moves the list to fill
+	 * @param jumps the number of jumps
+	 * @param captured the captured checkers
+	 */
+	private void record(DraughtsMoves moves, int jumps, long captured) {
+		if (variant.hasMaxCapture()) {
+			if (jumps < most) return;
+			if (jumps > most) {
+				moves.clear();
+				most = jumps;
+			}
+		}
+		//Different paths that capture the same checkers are the same move
+		if (moves.contains(path[0], path[jumps], captured)) return;
+		moves.add(path, jumps + 1, captured);
+	}
+
+	/**
+	 * Adds the simple moves: men step forward, kings step (or fly) along any diagonal
+	 * @param moves the list to fill
+	 * @param own the checkers of the side to move
+	 */
+	private void addSimpleMoves(DraughtsMoves moves, long own) {
+		long men = own & ~kings;
+		int first = blackToMove ? 0 : 2;
+		for (int dir = first; dir < first + 2; dir++)
+			for (long t = variant.step(men, dir) & empty; t != 0; t &= t - 1) {
+				int to = Long.numberOfTrailingZeros(t);
+				//The man came from the neighbor in the opposite direction
+				addSimpleMove(moves, Long.numberOfTrailingZeros(variant.neighbor(3 - dir, to)), to);
+			}
+		for (long k = own & kings; k != 0; k &= k - 1) {
+			int from = Long.numberOfTrailingZeros(k);
+			for (int dir = 0; dir < Variant.DIRECTIONS; dir++) {
+				long targets;
+				if (variant.hasFlyingKings()) {
+					long ray = variant.ray(dir, from), blockers = ray & ~empty;
+					targets = ray;
+					if (blockers != 0) {
+						int stop = Variant.nearest(dir, blockers);
+						targets &= ~(variant.ray(dir, stop) | 1L << stop);
+					}
+				}
+				else targets = variant.neighbor(dir, from) & empty;
+				for (; targets != 0; targets &= targets - 1) addSimpleMove(moves, from, Long.numberOfTrailingZeros(targets));
+			}
+		}
+	}
+
+	/**
+	 * Adds one simple move
+	 * @param moves the list to fill
+	 * @param from the bit of the starting square
+	 * @param to the bit of the final square
+	 */
+	private void addSimpleMove(DraughtsMoves moves, int from, int to) {
+		path[0] = variant.square(from);
+		path[1] = variant.square(to);
+		moves.add(path, 2, 0);
+	}
+
+	/**
+	 * Plays a move, crowning a man that ends it on the last row
+	 * @param moves the list the move is in
+	 * @param move the index of the move
+	 */
+	public void makeMove(DraughtsMoves moves, int move) {
+		long from = 1L << variant.bit(moves.getFrom(move)), to = 1L << variant.bit(moves.getTo(move));
+		long captured = moves.getCaptured(move);
+		boolean king = (kings & from) != 0;
+		if (blackToMove) {
+			black = black & ~from | to;
+			red &= ~captured;
+		}
+		else {
+			red = red & ~from | to;
+			black &= ~captured;
+		}
+		kings &= ~(captured | from);
+		if (king || (to & variant.getKingRow(blackToMove)) != 0) kings |= to;
+		blackToMove = !blackToMove;
+	}
+
+	/**
+	 * Counts the checkers of a side that can capture, or move when none can, the way the
+	 * legal moves of that side start
+	 * @param forBlack true for black, false for red
+	 * @param moves a list to generate the moves into
+	 * @return the bitboard of the checkers that have a legal move
+	 */
+	public long movers(boolean forBlack, DraughtsMoves moves) {
+		boolean side = blackToMove;
+		blackToMove = forBlack;
+		int n = generateMoves(moves);
+		blackToMove = side;
+		long movers = 0;
+		for (int i = 0; i < n; i++) movers |= 1L << variant.bit(moves.getFrom(i));
+		return movers;
+	}
+
+	/**
+	 * Counts the leaf positions of the move tree down to a depth
+	 * @param depth the depth
+	 * @param stack a position and a move list for every depth
+	 * @param lists the move lists of every depth
+	 * @param ply the depth of this position
+	 * @return the number of leaves
+	 */
+	long perft(int depth, DraughtsPosition[] stack, DraughtsMoves[] lists, int ply) {
+		DraughtsMoves moves = lists[ply];
+		int n = generateMoves(moves);
+		if (depth == 1) return n;
+		long total = 0;
+		DraughtsPosition next = stack[ply + 1];
+		for (int i = 0; i < n; i++) {
+			next.copyFrom(this);
+			next.makeMove(moves, i);
+			total += next.perft(depth - 1, stack, lists, ply + 1);
+		}
+		return total;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (!(o instanceof DraughtsPosition)) return false;
+		DraughtsPosition p = (DraughtsPosition) o;
+		return p.variant == variant && p.black == black && p.red == red && p.kings == kings && p.blackToMove == blackToMove;
+	}
+
+	@Override
+	public int hashCode() {
+		return Long.hashCode(black * 31 + red * 17 + kings) ^ (blackToMove ? 1 : 0);
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		for (char[] row : toBoardStatus()) sb.append(new String(row).replace('e', '.')).append('\n');
+		return sb.append(blackToMove ? "Black" : "Red").append(" to move").toString();
+	}
+
+	//Main method
+	public static void main(String[] args) {
+		Variant variant = Variant.forName(args.length > 0 ? args[0] : "international");
+		int maxDepth = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+		DraughtsPosition p = new DraughtsPosition(variant);
+		DraughtsPosition[] stack = new DraughtsPosition[maxDepth + 1];
+		DraughtsMoves[] lists = new DraughtsMoves[maxDepth + 1];
+		for (int i = 0; i <= maxDepth; i++) {
+			stack[i] = new DraughtsPosition(variant);
+			lists[i] = new DraughtsMoves();
+		}
+		System.out.println("Perft of " + variant);
+		for (int depth = 1; depth <= maxDepth; depth++) {
+			long start = System.nanoTime();
+			long leaves = p.perft(depth, stack, lists, 0);
+			double seconds = (System.nanoTime() - start) / 1e9;
+			System.out.printf("depth %d: %d (%.2f s, %.1f M leaves/s)%n", depth, leaves, seconds, leaves / seconds / 1e6);
+		}
+	}
+}
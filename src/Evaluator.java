@@ -0,0 +1,150 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+
+/**
+ * A class that scores a position for the computer player. Scores are in hundredths of a
+ * man and are seen from the side to move (positive is good for the side to move). The score
+ * is a weighted sum of features, each counted for black minus red: men, kings, men on their
+ * own back rank, checkers on the center squares, rows advanced by the men and the number of
+ * simple moves (mobility). The weights can be tuned with Tuner and read from a weights file,
+ * one "name=value" line per weight
+ */
+public class Evaluator {
+
+	//Constants
+	public static final int MAN = 0, KING = 1, BACK_RANK = 2, CENTER = 3, ADVANCE = 4, MOBILITY = 5, FEATURES = 6;
+	public static final String[] NAMES = { "man", "king", "back_rank", "center", "advance", "mobility" };
+	private static final int[] DEFAULT_WEIGHTS = { 100, 130, 8, 4, 2, 0 };
+	private static final int CENTER_SQUARES = 0x00666600, BLACK_BACK_RANK = 0x0000000F, RED_BACK_RANK = 0xF0000000;
+
+	//Fields
+	private final int[] weights;
+
+	/**
+	 * Constructs an evaluator with the default weights
+	 */
+	public Evaluator() {
+		this(DEFAULT_WEIGHTS);
+	}
+
+	/**
+	 * Constructs an evaluator
+	 * @param weights the weight of every feature, indexed by MAN, KING and so on
+	 */
+	public Evaluator(int[] weights) {
+		if (weights.length != FEATURES) throw new IllegalArgumentException("Expected " + FEATURES + " weights");
+		this.weights = weights.clone();
+	}
+
+	/**
+	 * Gets the weights
+	 * @return a copy of the weight of every feature
+	 */
+	public int[] getWeights() {
+		return weights.clone();
+	}
+
+	/**
+	 * Scores a position
+	 * @param p the position to score
+	 * @return the score for the side to move
+	 */
+	public int evaluate(Position p) {
+		int black = p.getBlack(), red = p.getRed(), kings = p.getKings();
+		int blackMen = black & ~kings, redMen = red & ~kings;
+		int score = weights[MAN] * (Integer.bitCount(blackMen) - Integer.bitCount(redMen))
+				+ weights[KING] * (Integer.bitCount(black & kings) - Integer.bitCount(red & kings))
+				+ weights[BACK_RANK] * (Integer.bitCount(blackMen & BLACK_BACK_RANK) - Integer.bitCount(redMen & RED_BACK_RANK))
+				+ weights[CENTER] * (Integer.bitCount(black & CENTER_SQUARES) - Integer.bitCount(red & CENTER_SQUARES))
+				+ weights[ADVANCE] * (advancement(blackMen, true) - advancement(redMen, false));
+		if (weights[MOBILITY] != 0) score += weights[MOBILITY] * (mobility(p, true) - mobility(p, false));
+		return p.isBlackToMove() ? score : -score;
+	}
+
+	/**
+	 * Gets the features of a position, each counted for black minus red, so that the score
+	 * for black is the sum of the weighted features
+	 * @param p the position
+	 * @param out the buffer to write the features to (at least FEATURES long)
+	 */
+	public static void features(Position p, int[] out) {
+		int black = p.getBlack(), red = p.getRed(), kings = p.getKings();
+		int blackMen = black & ~kings, redMen = red & ~kings;
+		out[MAN] = Integer.bitCount(blackMen) - Integer.bitCount(redMen);
+		out[KING] = Integer.bitCount(black & kings) - Integer.bitCount(red & kings);
+		out[BACK_RANK] = Integer.bitCount(blackMen & BLACK_BACK_RANK) - Integer.bitCount(redMen & RED_BACK_RANK);
+		out[CENTER] = Integer.bitCount(black & CENTER_SQUARES) - Integer.bitCount(red & CENTER_SQUARES);
+		out[ADVANCE] = advancement(blackMen, true) - advancement(redMen, false);
+		out[MOBILITY] = mobility(p, true) - mobility(p, false);
+	}
+
+	/**
+	 * Sums how many rows the men of one color have advanced toward their crowning row
+	 * @param men the squares of the men
+	 * @param black true for black men, false for red men
+	 * @return the total number of rows advanced
+	 */
+	static int advancement(int men, boolean black) {
+		int rows = 0;
+		for (int row = 1; row < 8; row++) {
+			int count = Integer.bitCount(men & (0xF << (row * 4)));
+			rows += count * (black ? row : 7 - row);
+		}
+		return rows;
+	}
+
+	/**
+	 * Counts the simple (non-capture) moves of one color, whoever is to move
+	 * @param p the position
+	 * @param black true for black, false for red
+	 * @return the number of simple moves
+	 */
+	static int mobility(Position p, boolean black) {
+		int own = black ? p.getBlack() : p.getRed(), empty = p.getEmpty(), kings = own & p.getKings();
+		int forward = black ? Integer.bitCount(Position.downLeft(own) & empty) + Integer.bitCount(Position.downRight(own) & empty)
+				: Integer.bitCount(Position.upLeft(own) & empty) + Integer.bitCount(Position.upRight(own) & empty);
+		int backward = black ? Integer.bitCount(Position.upLeft(kings) & empty) + Integer.bitCount(Position.upRight(kings) & empty)
+				: Integer.bitCount(Position.downLeft(kings) & empty) + Integer.bitCount(Position.downRight(kings) & empty);
+		return forward + backward;
+	}
+
+	/**
+	 * Reads an evaluator from a weights file. Weights the file doesn't name keep their default
+	 * @param file the file of "name=value" lines ('#' starts a comment)
+	 * @return the evaluator
+	 * @throws IOException if the file can't be read or names an unknown weight
+	 */
+	public static Evaluator load(File file) throws IOException {
+		int[] weights = DEFAULT_WEIGHTS.clone();
+		try (BufferedReader in = new BufferedReader(new FileReader(file))) {
+			for (String line = in.readLine(); line != null; line = in.readLine()) {
+				int comment = line.indexOf('#');
+				if (comment >= 0) line = line.substring(0, comment);
+				if (line.trim().isEmpty()) continue;
+				int equals = line.indexOf('=');
+				int feature = equals < 0 ? -1 : Arrays.asList(NAMES).indexOf(line.substring(0, equals).trim());
+				if (feature < 0) throw new IOException("Bad weight in " + file + ": " + line);
+				try {
+					weights[feature] = Integer.parseInt(line.substring(equals + 1).trim());
+				}
+				catch (NumberFormatException e) {
+					throw new IOException("Bad weight in " + file + ": " + line);
+				}
+			}
+		}
+		return new Evaluator(weights);
+	}
+
+	/**
+	 * Writes the weights in the format read by load
+	 * @param out the output
+	 * @throws IOException if the output can't be written
+	 */
+	public void write(Writer out) throws IOException {
+		for (int i = 0; i < FEATURES; i++) out.write(NAMES[i] + "=" + weights[i] + "\n");
+	}
+}
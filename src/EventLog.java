@@ -0,0 +1,461 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32C;
+
+/**
+ * A class that keeps the games in progress in an append-only log file, so that the games
+ * can be rebuilt after the process is killed or crashes. Every event (a game started or
+ * loaded, a move played or taken back, a game ended) is one record:
+ *
+ *   length (int)  CRC32C of the rest (int)  type (byte)  game id (int)  data
+ *
+ * where the data of a game is GameState.write and the data of a move is the packed move.
+ * Events are buffered and a background thread writes and fsyncs them every few milliseconds,
+ * so many events share one fsync and the caller never waits for the disk; at most the last
+ * sync interval is lost in a crash. When the log grows well past the size of the games it
+ * holds, it is compacted into a snapshot of one record per live game, written to a temporary
+ * file and renamed over the log, so recovery time stays bounded. On opening, the log is
+ * replayed, and a torn or damaged tail (a crash in the middle of a write) is cut off. A
+ * record that is whole but can't be applied, such as a take-back with nothing to take back,
+ * is skipped and counted, and the records after it are still replayed.
+ *
+ * The log keeps its own copy of every live game, which it replays the events on, so that it
+ * can take snapshots without stopping the callers
+ */
+public class EventLog implements Closeable {
+
+	//Constants
+	public static final int DEFAULT_SYNC_MILLIS = 20;
+	public static final long DEFAULT_COMPACT_BYTES = 16L << 20;
+	private static final byte[] MAGIC = { 'C', 'K', 'E', 'L' };
+	private static final byte GAME = 1, MOVE = 2, UNDO = 3, END = 4;
+	private static final int HEADER = 8, EVENT = 5, MAX_RECORD = 1 << 20, FLUSH_BYTES = 1 << 18;
+
+	//Fields
+	private final File file;
+	private final int syncMillis;
+	private final Map<Integer, GameState> games = new HashMap<Integer, GameState>();
+	private final CRC32C crc = new CRC32C();
+	private final byte[] moveData = new byte[8];
+	private final Object fileLock = new Object();
+	private final Thread syncer, hook;
+	private FileChannel channel;
+	private ByteBuffer pending = ByteBuffer.allocate(1 << 16), spare = ByteBuffer.allocate(1 << 16);
+	private long logBytes, snapshotBytes, truncated;
+	private int recovered, skipped;
+	private volatile long compactBytes = DEFAULT_COMPACT_BYTES;
+	private volatile boolean closed;
+	private volatile IOException failure;
+
+	/**
+	 * Opens a log with the default sync interval, replaying the events it holds
+	 * @param file the log file, created if it doesn't exist
+	 * @throws IOException if the file can't be read or isn't an event log
+	 */
+	public EventLog(File file) throws IOException {
+		this(file, DEFAULT_SYNC_MILLIS);
+	}
+
+	/**
+	 * Opens a log, replaying the events it holds
+	 * @param file the log file, created if it doesn't exist
+	 * @param syncMillis the longest time an event waits to be written and synced
+	 * @throws IOException if the file can't be read or isn't an event log
+	 */
+	public EventLog(File file, int syncMillis) throws IOException {
+		this.file = file;
+		this.syncMillis = syncMillis;
+		channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+		try {
+			logBytes = snapshotBytes = recover();
+		}
+		catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+		channel.position(logBytes);
+		syncer = new Thread(this::syncLoop, "EventLog-sync");
+		syncer.setDaemon(true);
+		syncer.start();
+		//Whatever is buffered is still written when the JVM exits normally
+		hook = new Thread(() -> {
+			try {
+				close();
+			}
+			catch (IOException e) {
+				System.out.println("Could not sync the event log: " + e.getMessage());
+			}
+		});
+		Runtime.getRuntime().addShutdownHook(hook);
+	}
+
+	/**
+	 * Replays the log file into the live games, cutting off a damaged tail. Only a bad length
+	 * or checksum ends the replay; a good record that can't be applied is skipped
+	 * @return the length of the good part of the file
+	 * @throws IOException if the file can't be read or isn't an event log
+	 */
+	private long recover() throws IOException {
+		long size = channel.size();
+		if (size == 0) {
+			channel.write(ByteBuffer.wrap(MAGIC), 0);
+			channel.force(true);
+			return MAGIC.length;
+		}
+		if (size > Integer.MAX_VALUE) throw new IOException("The event log is too large: " + file);
+		ByteBuffer in = ByteBuffer.allocate((int) size);
+		while (in.hasRemaining() && channel.read(in, in.position()) >= 0);
+		in.flip();
+		for (byte b : MAGIC)
+			if (!in.hasRemaining() || in.get() != b) throw new IOException("Not an event log: " + file);
+		long good = MAGIC.length;
+		while (in.remaining() >= HEADER) {
+			int length = in.getInt(), sum = in.getInt();
+			if (length < EVENT || length > MAX_RECORD || length > in.remaining()) break;
+			crc.reset();
+			crc.update(in.array(), in.position(), length);
+			if ((int) crc.getValue() != sum) break;
+			ByteBuffer record = in.slice();
+			record.limit(length);
+			in.position(in.position() + length);
+			good = in.position();
+			if (replay(record)) recovered++;
+			else skipped++;
+		}
+		if (good < size) {
+			truncated = size - good;
+			channel.truncate(good);
+			channel.force(true);
+		}
+		return good;
+	}
+
+	/**
+	 * Applies a record to the live games. A game record that can't be read drops the game
+	 * with its id, so the moves logged after it aren't played on the game it replaced
+	 * @param record the record after its checksum
+	 * @return true if the record made sense, false otherwise
+	 */
+	private boolean replay(ByteBuffer record) {
+		byte type = record.get();
+		int id = record.getInt();
+		GameState g = games.get(id);
+		try {
+			switch (type) {
+			case GAME:
+				byte[] data = new byte[record.remaining()];
+				record.get(data);
+				games.remove(id);
+				games.put(id, fromBytes(data));
+				return true;
+			case MOVE:
+				if (g == null || record.remaining() != moveData.length) return false;
+				g.play(record.getLong());
+				return true;
+			case UNDO:
+				return g != null && g.undo() != 0;
+			case END:
+				games.remove(id);
+				return true;
+			default:
+				return false;
+			}
+		}
+		catch (IOException | IllegalArgumentException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Writes a game to bytes
+	 * @param g the game
+	 * @return the bytes of GameState.write
+	 */
+	private static byte[] toBytes(GameState g) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try {
+			g.write(new DataOutputStream(bytes));
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Reads a game from bytes
+	 * @param data the bytes of GameState.write
+	 * @return the game
+	 * @throws IOException if the bytes don't hold a legal game
+	 */
+	private static GameState fromBytes(byte[] data) throws IOException {
+		return GameState.read(new DataInputStream(new ByteArrayInputStream(data)));
+	}
+
+	/**
+	 * Gets copies of the live games, e.g. the games recovered when the log was opened
+	 * @return the games by id
+	 */
+	public synchronized Map<Integer, GameState> getGames() {
+		Map<Integer, GameState> copies = new HashMap<Integer, GameState>();
+		try {
+			for (Map.Entry<Integer, GameState> e : games.entrySet())
+				copies.put(e.getKey(), fromBytes(toBytes(e.getValue())));
+		}
+		catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		return copies;
+	}
+
+	/**
+	 * Gets the number of records replayed when the log was opened
+	 * @return the number of records
+	 */
+	public int getRecovered() {
+		return recovered;
+	}
+
+	/**
+	 * Gets the number of good records that couldn't be applied when the log was opened
+	 * @return the number of records
+	 */
+	public int getSkipped() {
+		return skipped;
+	}
+
+	/**
+	 * Gets the number of bytes of damaged tail cut off when the log was opened
+	 * @return the number of bytes
+	 */
+	public long getTruncated() {
+		return truncated;
+	}
+
+	/**
+	 * Sets the size the log has to reach before it is compacted. It is also never compacted
+	 * before it is four times the size of its last snapshot
+	 * @param compactBytes the size in bytes
+	 */
+	public void setCompactBytes(long compactBytes) {
+		this.compactBytes = compactBytes;
+	}
+
+	/**
+	 * Records a game that was started or loaded, replacing any game with the same id
+	 * @param id the game id
+	 * @param g the game, with the moves played so far
+	 */
+	public synchronized void start(int id, GameState g) {
+		byte[] data = toBytes(g);
+		try {
+			games.put(id, fromBytes(data));
+		}
+		catch (IOException e) {
+			throw new IllegalArgumentException(e);
+		}
+		append(GAME, id, data);
+	}
+
+	/**
+	 * Records a move
+	 * @param id the game id
+	 * @param move the packed move, which must be legal in the game
+	 */
+	public synchronized void move(int id, long move) {
+		GameState g = games.get(id);
+		if (g == null) throw new IllegalArgumentException("No such game: " + id);
+		g.play(move);
+		for (int i = 0; i < moveData.length; i++) moveData[i] = (byte) (move >>> 56 - 8 * i);
+		append(MOVE, id, moveData);
+	}
+
+	/**
+	 * Records a move taken back. A move played again is recorded with move
+	 * @param id the game id
+	 */
+	public synchronized void undo(int id) {
+		GameState g = games.get(id);
+		if (g == null || g.undo() == 0) throw new IllegalArgumentException("No move to undo in game " + id);
+		append(UNDO, id, new byte[0]);
+	}
+
+	/**
+	 * Records a game that is over or abandoned, which is then not recovered
+	 * @param id the game id
+	 */
+	public synchronized void end(int id) {
+		if (games.remove(id) != null) append(END, id, new byte[0]);
+	}
+
+	/**
+	 * Adds a record to the buffered events, waking the sync thread if the buffer is large
+	 * @param type the record type
+	 * @param id the game id
+	 * @param data the record data
+	 */
+	private void append(byte type, int id, byte[] data) {
+		if (closed) throw new IllegalStateException("The event log is closed");
+		if (failure != null) throw new UncheckedIOException(failure);
+		int size = HEADER + EVENT + data.length;
+		if (pending.remaining() < size) {
+			ByteBuffer larger = ByteBuffer.allocate(Math.max(pending.capacity() * 2, pending.position() + size));
+			pending.flip();
+			larger.put(pending);
+			pending = larger;
+		}
+		encode(pending, crc, type, id, data);
+		if (pending.position() >= FLUSH_BYTES) notifyAll();
+	}
+
+	/**
+	 * Writes a record
+	 * @param out the buffer to write to
+	 * @param crc the checksum to use
+	 * @param type the record type
+	 * @param id the game id
+	 * @param data the record data
+	 */
+	private static void encode(ByteBuffer out, CRC32C crc, byte type, int id, byte[] data) {
+		int start = out.position();
+		out.putInt(EVENT + data.length).putInt(0).put(type).putInt(id).put(data);
+		crc.reset();
+		crc.update(out.array(), start + HEADER, EVENT + data.length);
+		out.putInt(start + 4, (int) crc.getValue());
+	}
+
+	/**
+	 * Writes and syncs the buffered events, then compacts the log if it grew large, until the
+	 * log is closed
+	 */
+	private void syncLoop() {
+		while (!closed) {
+			try {
+				synchronized (this) {
+					if (pending.position() < FLUSH_BYTES) wait(syncMillis);
+				}
+				sync();
+				boolean large;
+				synchronized (fileLock) {
+					large = logBytes > Math.max(compactBytes, 4 * snapshotBytes);
+				}
+				if (large) compact();
+			}
+			catch (InterruptedException e) {
+				return;
+			}
+			catch (IOException e) {
+				failure = e;
+				System.out.println("The event log failed: " + e.getMessage());
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Writes the buffered events and waits until they are on the disk
+	 * @throws IOException if the log can't be written
+	 */
+	public void sync() throws IOException {
+		synchronized (fileLock) {
+			ByteBuffer out;
+			synchronized (this) {
+				out = pending;
+				pending = spare;
+				spare = out;
+			}
+			out.flip();
+			if (out.hasRemaining()) {
+				logBytes += out.remaining();
+				while (out.hasRemaining()) channel.write(out);
+				channel.force(false);
+			}
+			out.clear();
+		}
+	}
+
+	/**
+	 * Replaces the log by a snapshot of the live games
+	 * @throws IOException if the snapshot can't be written
+	 */
+	public void compact() throws IOException {
+		synchronized (fileLock) {
+			ByteBuffer snapshot;
+			synchronized (this) {
+				byte[][] data = new byte[games.size()][];
+				int[] ids = new int[games.size()];
+				int n = 0, size = MAGIC.length;
+				for (Map.Entry<Integer, GameState> e : games.entrySet()) {
+					ids[n] = e.getKey();
+					data[n] = toBytes(e.getValue());
+					size += HEADER + EVENT + data[n++].length;
+				}
+				snapshot = ByteBuffer.allocate(size);
+				snapshot.put(MAGIC);
+				for (int i = 0; i < n; i++) encode(snapshot, crc, GAME, ids[i], data[i]);
+				//The buffered events are in the snapshot already
+				pending.clear();
+			}
+			snapshot.flip();
+			File temp = new File(file.getPath() + ".tmp");
+			try (FileChannel out = FileChannel.open(temp.toPath(), StandardOpenOption.CREATE,
+					StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+				while (snapshot.hasRemaining()) out.write(snapshot);
+				out.force(true);
+			}
+			channel.close();
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+			logBytes = snapshotBytes = snapshot.limit();
+			channel.position(logBytes);
+		}
+	}
+
+	/**
+	 * Writes the buffered events and closes the log
+	 * @throws IOException if the log can't be written
+	 */
+	@Override
+	public void close() throws IOException {
+		synchronized (fileLock) {
+			if (closed) return;
+			closed = true;
+		}
+		//Interrupting the thread would close the channel under it, so it is woken instead
+		synchronized (this) {
+			notifyAll();
+		}
+		try {
+			syncer.join();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		try {
+			Runtime.getRuntime().removeShutdownHook(hook);
+		}
+		catch (IllegalStateException e) {
+			//The JVM is shutting down already, and this is the hook
+		}
+		try {
+			if (failure == null) sync();
+		}
+		finally {
+			channel.close();
+		}
+	}
+}
@@ -0,0 +1,177 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * A load test client for GameServer. Every connection keeps a share of the games open and
+ * plays random legal moves in them in turn, timing the round trip of every MOVE command;
+ * finished games are replaced by new ones. The client checks the server replies against its
+ * own copy of every game and prints the latency percentiles at the end
+ *
+ * Usage: java GameClient [-host H] [-port P] [-connections C] [-games G] [-moves M] [-local]
+ * where -local starts a server in the same JVM first
+ */
+public class GameClient {
+
+	//Fields
+	private final String host;
+	private final int port, games, moves;
+	private final long[] latencies;
+	private volatile String failure;
+
+	/**
+	 * Constructs a load test
+	 * @param host the server host
+	 * @param port the server port
+	 * @param games the number of games each connection keeps open
+	 * @param moves the number of moves each connection plays
+	 */
+	public GameClient(String host, int port, int games, int moves) {
+		this.host = host;
+		this.port = port;
+		this.games = games;
+		this.moves = moves;
+		this.latencies = new long[moves];
+	}
+
+	/**
+	 * Sends a command and reads the reply
+	 * @param out the connection output
+	 * @param in the connection input
+	 * @param command the command, without the line end
+	 * @return the reply
+	 * @throws IOException if the connection failed
+	 */
+	private static String call(OutputStream out, BufferedReader in, String command) throws IOException {
+		out.write((command + "\n").getBytes(StandardCharsets.ISO_8859_1));
+		out.flush();
+		String reply = in.readLine();
+		if (reply == null) throw new IOException("Connection closed");
+		return reply;
+	}
+
+	/**
+	 * Opens a game on the server
+	 * @param out the connection output
+	 * @param in the connection input
+	 * @return the game id
+	 * @throws IOException if the connection failed
+	 */
+	private static int newGame(OutputStream out, BufferedReader in) throws IOException {
+		String reply = call(out, in, "NEW");
+		if (!reply.startsWith("OK ")) throw new IOException("NEW failed: " + reply);
+		return Integer.parseInt(reply.substring(3));
+	}
+
+	/**
+	 * Plays the moves of one connection
+	 * @param seed the random seed
+	 */
+	public void run(long seed) {
+		Random random = new Random(seed);
+		long[] buffer = new long[Position.MAX_MOVES];
+		try (Socket socket = new Socket(host, port)) {
+			socket.setTcpNoDelay(true);
+			OutputStream out = socket.getOutputStream();
+			BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.ISO_8859_1));
+			int[] ids = new int[games];
+			GameState[] states = new GameState[games];
+			for (int i = 0; i < games; i++) {
+				ids[i] = newGame(out, in);
+				states[i] = new GameState();
+			}
+			for (int m = 0; m < moves; m++) {
+				int i = m % games;
+				GameState g = states[i];
+				long move = buffer[random.nextInt(g.legalMoves(buffer))];
+				String command = "MOVE " + ids[i] + " " + Move.toPathString(move, g.getPosition());
+				long start = System.nanoTime();
+				String reply = call(out, in, command);
+				latencies[m] = System.nanoTime() - start;
+				g.play(move);
+				String expected = "OK " + GameServer.RESULTS[g.getResult()];
+				if (!reply.equals(expected)) throw new IOException(command + ": expected " + expected + ", got " + reply);
+				if (g.getResult() != GameState.ONGOING) {
+					call(out, in, "END " + ids[i]);
+					ids[i] = newGame(out, in);
+					states[i] = new GameState();
+				}
+			}
+			for (int i = 0; i < games; i++) call(out, in, "END " + ids[i]);
+		}
+		catch (IOException e) {
+			failure = e.getMessage();
+		}
+	}
+
+	/**
+	 * Prints the latency percentiles of a set of load tests
+	 * @param clients the finished load tests
+	 * @param seconds the time taken
+	 */
+	static void printLatencies(GameClient[] clients, double seconds) {
+		int total = 0;
+		for (GameClient c : clients) total += c.latencies.length;
+		long[] all = new long[total];
+		int k = 0;
+		for (GameClient c : clients) {
+			if (c.failure != null) System.out.println("Failed: " + c.failure);
+			System.arraycopy(c.latencies, 0, all, k, c.latencies.length);
+			k += c.latencies.length;
+		}
+		Arrays.sort(all);
+		System.out.printf("%d moves in %.2f s (%.0f moves/s)%n", total, seconds, total / seconds);
+		System.out.printf("round trip: p50 %.1f us, p99 %.1f us, p99.9 %.1f us, max %.1f us%n", all[total / 2] / 1e3,
+				all[(int) (total * 0.99)] / 1e3, all[(int) (total * 0.999)] / 1e3, all[total - 1] / 1e3);
+	}
+
+	//Main method
+	public static void main(String[] args) throws Exception {
+		String host = "localhost";
+		int port = GameServer.DEFAULT_PORT, connections = 4, games = 2500, moves = 50000;
+		boolean local = false;
+		for (int i = 0; i < args.length; i++) {
+			switch (args[i]) {
+			case "-host": host = args[++i]; break;
+			case "-port": port = Integer.parseInt(args[++i]); break;
+			case "-connections": connections = Integer.parseInt(args[++i]); break;
+			case "-games": games = Integer.parseInt(args[++i]); break;
+			case "-moves": moves = Integer.parseInt(args[++i]); break;
+			case "-local": local = true; break;
+			default: throw new IllegalArgumentException("Unknown option: " + args[i]);
+			}
+		}
+		GameServer server = null;
+		if (local) {
+			final GameServer s = new GameServer(0, Runtime.getRuntime().availableProcessors());
+			Thread t = new Thread(s::serve, "GameServer-accept");
+			t.setDaemon(true);
+			t.start();
+			server = s;
+			port = s.getPort();
+		}
+		System.out.println(connections + " connections with " + games + " open games each, " + moves + " moves each");
+
+		//A short warm-up run first, so the measured run isn't timing the JIT compiler
+		final int p = port;
+		final String h = host;
+		new GameClient(h, p, 10, 20000).run(0);
+		GameClient[] clients = new GameClient[connections];
+		Thread[] threads = new Thread[connections];
+		for (int i = 0; i < connections; i++) {
+			final GameClient c = clients[i] = new GameClient(h, p, games, moves);
+			final long seed = i + 1;
+			threads[i] = new Thread(() -> c.run(seed));
+		}
+		long start = System.nanoTime();
+		for (Thread t : threads) t.start();
+		for (Thread t : threads) t.join();
+		printLatencies(clients, (System.nanoTime() - start) / 1e9);
+		if (server != null) server.close();
+	}
+}
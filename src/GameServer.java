@@ -0,0 +1,389 @@
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * A server that hosts many independent games in one JVM. Every game is a GameState (the
+ * rules and the moves, with no Swing components), and clients play them over TCP with a
+ * line protocol, one command per line and one reply line per command:
+ *
+ *   NEW [fen]            OK id            starts a game, from the FEN position if given
+ *   MOVE id move         OK result        plays a move such as 11-15 or 15x24
+ *   BOARD id             OK fen result    gets the position
+ *   MOVES id             OK moves...      gets the legal moves
+ *   END id               OK               forgets a game
+ *   PING                 OK
+ *
+ * where result is ONGOING, BLACK_WIN, RED_WIN or DRAW. Errors are answered with ERR and a
+ * message, and a line longer than 4096 characters with "ERR line too long". Connections are spread over a few selector threads using non-blocking NIO, so
+ * the number of games and connections isn't limited by threads, and a game can be played
+ * from any connection. A client that sends commands without reading the replies stops
+ * being read once 64 KB of replies are waiting, until it catches up
+ *
+ * With an event log every game started, move played and game ended is also recorded, and
+ * the games in the log are hosted again when the server starts, so a crash or restart loses
+ * at most the last few milliseconds of moves (see EventLog). A change the log can't record isn't
+ * made: once the log has failed, NEW, MOVE and END are answered with ERR while the games
+ * can still be read
+ *
+ * Usage: java GameServer [port] [threads] [event log file] [address]
+ * where the server only listens on the loopback address unless another address is given,
+ * e.g. 0.0.0.0 for every interface
+ */
+public class GameServer {
+
+	//Constants
+	public static final int DEFAULT_PORT = 5150;
+	static final String[] RESULTS = { "ONGOING", "BLACK_WIN", "RED_WIN", "DRAW" };
+	private static final int LINE_LIMIT = 4096, OUT_LIMIT = 65536;
+
+	//Fields
+	private final ConcurrentHashMap<Integer, GameState> games = new ConcurrentHashMap<Integer, GameState>();
+	private final AtomicInteger nextId = new AtomicInteger(1);
+	private final ServerSocketChannel server;
+	private final Worker[] workers;
+	private EventLog log;
+	private volatile boolean running = true;
+
+	/**
+	 * A connection and its buffers
+	 */
+	private static class Connection {
+		final SocketChannel channel;
+		final ByteBuffer in = ByteBuffer.allocate(8192);
+		ByteBuffer out = ByteBuffer.allocate(8192);
+		final StringBuilder line = new StringBuilder();
+		boolean lineTooLong;
+		final long[] moves = new long[Position.MAX_MOVES];
+
+		Connection(SocketChannel channel) {
+			this.channel = channel;
+		}
+	}
+
+	/**
+	 * A thread that serves its share of the connections with one selector
+	 */
+	private class Worker extends Thread {
+		private final Selector selector;
+		private final ConcurrentLinkedQueue<SocketChannel> added = new ConcurrentLinkedQueue<SocketChannel>();
+
+		Worker(int n) throws IOException {
+			super("GameServer-" + n);
+			setDaemon(true);
+			selector = Selector.open();
+		}
+
+		/**
+		 * Hands a new connection to the worker
+		 * @param channel the connection
+		 */
+		void add(SocketChannel channel) {
+			added.add(channel);
+			selector.wakeup();
+		}
+
+		@Override
+		public void run() {
+			while (running) {
+				try {
+					selector.select();
+					SocketChannel channel;
+					while ((channel = added.poll()) != null) {
+						channel.configureBlocking(false);
+						channel.socket().setTcpNoDelay(true);
+						channel.register(selector, SelectionKey.OP_READ, new Connection(channel));
+					}
+					Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+					while (keys.hasNext()) {
+						SelectionKey key = keys.next();
+						keys.remove();
+						Connection c = (Connection) key.attachment();
+						try {
+							if (key.isReadable()) read(key, c);
+							if (key.isValid() && key.isWritable()) write(key, c);
+						}
+						catch (IOException | RuntimeException e) {
+							//Only this connection is dropped; the worker goes on serving the others
+							if (e instanceof RuntimeException) e.printStackTrace();
+							key.cancel();
+							c.channel.close();
+						}
+					}
+				}
+				catch (IOException e) {
+					if (running) e.printStackTrace();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Constructs a server listening on a port of the loopback address
+	 * @param port the port, 0 for any free port
+	 * @param threads the number of selector threads
+	 * @throws IOException if the port can't be opened
+	 */
+	public GameServer(int port, int threads) throws IOException {
+		this(InetAddress.getLoopbackAddress(), port, threads);
+	}
+
+	/**
+	 * Constructs a server listening on a port of an address
+	 * @param address the address, e.g. the wildcard address for every interface
+	 * @param port the port, 0 for any free port
+	 * @param threads the number of selector threads
+	 * @throws IOException if the port can't be opened
+	 */
+	public GameServer(InetAddress address, int port, int threads) throws IOException {
+		server = ServerSocketChannel.open();
+		server.bind(new InetSocketAddress(address, port), 1024);
+		workers = new Worker[threads];
+		for (int i = 0; i < threads; i++) workers[i] = new Worker(i);
+	}
+
+	/**
+	 * Records the games in an event log from now on, first hosting the games it holds.
+	 * Must be called before serve
+	 * @param log the event log
+	 */
+	public void setEventLog(EventLog log) {
+		int maxId = 0;
+		for (Map.Entry<Integer, GameState> e : log.getGames().entrySet()) {
+			games.put(e.getKey(), e.getValue());
+			maxId = Math.max(maxId, e.getKey());
+		}
+		nextId.set(Math.max(nextId.get(), maxId + 1));
+		this.log = log;
+	}
+
+	/**
+	 * Gets the port the server listens on
+	 * @return the port
+	 */
+	public int getPort() {
+		return server.socket().getLocalPort();
+	}
+
+	/**
+	 * Gets the number of games being hosted
+	 * @return the number of games
+	 */
+	public int getGames() {
+		return games.size();
+	}
+
+	/**
+	 * Starts the selector threads and accepts connections until the server is closed
+	 */
+	public void serve() {
+		for (Worker w : workers) w.start();
+		int next = 0;
+		while (running) {
+			try {
+				SocketChannel channel = server.accept();
+				workers[next++ % workers.length].add(channel);
+			}
+			catch (IOException e) {
+				if (running) e.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * Stops the server
+	 * @throws IOException if the port can't be closed
+	 */
+	public void close() throws IOException {
+		running = false;
+		server.close();
+		for (Worker w : workers) w.selector.wakeup();
+	}
+
+	/**
+	 * Reads what a connection sent and answers every complete line
+	 * @param key the selection key of the connection
+	 * @param c the connection
+	 * @throws IOException if the connection failed
+	 */
+	private void read(SelectionKey key, Connection c) throws IOException {
+		c.in.clear();
+		int n = c.channel.read(c.in);
+		if (n < 0) {
+			key.cancel();
+			c.channel.close();
+			return;
+		}
+		for (int i = 0; i < n; i++) {
+			char ch = (char) (c.in.get(i) & 0xFF);
+			if (ch == '\n') {
+				String answer;
+				try {
+					answer = c.lineTooLong ? "ERR line too long" : handle(c.line, c.moves);
+				}
+				catch (RuntimeException e) {
+					answer = "ERR " + e;
+				}
+				reply(c, answer);
+				c.line.setLength(0);
+				c.lineTooLong = false;
+			}
+			else if (ch == '\r') continue;
+			else if (c.line.length() < LINE_LIMIT) c.line.append(ch);
+			else c.lineTooLong = true;
+		}
+		write(key, c);
+	}
+
+	/**
+	 * Queues a reply line
+	 * @param c the connection
+	 * @param reply the reply, without the line end
+	 */
+	private static void reply(Connection c, String reply) {
+		byte[] bytes = reply.getBytes(StandardCharsets.ISO_8859_1);
+		if (c.out.remaining() < bytes.length + 1) {
+			ByteBuffer larger = ByteBuffer.allocate(Math.max(c.out.capacity() * 2, c.out.position() + bytes.length + 1));
+			c.out.flip();
+			larger.put(c.out);
+			c.out = larger;
+		}
+		c.out.put(bytes).put((byte) '\n');
+	}
+
+	/**
+	 * Writes as much of the queued replies as the connection takes. A connection with more
+	 * than OUT_LIMIT bytes of replies waiting isn't read until the client takes them, so a
+	 * client that never reads can't make the server buffer without limit
+	 * @param key the selection key of the connection
+	 * @param c the connection
+	 * @throws IOException if the connection failed
+	 */
+	private static void write(SelectionKey key, Connection c) throws IOException {
+		c.out.flip();
+		c.channel.write(c.out);
+		c.out.compact();
+		int pending = c.out.position();
+		if (pending == 0) key.interestOps(SelectionKey.OP_READ);
+		else if (pending <= OUT_LIMIT) key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+		else key.interestOps(SelectionKey.OP_WRITE);
+	}
+
+	/**
+	 * Runs one command
+	 * @param line the command line
+	 * @param moves a buffer for moves
+	 * @return the reply
+	 */
+	String handle(CharSequence line, long[] moves) {
+		String[] words = line.toString().trim().split("\\s+", 3);
+		String command = words[0].toUpperCase();
+		if (command.equals("PING")) return "OK";
+		if (command.equals("NEW")) {
+			Position start;
+			try {
+				start = words.length > 1 ? Position.fromFen(words[1]) : new Position();
+			}
+			catch (RuntimeException e) {
+				return "ERR bad position";
+			}
+			int id = nextId.getAndIncrement();
+			GameState g = new GameState(start);
+			String failure = record(l -> l.start(id, g));
+			if (failure != null) return failure;
+			games.put(id, g);
+			Metrics.GAMES_STARTED.increment();
+			return "OK " + id;
+		}
+		if (words.length < 2) return "ERR unknown command";
+		final int id;
+		try {
+			id = Integer.parseInt(words[1]);
+		}
+		catch (NumberFormatException e) {
+			return "ERR bad game id";
+		}
+		GameState g = games.get(id);
+		if (g == null) return "ERR no such game";
+		//A game can be played from several connections at once, and ended by one of them
+		//between the lookup and the lock
+		synchronized (g) {
+			if (games.get(id) != g) return "ERR no such game";
+			String failure;
+			switch (command) {
+			case "MOVE":
+				if (words.length < 3) return "ERR missing move";
+				if (g.getResult() != GameState.ONGOING) return "ERR game over";
+				long move = Move.parse(words[2].trim(), g.getPosition(), moves);
+				if (move == 0) return "ERR illegal move";
+				failure = record(l -> l.move(id, move));
+				if (failure != null) return failure;
+				g.play(move);
+				if (g.getResult() != GameState.ONGOING) Metrics.GAMES_FINISHED.increment();
+				return "OK " + RESULTS[g.getResult()];
+			case "BOARD":
+				return "OK " + g.getPosition().toFen() + " " + RESULTS[g.getResult()];
+			case "MOVES":
+				StringBuilder sb = new StringBuilder("OK");
+				int n = g.getResult() == GameState.ONGOING ? g.legalMoves(moves) : 0;
+				for (int i = 0; i < n; i++) sb.append(' ').append(Move.toPathString(moves[i], g.getPosition()));
+				return sb.toString();
+			case "END":
+				failure = record(l -> l.end(id));
+				if (failure != null) return failure;
+				games.remove(id);
+				return "OK";
+			default:
+				return "ERR unknown command";
+			}
+		}
+	}
+
+	/**
+	 * Records an event in the event log, if there is one. A change that can't be logged isn't
+	 * made, so the log never falls behind the games it is meant to recover: once the log has
+	 * failed, new games, moves and game ends are answered with ERR
+	 * @param event the event to record
+	 * @return null if the event was recorded, or the ERR reply
+	 */
+	private String record(Consumer<EventLog> event) {
+		if (log == null) return null;
+		try {
+			event.accept(log);
+			return null;
+		}
+		catch (RuntimeException e) {
+			return "ERR event log failed: " + e.getMessage();
+		}
+	}
+
+	//Main method
+	public static void main(String[] args) throws IOException {
+		int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+		int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+		InetAddress address = args.length > 3 ? InetAddress.getByName(args[3]) : InetAddress.getLoopbackAddress();
+		GameServer server = new GameServer(address, port, threads);
+		if (args.length > 2) {
+			EventLog log = new EventLog(new File(args[2]));
+			System.out.println("Recovered " + log.getGames().size() + " games from " + log.getRecovered() + " events"
+					+ (log.getSkipped() > 0 ? ", skipped " + log.getSkipped() + " events that couldn't be replayed" : "")
+					+ (log.getTruncated() > 0 ? " (cut off a damaged tail of " + log.getTruncated() + " bytes)" : ""));
+			server.setEventLog(log);
+		}
+		System.out.println("Serving games on " + address.getHostAddress() + " port " + server.getPort() + " with " + threads + " threads");
+		server.serve();
+	}
+}
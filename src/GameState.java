@@ -0,0 +1,231 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * A class that represents one game without any Swing components: the position, the moves
+ * played so far and the result. It uses the same rules as CheckerGame (jumps are mandatory,
+ * a multi-jump goes on with the same checker and crowning ends the move) and calls the game
+ * a draw after 40 moves by each side with only king moves and no captures, or after
+ * MAX_PLIES moves in total. Moves can be taken back and played again (see MoveJournal)
+ */
+public class GameState {
+
+	//Results
+	public static final int ONGOING = 0, BLACK_WIN = 1, RED_WIN = 2, DRAW = 3;
+
+	//Constants
+	public static final int MAX_PLIES = 400, QUIET_PLIES = 80;
+	//Set in the move count of games written with whole moves; older ones hold compact moves
+	private static final int WHOLE_MOVES = 0x80000000;
+
+	//Fields
+	private final Position start, position;
+	private final long[] moves = new long[Position.MAX_MOVES];
+	private final MoveJournal journal = new MoveJournal();
+	private int quietPlies;
+
+	/**
+	 * Constructs a game from the initial position
+	 */
+	public GameState() {
+		this(new Position());
+	}
+
+	/**
+	 * Constructs a game from a given position
+	 * @param start the starting position (copied)
+	 */
+	public GameState(Position start) {
+		this.start = new Position(start);
+		this.position = new Position(start);
+	}
+
+	/**
+	 * Gets the current position. It must not be changed by the caller
+	 * @return the position
+	 */
+	public Position getPosition() {
+		return position;
+	}
+
+	/**
+	 * Gets the starting position of the game
+	 * @return a copy of the starting position
+	 */
+	public Position getStart() {
+		return new Position(start);
+	}
+
+	/**
+	 * Generates the legal moves of the side to move
+	 * @param buffer the buffer to write the moves to (at least Position.MAX_MOVES long)
+	 * @return the number of moves
+	 */
+	public int legalMoves(long[] buffer) {
+		return position.generateMoves(buffer);
+	}
+
+	/**
+	 * Checks if a move is legal in the current position
+	 * @param move the packed move
+	 * @return true if the move is legal, false otherwise
+	 */
+	public boolean isLegal(long move) {
+		int n = position.generateMoves(moves);
+		for (int i = 0; i < n; i++)
+			if (moves[i] == move) return true;
+		return false;
+	}
+
+	/**
+	 * Plays a move
+	 * @param move the packed move, which must be legal
+	 */
+	public void play(long move) {
+		if (getResult() != ONGOING || !isLegal(move)) throw new IllegalArgumentException("Illegal move " + Move.toString(move));
+		quietPlies = isQuiet(move) ? quietPlies + 1 : 0;
+		journal.play(position, move);
+	}
+
+	/**
+	 * Takes back the last move
+	 * @return the move taken back, or 0 if no move was played
+	 */
+	public long undo() {
+		long move = journal.undo(position);
+		if (move != 0) countQuietPlies();
+		return move;
+	}
+
+	/**
+	 * Plays again the last move taken back
+	 * @return the move played again, or 0 if there is nothing to redo
+	 */
+	public long redo() {
+		long move = journal.redo(position);
+		if (move != 0) quietPlies = isQuiet(move) ? quietPlies + 1 : 0;
+		return move;
+	}
+
+	/**
+	 * Checks if a move can be taken back
+	 * @return true if there is a move to undo, false otherwise
+	 */
+	public boolean canUndo() {
+		return journal.canUndo();
+	}
+
+	/**
+	 * Checks if a move taken back can be played again
+	 * @return true if there is a move to redo, false otherwise
+	 */
+	public boolean canRedo() {
+		return journal.canRedo();
+	}
+
+	/**
+	 * Checks if a move counts toward the draw rule (a king move that isn't a capture)
+	 * @param move the packed move
+	 * @return true if the move is quiet, false otherwise
+	 */
+	private static boolean isQuiet(long move) {
+		return Move.isKing(move) && !Move.isCapture(move);
+	}
+
+	/**
+	 * Counts the quiet moves at the end of the game again, after a move was taken back
+	 */
+	private void countQuietPlies() {
+		quietPlies = 0;
+		for (int ply = journal.size() - 1; ply >= 0 && isQuiet(journal.get(ply)); ply--) quietPlies++;
+	}
+
+	/**
+	 * Gets the result of the game
+	 * @return ONGOING, BLACK_WIN, RED_WIN or DRAW
+	 */
+	public int getResult() {
+		if (!position.hasMoves()) return position.isBlackToMove() ? RED_WIN : BLACK_WIN;
+		if (quietPlies >= QUIET_PLIES || journal.size() >= MAX_PLIES) return DRAW;
+		return ONGOING;
+	}
+
+	/**
+	 * Gets the number of moves played (by both sides)
+	 * @return the number of plies
+	 */
+	public int getPlies() {
+		return journal.size();
+	}
+
+	/**
+	 * Gets a move played in the game
+	 * @param ply the index of the move (0 is the first move)
+	 * @return the packed move
+	 */
+	public long getMove(int ply) {
+		if (ply < 0 || ply >= journal.size()) throw new IndexOutOfBoundsException();
+		return journal.get(ply);
+	}
+
+	/**
+	 * Writes the starting position (see PackedPosition) and the moves played (as packed
+	 * moves, eight bytes each, since only the whole move tells two captures with the same
+	 * ends apart)
+	 * @param out the output
+	 * @throws IOException if the output can't be written
+	 */
+	public void write(DataOutput out) throws IOException {
+		out.write(PackedPosition.encode(start, PackedPosition.NO_JUMP));
+		out.writeInt(getPlies() | WHOLE_MOVES);
+		for (int ply = 0; ply < getPlies(); ply++) out.writeLong(journal.get(ply));
+	}
+
+	/**
+	 * Reads a game written by write, checking every move. Games written with compact moves
+	 * (two bytes each) are read too, as long as no compact move matches two legal moves
+	 * @param in the input
+	 * @return the game
+	 * @throws IOException if the input can't be read or holds an illegal or ambiguous move
+	 */
+	public static GameState read(DataInput in) throws IOException {
+		byte[] packed = new byte[PackedPosition.BYTES];
+		in.readFully(packed);
+		Position start = new Position();
+		if (PackedPosition.decode(packed, start) != PackedPosition.NO_JUMP)
+			throw new IOException("The game starts in the middle of a jump");
+		GameState g = new GameState(start);
+		int plies = in.readInt();
+		boolean whole = (plies & WHOLE_MOVES) != 0;
+		plies &= ~WHOLE_MOVES;
+		long[] moves = new long[Position.MAX_MOVES];
+		for (int ply = 0; ply < plies; ply++) {
+			long written = whole ? in.readLong() : in.readShort() & 0xFFFF, move = 0;
+			int n = g.getResult() == ONGOING ? g.legalMoves(moves) : 0, matches = 0;
+			for (int i = 0; i < n; i++) {
+				if (whole ? moves[i] != written : Move.compact(moves[i]) != written) continue;
+				move = moves[i];
+				matches++;
+			}
+			if (matches == 0) throw new IOException("Illegal move at ply " + (ply + 1));
+			if (matches > 1) throw new IOException("Ambiguous move at ply " + (ply + 1));
+			g.play(move);
+		}
+		return g;
+	}
+
+	/**
+	 * Formats a result as text
+	 * @param result ONGOING, BLACK_WIN, RED_WIN or DRAW
+	 * @return the result as text
+	 */
+	public static String resultText(int result) {
+		switch (result) {
+		case BLACK_WIN: return "Black won";
+		case RED_WIN: return "Red won";
+		case DRAW: return "Draw";
+		default: return "Ongoing";
+		}
+	}
+}
@@ -0,0 +1,244 @@
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * A class that counts and times the move-handling hot path: clicks, setCheckersState
+ * refreshes, move validation, repaints and games. Metrics are switched on with
+ * -Dcheckers.metrics=true; they are then registered as JMX MBeans under "checkers:" (for
+ * jconsole or VisualVM), and -Dcheckers.metrics.log=N also prints them every N seconds.
+ * When switched off every call is a test of a static final flag, which the JIT compiler
+ * removes, so nothing is measured and nothing is paid
+ */
+public class Metrics {
+
+	//Constants
+	public static final boolean ENABLED = Boolean.getBoolean("checkers.metrics");
+	private static final int BUCKETS = 64;
+
+	/**
+	 * The attributes of a Counter seen through JMX
+	 */
+	public interface CounterMBean {
+		/**
+		 * Gets the count
+		 * @return the count
+		 */
+		long getCount();
+
+		/**
+		 * Sets the count back to 0
+		 */
+		void reset();
+	}
+
+	/**
+	 * A count of events
+	 */
+	public static class Counter implements CounterMBean {
+		private final String name;
+		private final LongAdder count = new LongAdder();
+
+		Counter(String name) {
+			this.name = name;
+		}
+
+		/**
+		 * Counts one event
+		 */
+		public void increment() {
+			if (ENABLED) count.increment();
+		}
+
+		@Override
+		public long getCount() {
+			return count.sum();
+		}
+
+		@Override
+		public void reset() {
+			count.reset();
+		}
+
+		@Override
+		public String toString() {
+			return name + ": " + getCount();
+		}
+	}
+
+	/**
+	 * The attributes of a Timer seen through JMX
+	 */
+	public interface TimerMBean extends CounterMBean {
+		/**
+		 * Gets the mean time
+		 * @return the mean in microseconds
+		 */
+		double getMeanMicros();
+
+		/**
+		 * Gets the median time
+		 * @return the upper bound of the histogram bucket of the median, in microseconds
+		 */
+		double getP50Micros();
+
+		/**
+		 * Gets the 99th percentile time
+		 * @return the upper bound of the histogram bucket of the 99th percentile, in microseconds
+		 */
+		double getP99Micros();
+
+		/**
+		 * Gets the longest time
+		 * @return the longest time in microseconds
+		 */
+		double getMaxMicros();
+	}
+
+	/**
+	 * A count of events with a histogram of how long they took. The histogram has one bucket
+	 * per power of two nanoseconds, so recording is a few adds with no locks
+	 */
+	public static class Timer extends Counter implements TimerMBean {
+		private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+		private final LongAdder total = new LongAdder();
+		private volatile long max;
+
+		Timer(String name) {
+			super(name);
+		}
+
+		/**
+		 * Records the time of an event that began at a time from Metrics.start
+		 * @param start the start time
+		 */
+		public void stop(long start) {
+			if (ENABLED) record(System.nanoTime() - start);
+		}
+
+		/**
+		 * Records the time of an event
+		 * @param nanos the time in nanoseconds
+		 */
+		void record(long nanos) {
+			super.increment();
+			total.add(nanos);
+			buckets.incrementAndGet(BUCKETS - Long.numberOfLeadingZeros(Math.max(nanos, 1)));
+			if (nanos > max) max = nanos;
+		}
+
+		/**
+		 * Gets a percentile from the histogram
+		 * @param fraction the fraction of events at or below the result, e.g. 0.99
+		 * @return the upper bound of the bucket, in microseconds
+		 */
+		private double percentile(double fraction) {
+			long count = 0, wanted = (long) Math.ceil(getCount() * fraction);
+			for (int i = 0; i < BUCKETS; i++) {
+				count += buckets.get(i);
+				if (count >= wanted && count > 0) return Math.min((1L << i) - 1, max) / 1e3;
+			}
+			return 0;
+		}
+
+		@Override
+		public double getMeanMicros() {
+			long count = getCount();
+			return count == 0 ? 0 : total.sum() / 1e3 / count;
+		}
+
+		@Override
+		public double getP50Micros() {
+			return percentile(0.5);
+		}
+
+		@Override
+		public double getP99Micros() {
+			return percentile(0.99);
+		}
+
+		@Override
+		public double getMaxMicros() {
+			return max / 1e3;
+		}
+
+		@Override
+		public void reset() {
+			super.reset();
+			total.reset();
+			for (int i = 0; i < BUCKETS; i++) buckets.set(i, 0);
+			max = 0;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%s, mean %.2f us, p50 %.2f us, p99 %.2f us, max %.2f us", super.toString(),
+					getMeanMicros(), getP50Micros(), getP99Micros(), getMaxMicros());
+		}
+	}
+
+	//The metrics
+	public static final Timer MOUSE_CLICKED = new Timer("mouseClicked");
+	public static final Timer SET_CHECKERS_STATE = new Timer("setCheckersState");
+	public static final Timer VALID_DESTINATION = new Timer("validDestination");
+	public static final Timer IS_A_CAPTURE = new Timer("isACapture");
+	public static final Counter REPAINTS = new Counter("repaints");
+	public static final Counter SQUARES_REPAINTED = new Counter("squaresRepainted");
+	public static final Counter GAMES_STARTED = new Counter("gamesStarted");
+	public static final Counter GAMES_FINISHED = new Counter("gamesFinished");
+	private static final Counter[] ALL = { MOUSE_CLICKED, SET_CHECKERS_STATE, VALID_DESTINATION, IS_A_CAPTURE,
+			REPAINTS, SQUARES_REPAINTED, GAMES_STARTED, GAMES_FINISHED };
+
+	static {
+		if (ENABLED) register();
+	}
+
+	/**
+	 * Gets the start time of an event to time
+	 * @return the start time, or 0 if metrics are switched off
+	 */
+	public static long start() {
+		return ENABLED ? System.nanoTime() : 0;
+	}
+
+	/**
+	 * Registers every metric with the platform MBean server and starts the periodic log
+	 */
+	private static void register() {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			for (Counter c : ALL) {
+				String type = c instanceof Timer ? "Timer" : "Counter";
+				server.registerMBean(c, new ObjectName("checkers:type=" + type + ",name=" + c.name));
+			}
+		}
+		catch (Exception e) {
+			System.out.println("Could not register the metrics: " + e);
+		}
+		long seconds = Long.getLong("checkers.metrics.log", 0);
+		if (seconds > 0) {
+			ScheduledExecutorService log = Executors.newSingleThreadScheduledExecutor(r -> {
+				Thread t = new Thread(r, "Metrics-log");
+				t.setDaemon(true);
+				return t;
+			});
+			log.scheduleAtFixedRate(() -> System.out.print(dump()), seconds, seconds, TimeUnit.SECONDS);
+		}
+	}
+
+	/**
+	 * Formats every metric, one per line
+	 * @return the metrics as text
+	 */
+	public static String dump() {
+		StringBuilder sb = new StringBuilder();
+		for (Counter c : ALL) sb.append("[metrics] ").append(c).append('\n');
+		return sb.toString();
+	}
+}
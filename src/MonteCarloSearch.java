@@ -0,0 +1,360 @@
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A class that picks moves with Monte Carlo tree search: the tree is walked down with UCT
+ * selection, a leaf is expanded, a random game (a rollout) is played from it and its result
+ * is added to every node on the way back up. The move played most often from the root wins.
+ *
+ * Many threads grow the same tree without locks. A node's statistics are atomic counters,
+ * a thread walking through a node counts a "virtual loss" there until its result comes
+ * back, so the other threads spread over other branches, and a node is expanded by the one
+ * thread that wins a compare-and-set on its state. The nodes live in a pool of parallel
+ * arrays (a node is an index, and the children of a node are one block of indexes), so the
+ * tree creates no objects and a larger pool only means longer arrays.
+ *
+ * Rollouts play random legal moves (so captures are forced, as in CheckerGame.mustJump),
+ * but always crown a man when they can, and stop early once one side is three men ahead,
+ * which is nearly always a win and makes a rollout much shorter
+ *
+ * Usage: java MonteCarloSearch [millis per move] [max threads]
+ */
+public class MonteCarloSearch {
+
+	//Constants
+	public static final int DEFAULT_NODES = 1 << 20;
+	private static final double EXPLORATION = 1.0;
+	private static final int VIRTUAL_LOSS = 3, MAX_DEPTH = 256, MAX_ROLLOUT = 200, DECISIVE = 6;
+	private static final int LEAF = 0, EXPANDING = 1, EXPANDED = 2, FULL = 3;
+
+	//Fields
+	private final int threads, capacity;
+	private final long[] moves;
+	private final int[] firstChild, childCount;
+	private final AtomicIntegerArray visits, state;
+	private final AtomicLongArray value;
+	private final AtomicInteger nextFree = new AtomicInteger(1);
+	private final ExecutorService pool;
+	private long seed;
+	private final Position root = new Position();
+	private volatile boolean stopped;
+	private long deadline, rollouts;
+
+	/**
+	 * Constructs a search with the default pool size
+	 * @param threads the number of threads (at least 1)
+	 */
+	public MonteCarloSearch(int threads) {
+		this(threads, DEFAULT_NODES, 20200430L);
+	}
+
+	/**
+	 * Constructs a search
+	 * @param threads the number of threads (at least 1)
+	 * @param capacity the number of nodes in the pool
+	 * @param seed the random seed of the rollouts
+	 */
+	public MonteCarloSearch(int threads, int capacity, long seed) {
+		if (threads < 1 || capacity < 2) throw new IllegalArgumentException();
+		this.threads = threads;
+		this.capacity = capacity;
+		this.seed = seed;
+		moves = new long[capacity];
+		firstChild = new int[capacity];
+		childCount = new int[capacity];
+		visits = new AtomicIntegerArray(capacity);
+		state = new AtomicIntegerArray(capacity);
+		value = new AtomicLongArray(capacity);
+		pool = threads == 1 ? null : Executors.newFixedThreadPool(threads - 1, r -> {
+			Thread t = new Thread(r, "mcts-helper");
+			t.setDaemon(true);
+			return t;
+		});
+	}
+
+	/**
+	 * Searches a position on every thread until the time runs out
+	 * @param p the position to search (not changed)
+	 * @param millis the time budget in milliseconds
+	 * @return the move played most often from the root, or 0 if the side to move has no moves
+	 */
+	public long search(Position p, long millis) {
+		root.copyFrom(p);
+		long[] rootMoves = new long[Position.MAX_MOVES];
+		int n = root.generateMoves(rootMoves);
+		rollouts = 0;
+		if (n == 0) return 0;
+		if (n == 1) return rootMoves[0];
+		nextFree.set(1);
+		visits.set(0, 0);
+		value.set(0, 0);
+		childCount[0] = 0;
+		state.set(0, LEAF);
+		stopped = false;
+		deadline = System.nanoTime() + millis * 1000000L;
+		Future<?>[] helpers = new Future<?>[threads - 1];
+		for (int i = 1; i < threads; i++) {
+			final long threadSeed = seed + i;
+			helpers[i - 1] = pool.submit(() -> run(threadSeed));
+		}
+		long count = run(seed);
+		stopped = true;
+		for (Future<?> f : helpers) {
+			try {
+				count += (Long) f.get();
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			catch (ExecutionException e) {
+				throw new IllegalStateException(e.getCause());
+			}
+		}
+		rollouts = count;
+		//The root isn't expanded if the search was stopped at once or the pool is too small for its children
+		return state.get(0) == EXPANDED ? moves[bestChild()] : rootMoves[0];
+	}
+
+	/**
+	 * Runs iterations on one thread until the time runs out or the search is stopped
+	 * @param threadSeed the random seed of the thread
+	 * @return the number of iterations run
+	 */
+	private long run(long threadSeed) {
+		SplittableRandom random = new SplittableRandom(threadSeed);
+		Position pos = new Position(), game = new Position();
+		long[] buffer = new long[Position.MAX_MOVES];
+		int[] path = new int[MAX_DEPTH + 1];
+		long count = 0;
+		while (!stopped) {
+			iterate(pos, game, buffer, path, random);
+			if ((++count & 63) == 0 && System.nanoTime() > deadline) break;
+		}
+		stopped = true;
+		return count;
+	}
+
+	/**
+	 * Runs one iteration: selection, expansion, rollout and backing up the result
+	 * @param pos a position to walk the tree on
+	 * @param game a position to play the rollout on
+	 * @param buffer a move buffer
+	 * @param path a buffer for the nodes walked through
+	 * @param random the random numbers of the thread
+	 */
+	private void iterate(Position pos, Position game, long[] buffer, int[] path, SplittableRandom random) {
+		pos.copyFrom(root);
+		int node = 0, depth = 0;
+		path[0] = 0;
+		while (state.get(node) == EXPANDED && childCount[node] > 0 && depth < MAX_DEPTH) {
+			node = select(node);
+			visits.addAndGet(node, VIRTUAL_LOSS);
+			pos.makeMove(moves[node]);
+			path[++depth] = node;
+		}
+		//The result for black: 2 for a win, 1 for a draw, 0 for a loss
+		int result;
+		if (state.get(node) == EXPANDED && childCount[node] == 0) result = pos.isBlackToMove() ? 0 : 2;
+		else {
+			if (state.compareAndSet(node, LEAF, EXPANDING)) expand(node, pos, buffer);
+			game.copyFrom(pos);
+			result = rollout(game, buffer, random);
+		}
+		//A node holds the results of the side that moved into it, the opposite of the side to move there
+		for (int k = depth; k > 0; k--) {
+			int n = path[k];
+			boolean blackMoved = !pos.isBlackToMove();
+			pos.unmakeMove(moves[n]);
+			value.addAndGet(n, blackMoved ? result : 2 - result);
+			visits.addAndGet(n, 1 - VIRTUAL_LOSS);
+		}
+		visits.incrementAndGet(0);
+	}
+
+	/**
+	 * Picks the child of a node with the highest upper confidence bound (UCT)
+	 * @param node the node
+	 * @return the child
+	 */
+	private int select(int node) {
+		int first = firstChild[node], end = first + childCount[node];
+		double logParent = Math.log(Math.max(1, visits.get(node)));
+		int best = first;
+		double bestBound = Double.NEGATIVE_INFINITY;
+		for (int c = first; c < end; c++) {
+			int n = visits.get(c);
+			if (n == 0) return c;
+			double bound = value.get(c) / (2.0 * n) + EXPLORATION * Math.sqrt(logParent / n);
+			if (bound > bestBound) {
+				bestBound = bound;
+				best = c;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Adds the children of a leaf, one per legal move, and publishes them
+	 * @param node the leaf, whose state this thread set to EXPANDING
+	 * @param pos the position of the leaf
+	 * @param buffer a move buffer
+	 */
+	private void expand(int node, Position pos, long[] buffer) {
+		int n = pos.generateMoves(buffer);
+		if (n > 0) {
+			if (nextFree.get() + n > capacity) {
+				//The pool is used up, so the node stays a leaf for good
+				state.set(node, FULL);
+				return;
+			}
+			int first = nextFree.getAndAdd(n);
+			if (first + n > capacity) {
+				state.set(node, FULL);
+				return;
+			}
+			for (int i = 0; i < n; i++) {
+				moves[first + i] = buffer[i];
+				visits.set(first + i, 0);
+				value.set(first + i, 0);
+				state.set(first + i, LEAF);
+			}
+			firstChild[node] = first;
+		}
+		childCount[node] = n;
+		//The state is written last, so a thread that reads EXPANDED sees the children
+		state.set(node, EXPANDED);
+	}
+
+	/**
+	 * Plays a random game from a position
+	 * @param game the position, which the game is played on
+	 * @param buffer a move buffer
+	 * @param random the random numbers of the thread
+	 * @return the result for black: 2 for a win, 1 for a draw, 0 for a loss
+	 */
+	private int rollout(Position game, long[] buffer, SplittableRandom random) {
+		for (int ply = 0; ply < MAX_ROLLOUT; ply++) {
+			int lead = material(game);
+			if (lead >= DECISIVE) return 2;
+			if (lead <= -DECISIVE) return 0;
+			int n = game.generateMoves(buffer);
+			if (n == 0) return game.isBlackToMove() ? 0 : 2;
+			long move = buffer[random.nextInt(n)];
+			for (int i = 0; i < n; i++)
+				if (Move.promotes(buffer[i])) {
+					move = buffer[i];
+					break;
+				}
+			game.makeMove(move);
+		}
+		int lead = material(game);
+		return lead > 1 ? 2 : lead < -1 ? 0 : 1;
+	}
+
+	/**
+	 * Counts the material lead of black, 2 for a man and 3 for a king
+	 * @param p the position
+	 * @return the lead in half men
+	 */
+	private static int material(Position p) {
+		int black = p.getBlack(), red = p.getRed(), kings = p.getKings();
+		return 2 * (Integer.bitCount(black) - Integer.bitCount(red))
+				+ Integer.bitCount(black & kings) - Integer.bitCount(red & kings);
+	}
+
+	/**
+	 * Gets the root child that was visited most
+	 * @return the child
+	 */
+	private int bestChild() {
+		int first = firstChild[0], best = first;
+		for (int c = first; c < first + childCount[0]; c++)
+			if (visits.get(c) > visits.get(best)) best = c;
+		return best;
+	}
+
+	/**
+	 * Stops a running search as soon as possible
+	 */
+	public void stop() {
+		stopped = true;
+	}
+
+	/**
+	 * Gets the random seed of the rollouts
+	 * @return the seed
+	 */
+	public long getSeed() {
+		return seed;
+	}
+
+	/**
+	 * Sets the random seed of the rollouts of the next searches
+	 * @param seed the seed
+	 */
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
+
+	/**
+	 * Stops the helper threads
+	 */
+	public void close() {
+		if (pool != null) pool.shutdownNow();
+	}
+
+	/**
+	 * Gets the number of threads of the search
+	 * @return the number of threads, the calling one included
+	 */
+	public int getThreads() {
+		return threads;
+	}
+
+	/**
+	 * Gets the number of rollouts of the last search
+	 * @return the number of rollouts
+	 */
+	public long getRollouts() {
+		return rollouts;
+	}
+
+	/**
+	 * Gets the number of nodes of the tree of the last search
+	 * @return the number of nodes
+	 */
+	public int getNodes() {
+		return Math.min(nextFree.get(), capacity);
+	}
+
+	/**
+	 * Gets how often the best move won in the last search
+	 * @return the share of wins of the side to move after the best move, draws counting half
+	 */
+	public double getWinRate() {
+		if (state.get(0) != EXPANDED || childCount[0] == 0) return 0;
+		int best = bestChild();
+		return visits.get(best) == 0 ? 0 : value.get(best) / (2.0 * visits.get(best));
+	}
+
+	//Main method
+	public static void main(String[] args) {
+		long millis = args.length > 0 ? Long.parseLong(args[0]) : 1000;
+		int maxThreads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+		Position p = new Position();
+		for (int threads = 1; threads <= maxThreads; threads *= 2) {
+			MonteCarloSearch mcts = new MonteCarloSearch(threads);
+			mcts.search(p, millis / 4);
+			long move = mcts.search(p, millis);
+			System.out.printf("%d threads: %s, %d rollouts (%.0f/s), %d nodes, win rate %.3f%n", threads,
+					Move.toString(move), mcts.getRollouts(), mcts.getRollouts() * 1000.0 / millis, mcts.getNodes(),
+					mcts.getWinRate());
+		}
+	}
+}
@@ -0,0 +1,174 @@
+/**
+ * A class of static helpers that pack a complete checker move into one long so the
+ * rules engine can generate and replay moves without allocating objects.
+ * Bits 0-31 hold the captured squares, bits 32-36 the origin square, bits 37-41 the
+ * destination square, bit 42 is set when the moving checker is a king, bit 43 when
+ * the move crowns a checker, and bits 44-55 mark which captured checkers were kings
+ * (one flag per captured square, in ascending square order)
+ */
+public final class Move {
+
+	private static final int FROM_SHIFT = 32, TO_SHIFT = 37, KING_BIT = 42, PROMOTE_BIT = 43,
+			CAPTURED_KINGS_SHIFT = 44;
+	private static final ThreadLocal<CaptureEnumerator> ENUMERATORS = ThreadLocal.withInitial(CaptureEnumerator::new);
+
+	private Move() {}
+
+	/**
+	 * Packs a move into a long
+	 * @param from the origin square (0 - 31)
+	 * @param to the destination square (0 - 31)
+	 * @param captured the bit mask of the captured squares
+	 * @param capturedKings the bit mask of the captured squares that held kings
+	 * @param king true if the moving checker is a king
+	 * @param promotes true if the moving checker is crowned at the destination
+	 * @return the packed move
+	 */
+	public static long encode(int from, int to, int captured, int capturedKings, boolean king, boolean promotes) {
+		long flags = 0;
+		int i = 0;
+		for (int c = captured; c != 0; c &= c - 1, i++)
+			if ((capturedKings & c & -c) != 0) flags |= 1L << i;
+		return (captured & 0xFFFFFFFFL) | ((long) from << FROM_SHIFT) | ((long) to << TO_SHIFT)
+				| (king ? 1L << KING_BIT : 0) | (promotes ? 1L << PROMOTE_BIT : 0)
+				| (flags << CAPTURED_KINGS_SHIFT);
+	}
+
+	/**
+	 * Gets the origin square of a move
+	 * @param move the packed move
+	 * @return the origin square
+	 */
+	public static int from(long move) {
+		return (int) (move >>> FROM_SHIFT) & 31;
+	}
+
+	/**
+	 * Gets the destination square of a move
+	 * @param move the packed move
+	 * @return the destination square
+	 */
+	public static int to(long move) {
+		return (int) (move >>> TO_SHIFT) & 31;
+	}
+
+	/**
+	 * Gets the captured squares of a move
+	 * @param move the packed move
+	 * @return the bit mask of the captured squares, 0 if the move is not a capture
+	 */
+	public static int captured(long move) {
+		return (int) move;
+	}
+
+	/**
+	 * Gets the captured squares that held kings
+	 * @param move the packed move
+	 * @return the bit mask of the captured kings
+	 */
+	public static int capturedKings(long move) {
+		int flags = (int) (move >>> CAPTURED_KINGS_SHIFT) & 0xFFF, kings = 0;
+		for (int c = (int) move; flags != 0 && c != 0; c &= c - 1, flags >>>= 1)
+			if ((flags & 1) != 0) kings |= c & -c;
+		return kings;
+	}
+
+	/**
+	 * Checks if a move captures at least one checker
+	 * @param move the packed move
+	 * @return true if the move is a capture, false otherwise
+	 */
+	public static boolean isCapture(long move) {
+		return (int) move != 0;
+	}
+
+	/**
+	 * Checks if the moving checker is a king
+	 * @param move the packed move
+	 * @return true if a king is moved, false otherwise
+	 */
+	public static boolean isKing(long move) {
+		return (move & (1L << KING_BIT)) != 0;
+	}
+
+	/**
+	 * Checks if the move crowns the moving checker
+	 * @param move the packed move
+	 * @return true if the checker becomes a king, false otherwise
+	 */
+	public static boolean promotes(long move) {
+		return (move & (1L << PROMOTE_BIT)) != 0;
+	}
+
+	/**
+	 * Packs the parts of a move that tell it apart from the other moves of the same position
+	 * into 16 bits, for the transposition table
+	 * @param move the packed move
+	 * @return the compact move (never 0)
+	 */
+	public static int compact(long move) {
+		int captured = (int) move;
+		return from(move) | (to(move) << 5) | (((captured * 0x9E3779B1) >>> 27) << 10) | 0x8000;
+	}
+
+	/**
+	 * Formats a move in the standard numeric notation (squares 1 - 32), e.g. 11-15 or 15x24
+	 * @param move the packed move
+	 * @return the move as text
+	 */
+	public static String toString(long move) {
+		return (from(move) + 1) + (isCapture(move) ? "x" : "-") + (to(move) + 1);
+	}
+
+	/**
+	 * Finds the legal move of a position written in the standard numeric notation, e.g. 11-15,
+	 * 15x24 or 15x24x31. The intermediate squares of a multi-jump are optional and only used
+	 * to choose between jumps with the same first and last squares
+	 * @param text the move as text
+	 * @param p the position
+	 * @param buffer a buffer for the legal moves (at least Position.MAX_MOVES long)
+	 * @return the packed move, or 0 if the text isn't a legal move of the position
+	 */
+	public static long parse(CharSequence text, Position p, long[] buffer) {
+		int first = -1, last = -1, squares = 0, number = 0, digits = 0, jumped = 0;
+		for (int i = 0; i <= text.length(); i++) {
+			char c = i < text.length() ? text.charAt(i) : 'x';
+			if (c >= '0' && c <= '9') {
+				number = number * 10 + c - '0';
+				digits++;
+			}
+			else if ((c == '-' || c == 'x' || c == ':') && digits > 0 && number >= 1 && number <= Position.SQUARES) {
+				int square = number - 1;
+				if (first < 0) first = square;
+				//A hop of two rows jumps the square in between
+				else if (Math.abs(Position.row(square) - Position.row(last)) == 2)
+					jumped |= 1 << Position.square((Position.row(square) + Position.row(last)) / 2,
+							(Position.col(square) + Position.col(last)) / 2);
+				last = square;
+				squares++;
+				number = 0; digits = 0;
+			}
+			else return 0;
+		}
+		if (squares < 2) return 0;
+		int n = p.generateMoves(buffer);
+		for (int i = 0; i < n; i++)
+			if (from(buffer[i]) == first && to(buffer[i]) == last && (captured(buffer[i]) & jumped) == jumped) return buffer[i];
+		return 0;
+	}
+
+	/**
+	 * Formats a move with every landing square of a multi-jump, e.g. 1x10x19, which tells it
+	 * apart from another jump with the same first and last squares
+	 * @param move the packed move
+	 * @param p the position the move is played in
+	 * @return the move as text
+	 */
+	public static String toPathString(long move, Position p) {
+		if (!isCapture(move) || Integer.bitCount(captured(move)) < 2) return toString(move);
+		CaptureEnumerator paths = ENUMERATORS.get();
+		paths.generate(p, from(move));
+		int path = paths.find(move);
+		return path < 0 ? toString(move) : paths.appendPath(new StringBuilder(), path).toString();
+	}
+}
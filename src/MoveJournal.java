@@ -0,0 +1,104 @@
+/**
+ * A class that keeps the moves of a game as an undo/redo journal. Every record is one packed
+ * move (see Move: from and to squares, the captured checkers and which of them were kings,
+ * and the crowning flag), which is all Position.unmakeMove needs to take the move back, so
+ * stepping back and forth costs O(1) per move and no board is ever copied. It works on a
+ * Position alone, so tools can walk what-if lines without any Swing components
+ */
+public class MoveJournal {
+
+	//Fields
+	private long[] moves = new long[64];
+	private int size, end;
+
+	/**
+	 * Records a move that was just played. Any moves that could be redone are dropped
+	 * @param move the packed move
+	 */
+	public void record(long move) {
+		if (size == moves.length) {
+			long[] longer = new long[size * 2];
+			System.arraycopy(moves, 0, longer, 0, size);
+			moves = longer;
+		}
+		moves[size++] = move;
+		end = size;
+	}
+
+	/**
+	 * Plays a move on a position and records it
+	 * @param p the position
+	 * @param move the packed move, which must be legal in the position
+	 */
+	public void play(Position p, long move) {
+		p.makeMove(move);
+		record(move);
+	}
+
+	/**
+	 * Takes back the last move played on a position
+	 * @param p the position
+	 * @return the move taken back, or 0 if there is nothing to undo
+	 */
+	public long undo(Position p) {
+		if (size == 0) return 0;
+		long move = moves[--size];
+		p.unmakeMove(move);
+		return move;
+	}
+
+	/**
+	 * Plays again the last move taken back
+	 * @param p the position
+	 * @return the move played again, or 0 if there is nothing to redo
+	 */
+	public long redo(Position p) {
+		if (size == end) return 0;
+		long move = moves[size++];
+		p.makeMove(move);
+		return move;
+	}
+
+	/**
+	 * Checks if a move can be taken back
+	 * @return true if there is a move to undo, false otherwise
+	 */
+	public boolean canUndo() {
+		return size > 0;
+	}
+
+	/**
+	 * Checks if a move taken back can be played again
+	 * @return true if there is a move to redo, false otherwise
+	 */
+	public boolean canRedo() {
+		return size < end;
+	}
+
+	/**
+	 * Gets the number of moves played (not counting the moves taken back)
+	 * @return the number of moves
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Gets a move of the journal
+	 * @param ply the index of the move (0 is the first move); moves that can be redone come
+	 * after the played ones
+	 * @return the packed move
+	 */
+	public long get(int ply) {
+		if (ply < 0 || ply >= end) throw new IndexOutOfBoundsException();
+		return moves[ply];
+	}
+
+	/**
+	 * Forgets every move
+	 */
+	public void clear() {
+		size = 0;
+		end = 0;
+	}
+}
@@ -0,0 +1,256 @@
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * A class that looks up opening moves in a book file. The file is a sorted array of
+ * fixed-size entries (Zobrist hash of the position, compact move, weight), so it is
+ * memory-mapped and binary-searched in place without reading it into objects. The book is
+ * built from game records, one game per line in the standard numeric notation
+ * ("11-15 23-19 8-11 ..."; move numbers and results are skipped)
+ *
+ * Usage: java OpeningBook [-plies N] [-min N] book games...
+ */
+public class OpeningBook {
+
+	//Constants
+	public static final int HEADER = 16, ENTRY = 16;
+	static final byte[] MAGIC = { 'C', 'K', 'O', 'B' };
+
+	//Fields
+	private final ByteBuffer entries;
+	private final int size;
+
+	/**
+	 * Constructs a book over a book file
+	 * @param file the book file
+	 * @throws IOException if the file can't be read or isn't a book
+	 */
+	public OpeningBook(File file) throws IOException {
+		try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+			entries = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		for (int i = 0; i < MAGIC.length; i++)
+			if (entries.capacity() < HEADER || entries.get(i) != MAGIC[i]) throw new IOException("Not a book: " + file);
+		size = entries.getInt(4);
+		if (entries.capacity() != HEADER + (long) size * ENTRY) throw new IOException("Bad book size: " + file);
+	}
+
+	/**
+	 * Gets the number of entries (one per position and move)
+	 * @return the number of entries
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Finds the first entry of a position
+	 * @param hash the Zobrist hash of the position
+	 * @return the index of the first entry with a hash not below the given one
+	 */
+	private int lowerBound(long hash) {
+		int low = 0, high = size;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (entries.getLong(HEADER + mid * ENTRY) < hash) low = mid + 1;
+			else high = mid;
+		}
+		return low;
+	}
+
+	/**
+	 * Gets the book moves of a position, most played first. The legal moves are generated
+	 * into the caller's buffer and the book moves gathered at its front, so nothing is
+	 * allocated
+	 * @param p the position
+	 * @param moves receives the packed moves (at least Position.MAX_MOVES long)
+	 * @param weights receives the weights of the moves, or null
+	 * @return the number of book moves
+	 */
+	public int lookup(Position p, long[] moves, int[] weights) {
+		long hash = p.getHash();
+		int n = p.generateMoves(moves), count = 0;
+		for (int i = lowerBound(hash); i < size && entries.getLong(HEADER + i * ENTRY) == hash; i++) {
+			int compact = entries.getShort(HEADER + i * ENTRY + 8) & 0xFFFF;
+			//Moves that aren't legal can only come from a hash collision
+			for (int j = count; j < n; j++) {
+				if (Move.compact(moves[j]) == compact) {
+					if (weights != null) weights[count] = entries.getInt(HEADER + i * ENTRY + 12);
+					long move = moves[j];
+					moves[j] = moves[count];
+					moves[count++] = move;
+					break;
+				}
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Gets the most played book move of a position
+	 * @param p the position
+	 * @return the packed move, or 0 if the position isn't in the book
+	 */
+	public long bestMove(Position p) {
+		long[] moves = new long[Position.MAX_MOVES];
+		return lookup(p, moves, null) == 0 ? 0 : moves[0];
+	}
+
+	/**
+	 * Picks a book move of a position at random, in proportion to the weights
+	 * @param p the position
+	 * @param random the random number generator
+	 * @return the packed move, or 0 if the position isn't in the book
+	 */
+	public long pickMove(Position p, Random random) {
+		return pickMove(p, random, new long[Position.MAX_MOVES], new int[Position.MAX_MOVES]);
+	}
+
+	/**
+	 * Picks a book move of a position at random, in proportion to the weights, without
+	 * allocating
+	 * @param p the position
+	 * @param random the random number generator
+	 * @param moves a buffer for the moves (at least Position.MAX_MOVES long)
+	 * @param weights a buffer for the weights (at least Position.MAX_MOVES long)
+	 * @return the packed move, or 0 if the position isn't in the book
+	 */
+	public long pickMove(Position p, Random random, long[] moves, int[] weights) {
+		int n = lookup(p, moves, weights);
+		long total = 0;
+		for (int i = 0; i < n; i++) total += weights[i];
+		if (total == 0) return 0;
+		long pick = (long) (random.nextDouble() * total);
+		for (int i = 0; i < n; i++) {
+			pick -= weights[i];
+			if (pick < 0) return moves[i];
+		}
+		return moves[n - 1];
+	}
+
+	/**
+	 * Formats the book moves of a position, e.g. "11-15 (120), 9-13 (45)"
+	 * @param p the position
+	 * @return the book moves, or an empty string if the position isn't in the book
+	 */
+	public String describe(Position p) {
+		long[] moves = new long[Position.MAX_MOVES];
+		int[] weights = new int[Position.MAX_MOVES];
+		int n = lookup(p, moves, weights);
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < n; i++)
+			sb.append(i == 0 ? "" : ", ").append(Move.toString(moves[i])).append(" (").append(weights[i]).append(')');
+		return sb.toString();
+	}
+
+	/**
+	 * Reads game records and counts the moves played in the first plies of every game
+	 * @param files the game record files
+	 * @param plies the number of plies of every game to count
+	 * @param counts the counts by position hash and compact move
+	 * @return the number of games read
+	 * @throws IOException if a file can't be read
+	 */
+	static int count(String[] files, int plies, Map<Long, Map<Integer, Integer>> counts) throws IOException {
+		int games = 0;
+		long[] buffer = new long[Position.MAX_MOVES];
+		for (String file : files) {
+			try (BufferedReader in = new BufferedReader(new FileReader(file))) {
+				String line;
+				while ((line = in.readLine()) != null) {
+					Position p = new Position();
+					int ply = 0;
+					for (String token : line.trim().split("\\s+")) {
+						if (ply == plies) break;
+						//Move numbers and results are skipped, a bad move ends the game
+						if (token.isEmpty() || token.endsWith(".") || token.equals("*") || token.equals("1-0")
+								|| token.equals("0-1") || token.equals("1/2-1/2")) continue;
+						long move = Move.parse(token, p, buffer);
+						if (move == 0) break;
+						counts.computeIfAbsent(p.getHash(), k -> new HashMap<Integer, Integer>())
+								.merge(Move.compact(move), 1, Integer::sum);
+						p.makeMove(move);
+						ply++;
+					}
+					if (ply > 0) games++;
+				}
+			}
+		}
+		return games;
+	}
+
+	/**
+	 * Writes a book file, sorted by hash and then by weight (highest first)
+	 * @param file the book file
+	 * @param counts the counts by position hash and compact move
+	 * @param minimum the smallest count kept
+	 * @return the number of entries written
+	 * @throws IOException if the file can't be written
+	 */
+	static int write(File file, Map<Long, Map<Integer, Integer>> counts, int minimum) throws IOException {
+		ArrayList<long[]> list = new ArrayList<long[]>();
+		for (Map.Entry<Long, Map<Integer, Integer>> position : counts.entrySet())
+			for (Map.Entry<Integer, Integer> move : position.getValue().entrySet())
+				if (move.getValue() >= minimum) list.add(new long[] { position.getKey(), move.getKey(), move.getValue() });
+		long[][] sorted = list.toArray(new long[0][]);
+		Arrays.sort(sorted, (a, b) -> a[0] != b[0] ? Long.compare(a[0], b[0]) : Long.compare(b[2], a[2]));
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+			out.write(MAGIC);
+			out.writeInt(sorted.length);
+			out.write(new byte[HEADER - 8]);
+			for (long[] entry : sorted) {
+				out.writeLong(entry[0]);
+				out.writeShort((int) entry[1]);
+				out.writeShort(0);
+				out.writeInt((int) entry[2]);
+			}
+		}
+		return sorted.length;
+	}
+
+	//Main method
+	public static void main(String[] args) throws IOException {
+		int plies = 20, minimum = 2, i = 0;
+		for (; i < args.length && args[i].startsWith("-"); i++) {
+			switch (args[i]) {
+			case "-plies": plies = Integer.parseInt(args[++i]); break;
+			case "-min": minimum = Integer.parseInt(args[++i]); break;
+			default: throw new IllegalArgumentException("Unknown option: " + args[i]);
+			}
+		}
+		if (args.length - i < 2) {
+			System.out.println("Usage: java OpeningBook [-plies N] [-min N] book games...");
+			return;
+		}
+		long start = System.nanoTime();
+		Map<Long, Map<Integer, Integer>> counts = new HashMap<Long, Map<Integer, Integer>>();
+		int games = count(Arrays.copyOfRange(args, i + 1, args.length), plies, counts);
+		int written = write(new File(args[i]), counts, minimum);
+		System.out.printf("%d games, %d positions, %d entries written in %.1f s%n", games, counts.size(), written,
+				(System.nanoTime() - start) / 1e9);
+
+		//Time the lookups of the initial position
+		OpeningBook book = new OpeningBook(new File(args[i]));
+		Position p = new Position();
+		System.out.println("Initial position: " + book.describe(p));
+		long lookups = 0, begin = System.nanoTime();
+		while (System.nanoTime() - begin < 500000000L) {
+			book.bestMove(p);
+			lookups++;
+		}
+		System.out.printf("%.2f microseconds per lookup%n", (System.nanoTime() - begin) / 1e3 / lookups);
+	}
+}
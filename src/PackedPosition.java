@@ -0,0 +1,161 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A class of static helpers that encode a position, with the side to move and the checker
+ * that has to go on with a multi-jump, in a fixed 11 bytes (87 bits), and as FEN-style text.
+ * The bits are: the occupied squares (32), the color of every checker in square order (24, 1
+ * for red), the king flag of every checker in square order (24), red to move (1) and the
+ * square of the pending multi-jump + 1, or 0 if there is none (6). A board of the game never
+ * holds more than 24 checkers
+ */
+public class PackedPosition {
+
+	//Constants
+	public static final int BYTES = 11, NO_JUMP = -1;
+	private static final int MAX_CHECKERS = 24;
+
+	/**
+	 * Encodes a position into a buffer, advancing its position by BYTES
+	 * @param p the position
+	 * @param jumpSquare the square of the checker in the middle of a multi-jump, or NO_JUMP
+	 * @param out the buffer
+	 */
+	public static void write(Position p, int jumpSquare, ByteBuffer out) {
+		int occupied = p.getBlack() | p.getRed();
+		if (Integer.bitCount(occupied) > MAX_CHECKERS) throw new IllegalArgumentException("Too many checkers");
+		long colors = gather(p.getRed(), occupied), kings = gather(p.getKings(), occupied);
+		long low = (occupied & 0xFFFFFFFFL) | colors << 32 | kings << 56;
+		int high = (int) (kings >>> 8) | (p.isBlackToMove() ? 0 : 1) << 16 | (jumpSquare + 1) << 17;
+		out.putLong(low);
+		out.putShort((short) high);
+		out.put((byte) (high >>> 16));
+	}
+
+	/**
+	 * Decodes a position from a buffer, advancing its position by BYTES
+	 * @param in the buffer
+	 * @param p the position to set
+	 * @return the square of the checker in the middle of a multi-jump, or NO_JUMP
+	 * @throws IOException if the bytes aren't a position written by write
+	 */
+	public static int read(ByteBuffer in, Position p) throws IOException {
+		long low = in.getLong();
+		int high = (in.getShort() & 0xFFFF) | (in.get() & 0xFF) << 16;
+		int occupied = (int) low;
+		if (Integer.bitCount(occupied) > MAX_CHECKERS) throw new IOException("Too many checkers");
+		int colors = (int) (low >>> 32) & 0xFFFFFF, kings = (int) (low >>> 56) | (high & 0xFFFF) << 8;
+		int red = scatter(colors, occupied);
+		p.set(occupied & ~red, red, scatter(kings, occupied), (high >>> 16 & 1) == 0);
+		int jumpSquare = (high >>> 17) - 1;
+		if (!isJumpSquare(p, jumpSquare)) throw new IOException("Bad jump square: " + (jumpSquare + 1));
+		return jumpSquare;
+	}
+
+	/**
+	 * Encodes a position into a new array
+	 * @param p the position
+	 * @param jumpSquare the square of the checker in the middle of a multi-jump, or NO_JUMP
+	 * @return the BYTES long encoding
+	 */
+	public static byte[] encode(Position p, int jumpSquare) {
+		ByteBuffer out = ByteBuffer.allocate(BYTES);
+		write(p, jumpSquare, out);
+		return out.array();
+	}
+
+	/**
+	 * Decodes a position from an array
+	 * @param bytes the encoding
+	 * @param p the position to set
+	 * @return the square of the checker in the middle of a multi-jump, or NO_JUMP
+	 * @throws IOException if the bytes aren't a position written by encode
+	 */
+	public static int decode(byte[] bytes, Position p) throws IOException {
+		return read(ByteBuffer.wrap(bytes), p);
+	}
+
+	/**
+	 * Packs the bits of a set that are in a mask next to each other, in square order
+	 * @param set the bits to pack
+	 * @param mask the squares that count
+	 * @return the packed bits
+	 */
+	private static long gather(int set, int mask) {
+		long packed = 0;
+		int i = 0;
+		for (int m = mask; m != 0; m &= m - 1, i++)
+			if ((set & m & -m) != 0) packed |= 1L << i;
+		return packed;
+	}
+
+	/**
+	 * Reverses gather
+	 * @param packed the packed bits
+	 * @param mask the squares that count
+	 * @return the set
+	 */
+	private static int scatter(int packed, int mask) {
+		int set = 0;
+		for (int m = mask; packed != 0 && m != 0; m &= m - 1, packed >>>= 1)
+			if ((packed & 1) != 0) set |= m & -m;
+		return set;
+	}
+
+	/**
+	 * Formats a position as FEN text, with ":J" and the square (1 - 32) of the checker in the
+	 * middle of a multi-jump appended when there is one, e.g. "W:W21,22:B1,K14:J22"
+	 * @param p the position
+	 * @param jumpSquare the square of the checker in the middle of a multi-jump, or NO_JUMP
+	 * @return the text
+	 */
+	public static String toText(Position p, int jumpSquare) {
+		return jumpSquare == NO_JUMP ? p.toFen() : p.toFen() + ":J" + (jumpSquare + 1);
+	}
+
+	/**
+	 * Reads a position from the text made by toText (any PDN FEN is accepted)
+	 * @param text the text
+	 * @param p the position to set
+	 * @return the square of the checker in the middle of a multi-jump, or NO_JUMP
+	 */
+	public static int fromText(String text, Position p) {
+		String fen = text.trim();
+		int jumpSquare = NO_JUMP, jump = fen.lastIndexOf(":J");
+		if (jump >= 0) {
+			jumpSquare = Integer.parseInt(fen.substring(jump + 2).trim()) - 1;
+			fen = fen.substring(0, jump);
+		}
+		p.copyFrom(Position.fromFen(fen));
+		if (!isJumpSquare(p, jumpSquare)) throw new IllegalArgumentException("Bad jump square: " + text);
+		return jumpSquare;
+	}
+
+	/**
+	 * Checks that a checker of the side to move can be in the middle of a multi-jump on a square
+	 * @param p the position
+	 * @param jumpSquare the square, or NO_JUMP
+	 * @return true for NO_JUMP or a square with a checker of the side to move, false otherwise
+	 */
+	private static boolean isJumpSquare(Position p, int jumpSquare) {
+		if (jumpSquare == NO_JUMP) return true;
+		int own = p.isBlackToMove() ? p.getBlack() : p.getRed();
+		return jumpSquare >= 0 && jumpSquare < Position.SQUARES && (own & 1 << jumpSquare) != 0;
+	}
+
+	/**
+	 * Generates the moves of a position where a checker may be in the middle of a multi-jump,
+	 * which can then only go on jumping
+	 * @param p the position
+	 * @param jumpSquare the square of the checker in the middle of a multi-jump, or NO_JUMP
+	 * @param moves the buffer to write the moves to (at least Position.MAX_MOVES long)
+	 * @return the number of moves
+	 */
+	public static int generateMoves(Position p, int jumpSquare, long[] moves) {
+		if (jumpSquare == NO_JUMP) return p.generateMoves(moves);
+		int n = p.generateCaptures(moves), kept = 0;
+		for (int i = 0; i < n; i++)
+			if (Move.from(moves[i]) == jumpSquare) moves[kept++] = moves[i];
+		return kept;
+	}
+}
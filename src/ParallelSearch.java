@@ -0,0 +1,190 @@
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A class that searches one position on several threads at once (Lazy SMP). Every thread
+ * runs its own Search over the same root position and they only share the transposition
+ * table, so a thread finds the results of the others there instead of searching them again.
+ * The move, score and principal variation come from the main thread, which decides when the
+ * search is finished; with one thread and a fixed depth the result is fully reproducible
+ *
+ * Usage: java ParallelSearch [millis per position] [max threads]
+ */
+public class ParallelSearch {
+
+	//Fields
+	private final TranspositionTable table;
+	private final Search[] searches;
+	private final ExecutorService pool;
+	private long nodes;
+
+	/**
+	 * Constructs a parallel search
+	 * @param threads the number of threads (at least 1)
+	 * @param megabytes the size of the shared transposition table in MB
+	 */
+	public ParallelSearch(int threads, int megabytes) {
+		this(threads, new TranspositionTable(megabytes), new Evaluator());
+	}
+
+	/**
+	 * Constructs a parallel search over an existing table
+	 * @param threads the number of threads (at least 1)
+	 * @param table the shared transposition table
+	 * @param evaluator the evaluation used by every thread
+	 */
+	public ParallelSearch(int threads, TranspositionTable table, Evaluator evaluator) {
+		if (threads < 1) throw new IllegalArgumentException();
+		this.table = table;
+		searches = new Search[threads];
+		for (int i = 0; i < threads; i++) {
+			searches[i] = new Search(evaluator, table);
+			searches[i].setHelper(i);
+		}
+		pool = threads == 1 ? null : Executors.newFixedThreadPool(threads - 1, new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "search-helper");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+
+	/**
+	 * Searches a position on every thread until the main thread runs out of time or
+	 * finishes the maximum depth
+	 * @param p the position to search (not changed)
+	 * @param millis the time budget in milliseconds
+	 * @param maxDepth the deepest iteration of the main thread
+	 * @return the best move, or 0 if the side to move has no moves
+	 */
+	public long search(final Position p, final long millis, int maxDepth) {
+		Future<?>[] helpers = new Future<?>[searches.length - 1];
+		for (int i = 1; i < searches.length; i++) {
+			final Search helper = searches[i];
+			helpers[i - 1] = pool.submit(new Runnable() {
+				public void run() {
+					helper.search(p, millis, Search.MAX_PLY);
+				}
+			});
+		}
+		long best = searches[0].search(p, millis, maxDepth);
+		nodes = searches[0].getNodes();
+		for (int i = 1; i < searches.length; i++) {
+			//Keep stopping until the helper is done, in case it started after the first stop
+			while (true) {
+				searches[i].stop();
+				try {
+					helpers[i - 1].get(1, TimeUnit.MILLISECONDS);
+					break;
+				}
+				catch (TimeoutException e) {}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					break;
+				}
+				catch (ExecutionException e) {
+					throw new IllegalStateException(e.getCause());
+				}
+			}
+			nodes += searches[i].getNodes();
+		}
+		return best;
+	}
+
+	/**
+	 * Stops a running search as soon as possible
+	 */
+	public void stop() {
+		for (Search s : searches) s.stop();
+	}
+
+	/**
+	 * Gets the score found by the main thread
+	 * @return the score for the side to move
+	 */
+	public int getScore() {
+		return searches[0].getScore();
+	}
+
+	/**
+	 * Gets the depth finished by the main thread
+	 * @return the depth
+	 */
+	public int getDepth() {
+		return searches[0].getDepth();
+	}
+
+	/**
+	 * Gets the nodes visited by all the threads in the last search
+	 * @return the node count
+	 */
+	public long getNodes() {
+		return nodes;
+	}
+
+	/**
+	 * Gets the principal variation found by the main thread
+	 * @return the principal variation as text
+	 */
+	public String getPrincipalVariationText() {
+		return searches[0].getPrincipalVariationText();
+	}
+
+	/**
+	 * Gets the shared transposition table
+	 * @return the transposition table
+	 */
+	public TranspositionTable getTable() {
+		return table;
+	}
+
+	/**
+	 * Gets the number of threads of the search
+	 * @return the number of threads, the calling one included
+	 */
+	public int getThreads() {
+		return searches.length;
+	}
+
+	/**
+	 * Stops the helper threads
+	 */
+	public void close() {
+		if (pool != null) pool.shutdownNow();
+	}
+
+	//Main method
+	public static void main(String[] args) {
+		long millis = args.length > 0 ? Long.parseLong(args[0]) : 1000;
+		int maxThreads = args.length > 1 ? Integer.parseInt(args[1]) : 32;
+		Position[] positions = Benchmark.samplePositions(8, new Random(20200430L));
+		System.out.println("cores: " + Runtime.getRuntime().availableProcessors());
+		System.out.printf("%8s %16s %8s %10s%n", "threads", "nodes/s", "speedup", "avg depth");
+		//Warm up the JIT so the one thread run isn't measured while still interpreted
+		ParallelSearch warmUp = new ParallelSearch(1, 64);
+		for (Position p : positions) warmUp.search(p, millis, Search.MAX_PLY);
+		warmUp.close();
+		double base = 0;
+		for (int threads = 1; threads <= maxThreads; threads *= 2) {
+			ParallelSearch search = new ParallelSearch(threads, 64);
+			long nodes = 0, depth = 0, start = System.nanoTime();
+			for (Position p : positions) {
+				search.getTable().clear();
+				search.search(p, millis, Search.MAX_PLY);
+				nodes += search.getNodes();
+				depth += search.getDepth();
+			}
+			double rate = nodes * 1e9 / (System.nanoTime() - start);
+			if (threads == 1) base = rate;
+			System.out.printf("%8d %,16.0f %8.2f %10.1f%n", threads, rate, rate / base, (double) depth / positions.length);
+			search.close();
+		}
+	}
+}
@@ -0,0 +1,204 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A class that holds one game record in Portable Draughts Notation: the tag pairs, the
+ * starting position, the moves and the result. PdnReader fills the same object again for
+ * every game of a file, so reading a collection doesn't build up garbage
+ */
+public class PdnGame {
+
+	//Constants
+	public static final String BLACK_WIN = "2-0", RED_WIN = "0-2", DRAW = "1-1", UNFINISHED = "*";
+
+	//Fields
+	private final Map<String, String> tags = new LinkedHashMap<String, String>();
+	private final Position start = new Position();
+	private long[] moves = new long[64];
+	private int plies;
+	private String result = UNFINISHED, error;
+
+	/**
+	 * Constructs an empty game from the initial position
+	 */
+	public PdnGame() {
+	}
+
+	/**
+	 * Constructs a game record of a played game
+	 * @param g the game
+	 */
+	public PdnGame(GameState g) {
+		start.copyFrom(g.getStart());
+		for (int ply = 0; ply < g.getPlies(); ply++) addMove(g.getMove(ply));
+		switch (g.getResult()) {
+		case GameState.BLACK_WIN: result = BLACK_WIN; break;
+		case GameState.RED_WIN: result = RED_WIN; break;
+		case GameState.DRAW: result = DRAW; break;
+		default: result = UNFINISHED;
+		}
+	}
+
+	/**
+	 * Empties the game so it can be filled again
+	 */
+	public void clear() {
+		tags.clear();
+		start.copyFrom(new Position());
+		plies = 0;
+		result = UNFINISHED;
+		error = null;
+	}
+
+	/**
+	 * Gets a tag
+	 * @param name the tag name, e.g. Event
+	 * @return the tag value, or null if the game has no such tag
+	 */
+	public String getTag(String name) {
+		return tags.get(name);
+	}
+
+	/**
+	 * Sets a tag
+	 * @param name the tag name
+	 * @param value the tag value
+	 */
+	public void setTag(String name, String value) {
+		tags.put(name, value);
+	}
+
+	/**
+	 * Gets the starting position. It must not be changed by the caller
+	 * @return the starting position
+	 */
+	public Position getStart() {
+		return start;
+	}
+
+	/**
+	 * Sets the starting position
+	 * @param p the starting position (copied)
+	 */
+	public void setStart(Position p) {
+		start.copyFrom(p);
+	}
+
+	/**
+	 * Adds a move at the end of the game. The move isn't checked
+	 * @param move the packed move
+	 */
+	public void addMove(long move) {
+		if (plies == moves.length) {
+			long[] longer = new long[plies * 2];
+			System.arraycopy(moves, 0, longer, 0, plies);
+			moves = longer;
+		}
+		moves[plies++] = move;
+	}
+
+	/**
+	 * Gets a move of the game
+	 * @param ply the index of the move (0 is the first move)
+	 * @return the packed move
+	 */
+	public long getMove(int ply) {
+		if (ply < 0 || ply >= plies) throw new IndexOutOfBoundsException();
+		return moves[ply];
+	}
+
+	/**
+	 * Gets the number of moves
+	 * @return the number of plies
+	 */
+	public int getPlies() {
+		return plies;
+	}
+
+	/**
+	 * Gets the result
+	 * @return BLACK_WIN, RED_WIN, DRAW or UNFINISHED
+	 */
+	public String getResult() {
+		return result;
+	}
+
+	/**
+	 * Sets the result
+	 * @param result BLACK_WIN, RED_WIN, DRAW or UNFINISHED
+	 */
+	public void setResult(String result) {
+		this.result = result;
+	}
+
+	/**
+	 * Gets the reason why the record was rejected
+	 * @return the error, or null if every move was legal
+	 */
+	public String getError() {
+		return error;
+	}
+
+	/**
+	 * Marks the record as rejected
+	 * @param error the reason
+	 */
+	void setError(String error) {
+		this.error = error;
+	}
+
+	/**
+	 * Replays the game into a GameState
+	 * @return the game
+	 */
+	public GameState toGameState() {
+		GameState g = new GameState(start);
+		for (int ply = 0; ply < plies; ply++) g.play(moves[ply]);
+		return g;
+	}
+
+	/**
+	 * Writes the game in Portable Draughts Notation, followed by an empty line
+	 * @param out the output
+	 * @throws IOException if the output can't be written
+	 */
+	public void write(Writer out) throws IOException {
+		StringBuilder sb = new StringBuilder();
+		boolean initial = start.equals(new Position());
+		if (!tags.containsKey("GameType")) appendTag(sb, "GameType", "21");
+		for (Map.Entry<String, String> tag : tags.entrySet())
+			if (!tag.getKey().equals("FEN") && !tag.getKey().equals("Result")) appendTag(sb, tag.getKey(), tag.getValue());
+		if (!initial) appendTag(sb, "FEN", start.toFen());
+		appendTag(sb, "Result", result);
+
+		Position p = new Position(start);
+		int lineStart = sb.length(), moveNumber = 1;
+		for (int ply = 0; ply < plies; ply++) {
+			String move = Move.toPathString(moves[ply], p);
+			String number = p.isBlackToMove() ? moveNumber + ". " : ply == 0 ? moveNumber + "... " : "";
+			if (sb.length() - lineStart + number.length() + move.length() > 79) {
+				sb.append('\n');
+				lineStart = sb.length();
+			}
+			else if (sb.length() > lineStart) sb.append(' ');
+			sb.append(number).append(move);
+			p.makeMove(moves[ply]);
+			if (p.isBlackToMove()) moveNumber++;
+		}
+		if (sb.length() - lineStart + result.length() > 79) sb.append('\n');
+		else if (sb.length() > lineStart) sb.append(' ');
+		out.write(sb.append(result).append("\n\n").toString());
+	}
+
+	/**
+	 * Appends a tag pair
+	 * @param sb the text so far
+	 * @param name the tag name
+	 * @param value the tag value
+	 */
+	private static void appendTag(StringBuilder sb, String name, String value) {
+		sb.append('[').append(name).append(" \"").append(value.replace("\\", "\\\\").replace("\"", "\\\"")).append("\"]\n");
+	}
+}
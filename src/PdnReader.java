@@ -0,0 +1,269 @@
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A class that reads game records in Portable Draughts Notation one game at a time, so a
+ * collection of any size is read in constant memory. Every move is checked against the rules
+ * engine; a record with an illegal move is still returned, with an error and the moves up to
+ * the bad one. Comments, variations, move numbers and annotations are skipped
+ *
+ * Usage: java PdnReader [-out file] files...
+ */
+public class PdnReader implements Closeable {
+
+	//Constants
+	private static final int BUFFER = 1 << 16;
+	private static final String[] RESULTS = { "*", "2-0", "0-2", "1-1", "1-0", "0-1", "1/2-1/2", "0-0" };
+
+	//Fields
+	private final Reader in;
+	private final char[] buffer = new char[BUFFER];
+	private int length, offset;
+	private long charsRead;
+	private final StringBuilder token = new StringBuilder();
+	private final long[] moves = new long[Position.MAX_MOVES];
+	private final Position position = new Position();
+
+	/**
+	 * Constructs a reader over a character stream
+	 * @param in the stream (not buffered further by the caller)
+	 */
+	public PdnReader(Reader in) {
+		this.in = in;
+	}
+
+	/**
+	 * Constructs a reader over a file
+	 * @param file the file
+	 * @throws IOException if the file can't be opened
+	 */
+	public PdnReader(File file) throws IOException {
+		this(new InputStreamReader(new FileInputStream(file), StandardCharsets.ISO_8859_1));
+	}
+
+	/**
+	 * Gets the next character without taking it
+	 * @return the character, or -1 at the end of the stream
+	 * @throws IOException if the stream can't be read
+	 */
+	private int peek() throws IOException {
+		if (offset == length) {
+			charsRead += length;
+			length = in.read(buffer, 0, BUFFER);
+			offset = 0;
+			if (length <= 0) {
+				length = 0;
+				return -1;
+			}
+		}
+		return buffer[offset];
+	}
+
+	/**
+	 * Takes the next character
+	 * @return the character, or -1 at the end of the stream
+	 * @throws IOException if the stream can't be read
+	 */
+	private int read() throws IOException {
+		int c = peek();
+		if (c >= 0) offset++;
+		return c;
+	}
+
+	/**
+	 * Skips characters up to and including a given one
+	 * @param end the last character to skip
+	 * @throws IOException if the stream can't be read
+	 */
+	private void skipPast(char end) throws IOException {
+		int c;
+		while ((c = read()) >= 0 && c != end);
+	}
+
+	/**
+	 * Gets the number of characters read so far
+	 * @return the number of characters
+	 */
+	public long getCharsRead() {
+		return charsRead + offset;
+	}
+
+	/**
+	 * Reads the next game record
+	 * @param game the game to fill (cleared first)
+	 * @return false if there are no more games, true otherwise
+	 * @throws IOException if the stream can't be read
+	 */
+	public boolean next(PdnGame game) throws IOException {
+		game.clear();
+		position.copyFrom(game.getStart());
+		boolean started = false, inMoves = false;
+		while (true) {
+			int c = peek();
+			if (c < 0) return started;
+			if (Character.isWhitespace(c)) {
+				offset++;
+				continue;
+			}
+			started = true;
+			switch (c) {
+			case '[':
+				//A tag after the moves starts the next game
+				if (inMoves) return true;
+				offset++;
+				readTag(game);
+				break;
+			case '{': skipPast('}'); break;
+			case ';': skipPast('\n'); break;
+			case '(': skipVariation(); break;
+			default:
+				inMoves = true;
+				readToken();
+				if (isResult(token)) {
+					game.setResult(token.toString());
+					return true;
+				}
+				if (game.getError() == null) playToken(game);
+			}
+		}
+	}
+
+	/**
+	 * Reads a tag pair (after its opening bracket) and sets up the starting position of a FEN tag
+	 * @param game the game
+	 * @throws IOException if the stream can't be read
+	 */
+	private void readTag(PdnGame game) throws IOException {
+		token.setLength(0);
+		int c;
+		while ((c = read()) >= 0 && !Character.isWhitespace(c) && c != '"' && c != ']') token.append((char) c);
+		String name = token.toString();
+		token.setLength(0);
+		while (c >= 0 && c != '"' && c != ']') c = read();
+		if (c == '"') {
+			while ((c = read()) >= 0 && c != '"') {
+				if (c == '\\') c = read();
+				if (c >= 0) token.append((char) c);
+			}
+			skipPast(']');
+		}
+		game.setTag(name, token.toString());
+		if (name.equals("FEN")) {
+			try {
+				game.setStart(Position.fromFen(token.toString()));
+				position.copyFrom(game.getStart());
+			}
+			catch (IllegalArgumentException e) {
+				game.setError("Bad FEN: " + token);
+			}
+		}
+	}
+
+	/**
+	 * Skips a variation, with any variations inside it
+	 * @throws IOException if the stream can't be read
+	 */
+	private void skipVariation() throws IOException {
+		int depth = 0, c;
+		while ((c = read()) >= 0) {
+			if (c == '(') depth++;
+			else if (c == ')' && --depth == 0) return;
+			else if (c == '{') skipPast('}');
+		}
+	}
+
+	/**
+	 * Reads a token of the move text into the token buffer
+	 * @throws IOException if the stream can't be read
+	 */
+	private void readToken() throws IOException {
+		token.setLength(0);
+		int c;
+		while ((c = peek()) >= 0 && !Character.isWhitespace(c) && c != '{' && c != '(' && c != '[' && c != ';') {
+			token.append((char) c);
+			offset++;
+			//A move number can be written right before the move, as in 1.11-15
+			if (c == '.' && peek() != '.') break;
+		}
+	}
+
+	/**
+	 * Checks if a token is a game result
+	 * @param text the token
+	 * @return true if the token ends the game, false otherwise
+	 */
+	private static boolean isResult(CharSequence text) {
+		for (String result : RESULTS) {
+			if (result.length() != text.length()) continue;
+			int i = 0;
+			while (i < result.length() && result.charAt(i) == text.charAt(i)) i++;
+			if (i == result.length()) return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Plays a move token, skipping move numbers and annotations
+	 * @param game the game
+	 */
+	private void playToken(PdnGame game) {
+		int end = token.length();
+		while (end > 0 && "!?*".indexOf(token.charAt(end - 1)) >= 0) end--;
+		if (end == 0 || token.charAt(end - 1) == '.' || token.charAt(0) == '$') return;
+		token.setLength(end);
+		long move = Move.parse(token, position, moves);
+		if (move == 0) {
+			game.setError("Illegal move " + token + " at ply " + (game.getPlies() + 1));
+			return;
+		}
+		game.addMove(move);
+		position.makeMove(move);
+	}
+
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+
+	//Main method
+	public static void main(String[] args) throws IOException {
+		Writer out = null;
+		int i = 0;
+		if (args.length > 1 && args[0].equals("-out")) {
+			out = new BufferedWriter(new FileWriter(args[1]));
+			i = 2;
+		}
+		if (i == args.length) {
+			System.out.println("Usage: java PdnReader [-out file] files...");
+			return;
+		}
+		long start = System.nanoTime(), chars = 0, plies = 0;
+		int games = 0, rejected = 0;
+		PdnGame game = new PdnGame();
+		for (; i < args.length; i++) {
+			try (PdnReader reader = new PdnReader(new File(args[i]))) {
+				while (reader.next(game)) {
+					games++;
+					plies += game.getPlies();
+					if (game.getError() != null) {
+						if (rejected++ < 10) System.out.println(args[i] + ", game " + games + ": " + game.getError());
+					}
+					else if (out != null) game.write(out);
+				}
+				chars += reader.getCharsRead();
+			}
+		}
+		if (out != null) out.close();
+		double seconds = (System.nanoTime() - start) / 1e9;
+		System.out.printf("%d games (%d rejected), %d moves, %.1f MB in %.2f s: %.0f games/s, %.1f MB/min%n", games,
+				rejected, plies, chars / 1e6, seconds, games / seconds, chars / 1e6 / seconds * 60);
+	}
+}
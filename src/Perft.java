@@ -0,0 +1,89 @@
+/**
+ * A class that counts the leaf nodes of the move tree (perft) to check the rules engine
+ * against known-good totals and to measure its speed
+ *
+ * Usage: java Perft [depth] [FEN] [divide]
+ */
+public class Perft {
+
+	/**
+	 * Known-good perft totals from the initial position, indexed by depth
+	 */
+	public static final long[] INITIAL_TOTALS = {
+		1L, 7L, 49L, 302L, 1469L, 7361L, 36768L, 179740L, 845931L, 3963680L, 18391564L, 85242128L
+	};
+
+	//Fields
+	private final long[][] moves;
+
+	/**
+	 * Constructs a Perft object that can count up to a given depth
+	 * @param maxDepth the deepest depth that will be counted
+	 */
+	public Perft(int maxDepth) {
+		moves = new long[maxDepth + 1][Position.MAX_MOVES];
+	}
+
+	/**
+	 * Counts the leaf nodes of the move tree
+	 * @param p the position to count from (restored before returning)
+	 * @param depth the number of plies to count
+	 * @return the number of leaf nodes
+	 */
+	public long perft(Position p, int depth) {
+		if (depth == 0) return 1;
+		long[] buffer = moves[depth];
+		int n = p.generateMoves(buffer);
+		if (depth == 1) return n;
+		long nodes = 0;
+		for (int i = 0; i < n; i++) {
+			p.makeMove(buffer[i]);
+			nodes += perft(p, depth - 1);
+			p.unmakeMove(buffer[i]);
+		}
+		return nodes;
+	}
+
+	/**
+	 * Prints the leaf node count below every root move
+	 * @param p the position to count from
+	 * @param depth the number of plies to count
+	 * @return the total number of leaf nodes
+	 */
+	public long divide(Position p, int depth) {
+		long[] buffer = new long[Position.MAX_MOVES];
+		int n = p.generateMoves(buffer);
+		long total = 0;
+		for (int i = 0; i < n; i++) {
+			p.makeMove(buffer[i]);
+			long nodes = perft(p, depth - 1);
+			p.unmakeMove(buffer[i]);
+			System.out.println(Move.toString(buffer[i]) + ": " + nodes);
+			total += nodes;
+		}
+		return total;
+	}
+
+	//Main method
+	public static void main(String[] args) {
+		int depth = args.length > 0 ? Integer.parseInt(args[0]) : 9;
+		Position p = args.length > 1 ? Position.fromFen(args[1]) : new Position();
+		boolean fromInitial = p.equals(new Position());
+		Perft perft = new Perft(depth);
+		if (args.length > 2 && args[2].equals("divide")) {
+			System.out.println("Total: " + perft.divide(p, depth));
+			return;
+		}
+		for (int d = 1; d <= depth; d++) {
+			long start = System.nanoTime();
+			long nodes = perft.perft(p, d);
+			double seconds = (System.nanoTime() - start) / 1e9;
+			String check = "";
+			if (fromInitial && d < INITIAL_TOTALS.length)
+				check = nodes == INITIAL_TOTALS[d] ? " ok" : " MISMATCH (expected " + INITIAL_TOTALS[d] + ")";
+			System.out.printf("perft(%d) = %d  %.3f s  %.0f nodes/s%s%n", d, nodes, seconds,
+					nodes / Math.max(seconds, 1e-9), check);
+			if (!check.isEmpty() && !check.equals(" ok")) System.exit(1);
+		}
+	}
+}
@@ -0,0 +1,310 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * An interface for anything that picks moves in a game: the search engine, a random
+ * mover, and so on. A Player object is used by one thread at a time
+ */
+public interface Player {
+
+	/**
+	 * Picks a move for the side to move
+	 * @param p the position (must not be changed)
+	 * @return the packed move, or 0 if the side to move has no moves
+	 */
+	long chooseMove(Position p);
+
+	/**
+	 * Gets ready for a new game, so the moves of a game only depend on its seed and not on
+	 * the games the player played before. Random players are reseeded and search players
+	 * forget their transposition table
+	 * @param seed the seed of the game
+	 */
+	default void newGame(long seed) {}
+
+	/**
+	 * Gets the number of threads the player searches with
+	 * @return the number of threads, 1 for players that only use the calling thread
+	 */
+	default int getThreads() {
+		return 1;
+	}
+
+	/**
+	 * Stops the threads of the player, if it has any. The player can't be used afterwards
+	 */
+	default void close() {}
+
+	/**
+	 * Caps the threads of a pool that plays games between players, so the pool threads times
+	 * the threads of the players don't outnumber the cores. A game only runs one player at a
+	 * time, so every pool thread needs as many cores as the busiest player
+	 * @param threads the number of pool threads wanted
+	 * @param specs the player specs
+	 * @return the number of pool threads to use, at least 1
+	 * @throws IllegalArgumentException if a spec is bad
+	 */
+	static int poolThreads(int threads, String... specs) {
+		int playerThreads = 1;
+		for (String spec : specs) {
+			Player player = create(spec, 0);
+			playerThreads = Math.max(playerThreads, player.getThreads());
+			player.close();
+		}
+		return Math.min(threads, Math.max(1, Runtime.getRuntime().availableProcessors() / playerThreads));
+	}
+
+	/**
+	 * Creates a player from a text description: "random", "random:seed", "search:millis"
+	 * (time per move), "depth:plies" (fixed depth), "smp:millis" or "smp:millis:threads" (the
+	 * search on several threads, every core by default), "mcts:millis" or "mcts:millis:threads"
+	 * (Monte Carlo tree search with a time per move) or "book:file:spec" (opening book moves
+	 * while the book has any, then the player of the rest of the spec). The search players
+	 * take a weights file for their Evaluator as the last part, e.g. "depth:8:tuned.txt" or
+	 * "smp:100:4:tuned.txt"
+	 * @param spec the description
+	 * @param seed the seed for random players that don't give their own
+	 * @return the player
+	 */
+	static Player create(String spec, long seed) {
+		String[] parts = spec.split(":");
+		String kind = parts[0];
+		if (kind.equals("random"))
+			return new RandomPlayer(parts.length > 1 ? Long.parseLong(parts[1]) : seed);
+		if (kind.equals("search") && parts.length > 1)
+			return new SearchPlayer(new Search(evaluator(parts, 2), new TranspositionTable(8)), Long.parseLong(parts[1]), Search.MAX_PLY);
+		if (kind.equals("depth") && parts.length > 1)
+			return new SearchPlayer(new Search(evaluator(parts, 2), new TranspositionTable(8)), Long.MAX_VALUE, Integer.parseInt(parts[1]));
+		if (kind.equals("smp") && parts.length > 1)
+			return new ParallelSearchPlayer(new ParallelSearch(parts.length > 2 ? Integer.parseInt(parts[2])
+					: Runtime.getRuntime().availableProcessors(), new TranspositionTable(16), evaluator(parts, 3)),
+					Long.parseLong(parts[1]));
+		if (kind.equals("mcts") && parts.length > 1)
+			return new MonteCarloPlayer(new MonteCarloSearch(parts.length > 2 ? Integer.parseInt(parts[2]) : 1,
+					MonteCarloSearch.DEFAULT_NODES, seed), Long.parseLong(parts[1]));
+		if (kind.equals("book") && parts.length > 2) {
+			try {
+				return new BookPlayer(new OpeningBook(new File(parts[1])),
+						create(spec.substring(kind.length() + parts[1].length() + 2), seed), seed);
+			}
+			catch (IOException e) {
+				throw new IllegalArgumentException("Can't read book " + parts[1], e);
+			}
+		}
+		throw new IllegalArgumentException("Unknown player: " + spec);
+	}
+
+	/**
+	 * Creates the evaluator of a search player spec
+	 * @param parts the parts of the spec
+	 * @param index the part that holds the weights file
+	 * @return the evaluator with the weights of the file in that part, or the default one
+	 */
+	private static Evaluator evaluator(String[] parts, int index) {
+		if (parts.length <= index) return new Evaluator();
+		try {
+			return Evaluator.load(new File(parts[index]));
+		}
+		catch (IOException e) {
+			throw new IllegalArgumentException("Can't read weights " + parts[index], e);
+		}
+	}
+
+	/**
+	 * A player that picks a random legal move
+	 */
+	class RandomPlayer implements Player {
+
+		private final Random random;
+		private final long seed;
+		private final long[] moves = new long[Position.MAX_MOVES];
+
+		/**
+		 * Constructs a random player
+		 * @param seed the random seed
+		 */
+		public RandomPlayer(long seed) {
+			this.seed = seed;
+			random = new Random(seed);
+		}
+
+		@Override
+		public void newGame(long gameSeed) {
+			random.setSeed(seed ^ gameSeed);
+		}
+
+		@Override
+		public long chooseMove(Position p) {
+			int n = p.generateMoves(moves);
+			return n == 0 ? 0 : moves[random.nextInt(n)];
+		}
+	}
+
+	/**
+	 * A player that picks the best move found by a Search
+	 */
+	class SearchPlayer implements Player {
+
+		private final Search search;
+		private final long millis;
+		private final int depth;
+
+		/**
+		 * Constructs a search player
+		 * @param search the search to use
+		 * @param millis the time budget per move in milliseconds
+		 * @param depth the maximum depth per move
+		 */
+		public SearchPlayer(Search search, long millis, int depth) {
+			this.search = search;
+			this.millis = millis;
+			this.depth = depth;
+		}
+
+		@Override
+		public long chooseMove(Position p) {
+			return search.search(p, millis, depth);
+		}
+
+		@Override
+		public void newGame(long seed) {
+			search.getTable().clear();
+		}
+
+		/**
+		 * Gets the search used by the player
+		 * @return the search
+		 */
+		public Search getSearch() {
+			return search;
+		}
+	}
+
+	/**
+	 * A player that picks the best move found by a ParallelSearch on several threads
+	 */
+	class ParallelSearchPlayer implements Player {
+
+		private final ParallelSearch search;
+		private final long millis;
+
+		/**
+		 * Constructs a parallel search player
+		 * @param search the search to use
+		 * @param millis the time budget per move in milliseconds
+		 */
+		public ParallelSearchPlayer(ParallelSearch search, long millis) {
+			this.search = search;
+			this.millis = millis;
+		}
+
+		@Override
+		public long chooseMove(Position p) {
+			return search.search(p, millis, Search.MAX_PLY);
+		}
+
+		@Override
+		public void newGame(long seed) {
+			search.getTable().clear();
+		}
+
+		@Override
+		public int getThreads() {
+			return search.getThreads();
+		}
+
+		@Override
+		public void close() {
+			search.close();
+		}
+	}
+
+	/**
+	 * A player that picks the move found by a MonteCarloSearch
+	 */
+	class MonteCarloPlayer implements Player {
+
+		private final MonteCarloSearch search;
+		private final long millis, seed;
+
+		/**
+		 * Constructs a Monte Carlo player
+		 * @param search the search to use
+		 * @param millis the time budget per move in milliseconds
+		 */
+		public MonteCarloPlayer(MonteCarloSearch search, long millis) {
+			this.search = search;
+			this.millis = millis;
+			seed = search.getSeed();
+		}
+
+		@Override
+		public void newGame(long gameSeed) {
+			search.setSeed(seed ^ gameSeed);
+		}
+
+		@Override
+		public long chooseMove(Position p) {
+			return search.search(p, millis);
+		}
+
+		@Override
+		public int getThreads() {
+			return search.getThreads();
+		}
+
+		@Override
+		public void close() {
+			search.close();
+		}
+	}
+
+	/**
+	 * A player that plays opening book moves while it can and leaves the rest to another player
+	 */
+	class BookPlayer implements Player {
+
+		private final OpeningBook book;
+		private final Player player;
+		private final Random random;
+		private final long seed;
+		private final long[] moves = new long[Position.MAX_MOVES];
+		private final int[] weights = new int[Position.MAX_MOVES];
+
+		/**
+		 * Constructs a book player
+		 * @param book the opening book
+		 * @param player the player for positions that aren't in the book
+		 * @param seed the seed for picking among book moves
+		 */
+		public BookPlayer(OpeningBook book, Player player, long seed) {
+			this.book = book;
+			this.player = player;
+			this.seed = seed;
+			this.random = new Random(seed);
+		}
+
+		@Override
+		public void newGame(long gameSeed) {
+			random.setSeed(seed ^ gameSeed);
+			player.newGame(gameSeed);
+		}
+
+		@Override
+		public int getThreads() {
+			return player.getThreads();
+		}
+
+		@Override
+		public void close() {
+			player.close();
+		}
+
+		@Override
+		public long chooseMove(Position p) {
+			long move = book.pickMove(p, random, moves, weights);
+			return move != 0 ? move : player.chooseMove(p);
+		}
+	}
+}
@@ -0,0 +1,156 @@
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+import javax.swing.SwingUtilities;
+
+/**
+ * A class that keeps analyzing a position on a background thread while the player decides
+ * on a move, so the Swing event thread is never kept busy by the search. The analysis goes
+ * one depth deeper at a time with its own Search and transposition table, and after every
+ * depth the best move, the score and the principal variation are published to a listener
+ * on the event thread.
+ *
+ * Asking for another position (or cancelling) stops the running search at once and makes
+ * sure no result of the old position is published afterwards. Updates are coalesced: while
+ * one is waiting for the event thread, a newer one replaces it instead of being queued, so
+ * the event thread gets at most one update per repaint however fast the search goes. The
+ * worker runs at the lowest priority so it gives the CPU up to the event thread
+ */
+public class Ponderer {
+
+	//Constants
+	private static final int MAX_DEPTH = 40;
+
+	//Fields
+	private final Search search;
+	private final Consumer<String> listener;
+	private final Thread worker;
+	private final AtomicReference<Update> pending = new AtomicReference<Update>();
+	private final Position pos = new Position();
+	private Position target;
+	private volatile long generation;
+
+	/**
+	 * Constructs a ponderer and starts its thread, which waits for a position
+	 * @param evaluator the evaluation of the search
+	 * @param listener the listener that gets the analysis text on the event thread
+	 */
+	public Ponderer(Evaluator evaluator, Consumer<String> listener) {
+		this.search = new Search(evaluator, new TranspositionTable(16));
+		this.listener = listener;
+		worker = new Thread(this::run, "ponderer");
+		worker.setDaemon(true);
+		worker.setPriority(Thread.MIN_PRIORITY);
+		worker.start();
+	}
+
+	/**
+	 * Starts analyzing a position, stopping the analysis of any other one. Asking again for
+	 * the position being analyzed lets the analysis go on
+	 * @param p the position (copied)
+	 * @return true if the analysis of the position starts, false if it was already running
+	 */
+	public synchronized boolean analyze(Position p) {
+		if (target != null && target.equals(p)) return false;
+		target = new Position(p);
+		restart();
+		return true;
+	}
+
+	/**
+	 * Stops the analysis; nothing more is published until another position is analyzed
+	 */
+	public synchronized void cancel() {
+		if (target == null) return;
+		target = null;
+		restart();
+	}
+
+	/**
+	 * Moves to the next generation, which stops the running search, and wakes the worker up
+	 */
+	private void restart() {
+		generation++;
+		notifyAll();
+	}
+
+	/**
+	 * The loop of the worker thread: waits for a position and deepens its analysis until it
+	 * is done or another position is asked for
+	 */
+	private void run() {
+		long done = 0;
+		while (true) {
+			long current;
+			synchronized (this) {
+				while (target == null || generation == done) {
+					try {
+						wait();
+					}
+					catch (InterruptedException e) {
+						return;
+					}
+				}
+				current = generation;
+				pos.copyFrom(target);
+			}
+			done = current;
+			//The search stops by itself as soon as the generation moves on
+			final long searched = current;
+			search.setAbort(() -> generation != searched);
+			for (int depth = 1; depth <= MAX_DEPTH; depth++) {
+				long move = search.search(pos, Long.MAX_VALUE, depth);
+				if (move == 0 || generation != current) break;
+				publish(current, describe(move));
+				if (Math.abs(search.getScore()) > Search.WIN - Search.MAX_PLY) break;
+			}
+		}
+	}
+
+	/**
+	 * Describes the result of the last finished depth
+	 * @param move the best move
+	 * @return the text, e.g. "Analysis (depth 12): 11-15, +0.25, 11-15 23-19 8-11"
+	 */
+	private String describe(long move) {
+		int score = search.getScore();
+		String value;
+		if (Math.abs(score) > Search.WIN - Search.MAX_PLY)
+			value = (score > 0 ? "wins in " : "loses in ") + (Search.WIN - Math.abs(score) + 1) / 2;
+		else value = String.format("%+.2f", score / 100.0);
+		return "Analysis (depth " + search.getDepth() + "): " + Move.toString(move) + ", " + value + ", "
+				+ search.getPrincipalVariationText();
+	}
+
+	/**
+	 * Hands an update to the event thread, replacing the one that is still waiting, if any
+	 * @param current the generation of the update
+	 * @param text the text
+	 */
+	private void publish(long current, String text) {
+		if (pending.getAndSet(new Update(current, text)) != null) return;
+		SwingUtilities.invokeLater(() -> {
+			Update latest = pending.getAndSet(null);
+			if (latest != null && latest.generation == generation) listener.accept(latest.text);
+		});
+	}
+
+	/**
+	 * An analysis text and the generation it belongs to
+	 */
+	private static class Update {
+
+		private final long generation;
+		private final String text;
+
+		/**
+		 * Constructs an update
+		 * @param generation the generation of the analyzed position
+		 * @param text the text
+		 */
+		Update(long generation, String text) {
+			this.generation = generation;
+			this.text = text;
+		}
+	}
+}
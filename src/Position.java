@@ -0,0 +1,582 @@
+/**
+ * A class that represents a checker position as bitboards over the 32 playable squares so
+ * the rules can be checked without building any Swing components. Square s is the dark
+ * square on row s / 4 (0 index, same rows as the boardStatus arrays), black checkers move
+ * toward higher rows and red checkers toward lower rows, and a move is a complete turn
+ * packed into a long (see Move), including every jump of a multi-jump
+ */
+public class Position {
+
+	//Constants
+	public static final int SQUARES = 32, MAX_MOVES = 128;
+	public static final int INITIAL_BLACK = 0x00000FFF, INITIAL_RED = 0xFFF00000;
+	private static final int EVEN_ROWS = 0x0F0F0F0F, ODD_ROWS = 0xF0F0F0F0;
+	private static final int NOT_LEFT = 0xE0E0E0E0, NOT_RIGHT = 0x07070707;
+	static final int BLACK_KING_ROW = 0xF0000000, RED_KING_ROW = 0x0000000F;
+
+	//Fields
+	private int black, red, kings;
+	private boolean blackToMove;
+	private long hash;
+
+	/**
+	 * Constructs the initial position with black to move
+	 */
+	public Position() {
+		this(INITIAL_BLACK, INITIAL_RED, 0, true);
+	}
+
+	/**
+	 * Constructs a position from its bitboards
+	 * @param black the squares that hold black checkers
+	 * @param red the squares that hold red checkers
+	 * @param kings the squares that hold kings of either color
+	 * @param blackToMove true if it's black turn
+	 */
+	public Position(int black, int red, int kings, boolean blackToMove) {
+		set(black, red, kings, blackToMove);
+	}
+
+	/**
+	 * Constructs a copy of another position
+	 * @param other the position to copy
+	 */
+	public Position(Position other) {
+		copyFrom(other);
+	}
+
+	/**
+	 * Creates a position from a 2D array of squares ('b', 'r', 'k', 'q', or 'e')
+	 * @param boardStatus the board status by rows and columns
+	 * @param blackToMove true if it's black turn
+	 * @return the position
+	 */
+	public static Position fromBoardStatus(char[][] boardStatus, boolean blackToMove) {
+		Position p = new Position(0, 0, 0, blackToMove);
+		for (int i = 0; i < 8; i++)
+			for (int j = 0; j < 8; j++)
+				if ((i + j) % 2 == 1) p.set(i, j, boardStatus[i][j]);
+		return p;
+	}
+
+	/**
+	 * Creates a position from its FEN text in Portable Draughts Notation, e.g.
+	 * "B:W21,22,K30:B1,2,K5" (B is the black side and W the red side, squares 1 - 32,
+	 * K marks a king and ranges such as 1-12 are allowed)
+	 * @param fen the FEN text
+	 * @return the position
+	 */
+	public static Position fromFen(String fen) {
+		String[] fields = fen.trim().replace(".", "").split(":");
+		if (fields.length < 1 || fields[0].length() != 1 || "BW".indexOf(fields[0].charAt(0)) < 0)
+			throw new IllegalArgumentException("Bad FEN side to move: " + fen);
+		Position p = new Position(0, 0, 0, fields[0].charAt(0) == 'B');
+		for (int i = 1; i < fields.length; i++) {
+			String field = fields[i].trim();
+			if (field.isEmpty()) continue;
+			char color = field.charAt(0);
+			if (color != 'B' && color != 'W') throw new IllegalArgumentException("Bad FEN color: " + fen);
+			for (String token : field.substring(1).split(",")) {
+				token = token.trim();
+				if (token.isEmpty()) continue;
+				boolean king = token.charAt(0) == 'K';
+				if (king) token = token.substring(1);
+				int dash = token.indexOf('-');
+				int first = Integer.parseInt(dash < 0 ? token : token.substring(0, dash));
+				int last = dash < 0 ? first : Integer.parseInt(token.substring(dash + 1));
+				for (int n = first; n <= last; n++) {
+					if (n < 1 || n > SQUARES) throw new IllegalArgumentException("Bad FEN square: " + fen);
+					int bit = 1 << (n - 1);
+					if (color == 'B') p.black |= bit; else p.red |= bit;
+					if (king) p.kings |= bit;
+				}
+			}
+		}
+		if ((p.black & p.red) != 0) throw new IllegalArgumentException("Bad FEN square: " + fen);
+		p.hash = Zobrist.hash(p.black, p.red, p.kings, p.blackToMove);
+		return p;
+	}
+
+	/**
+	 * Gets the FEN text of the position in Portable Draughts Notation
+	 * @return the FEN text
+	 */
+	public String toFen() {
+		StringBuilder sb = new StringBuilder(blackToMove ? "B" : "W");
+		appendFenSide(sb.append(":W"), red);
+		appendFenSide(sb.append(":B"), black);
+		return sb.toString();
+	}
+
+	/**
+	 * Appends the squares of one side to a FEN text
+	 * @param sb the text so far
+	 * @param pieces the squares of the side
+	 */
+	private void appendFenSide(StringBuilder sb, int pieces) {
+		for (int c = pieces; c != 0; c &= c - 1) {
+			int sq = Integer.numberOfTrailingZeros(c);
+			if (c != pieces) sb.append(',');
+			if ((kings & (1 << sq)) != 0) sb.append('K');
+			sb.append(sq + 1);
+		}
+	}
+
+	/**
+	 * Copies another position into this one
+	 * @param other the position to copy
+	 */
+	public void copyFrom(Position other) {
+		black = other.black;
+		red = other.red;
+		kings = other.kings;
+		blackToMove = other.blackToMove;
+		hash = other.hash;
+	}
+
+	/**
+	 * Sets every square and the turn at once
+	 * @param black the squares that hold black checkers
+	 * @param red the squares that hold red checkers
+	 * @param kings the squares that hold kings of either color
+	 * @param blackToMove true if it's black turn
+	 */
+	public void set(int black, int red, int kings, boolean blackToMove) {
+		if ((black & red) != 0 || (kings & ~(black | red)) != 0)
+			throw new IllegalArgumentException();
+		this.black = black;
+		this.red = red;
+		this.kings = kings;
+		this.blackToMove = blackToMove;
+		this.hash = Zobrist.hash(black, red, kings, blackToMove);
+	}
+
+	/**
+	 * Gets the square index of a row and column
+	 * @param row the row (0 index)
+	 * @param col the column (0 index)
+	 * @return the square index (0 - 31), or -1 if the square is not playable
+	 */
+	public static int square(int row, int col) {
+		if (row < 0 || row > 7 || col < 0 || col > 7 || (row + col) % 2 == 0) return -1;
+		return row * 4 + col / 2;
+	}
+
+	/**
+	 * Gets the row of a square
+	 * @param square the square index
+	 * @return the row (0 index)
+	 */
+	public static int row(int square) {
+		return square >> 2;
+	}
+
+	/**
+	 * Gets the column of a square
+	 * @param square the square index
+	 * @return the column (0 index)
+	 */
+	public static int col(int square) {
+		return ((square & 3) << 1) + (((square >> 2) & 1) ^ 1);
+	}
+
+	/**
+	 * Gets the status of a square in the same characters as the boardStatus arrays
+	 * @param row the row of the square
+	 * @param col the column of the square
+	 * @return 'b', 'r', 'k' (black king), 'q' (red king), or 'e'
+	 */
+	public char get(int row, int col) {
+		int sq = square(row, col);
+		if (sq < 0) return 'e';
+		int bit = 1 << sq;
+		if ((black & bit) != 0) return (kings & bit) != 0 ? 'k' : 'b';
+		if ((red & bit) != 0) return (kings & bit) != 0 ? 'q' : 'r';
+		return 'e';
+	}
+
+	/**
+	 * Sets the status of a square
+	 * @param row the row of the square
+	 * @param col the column of the square
+	 * @param status 'b', 'r', 'k', 'q', or 'e'
+	 */
+	public void set(int row, int col, char status) {
+		int sq = square(row, col);
+		if (sq < 0) {
+			if (status != 'e') throw new IllegalArgumentException();
+			return;
+		}
+		int bit = 1 << sq;
+		if (((black | red) & bit) != 0)
+			hash ^= Zobrist.key(Zobrist.type((black & bit) != 0, (kings & bit) != 0), sq);
+		black &= ~bit; red &= ~bit; kings &= ~bit;
+		switch (status) {
+		case 'k': kings |= bit; black |= bit; break;
+		case 'b': black |= bit; break;
+		case 'q': kings |= bit; red |= bit; break;
+		case 'r': red |= bit; break;
+		case 'e': return;
+		default: throw new IllegalArgumentException();
+		}
+		hash ^= Zobrist.key(Zobrist.type((black & bit) != 0, (kings & bit) != 0), sq);
+	}
+
+	/**
+	 * Gets the position as a 2D array of squares
+	 * @return the board status by rows and columns
+	 */
+	public char[][] toBoardStatus() {
+		char[][] status = new char[8][8];
+		for (int i = 0; i < 8; i++)
+			for (int j = 0; j < 8; j++)
+				status[i][j] = get(i, j);
+		return status;
+	}
+
+	/**
+	 * Gets the squares that hold black checkers
+	 * @return the black bitboard
+	 */
+	public int getBlack() {
+		return black;
+	}
+
+	/**
+	 * Gets the squares that hold red checkers
+	 * @return the red bitboard
+	 */
+	public int getRed() {
+		return red;
+	}
+
+	/**
+	 * Gets the squares that hold kings of either color
+	 * @return the kings bitboard
+	 */
+	public int getKings() {
+		return kings;
+	}
+
+	/**
+	 * Checks whose turn it is
+	 * @return true if it's black turn, false otherwise
+	 */
+	public boolean isBlackToMove() {
+		return blackToMove;
+	}
+
+	/**
+	 * Sets whose turn it is
+	 * @param blackToMove true if it's black turn
+	 */
+	public void setBlackToMove(boolean blackToMove) {
+		if (this.blackToMove != blackToMove) hash ^= Zobrist.RED_TO_MOVE;
+		this.blackToMove = blackToMove;
+	}
+
+	/**
+	 * Gets the Zobrist hash of the position, which is kept up to date on every change
+	 * @return the 64-bit hash
+	 */
+	public long getHash() {
+		return hash;
+	}
+
+	/**
+	 * Gets the empty playable squares
+	 * @return the empty bitboard
+	 */
+	public int getEmpty() {
+		return ~(black | red);
+	}
+
+	//One diagonal step for every checker of a bitboard; checkers that would leave the board drop out
+	static int downLeft(int b) {
+		return ((b & EVEN_ROWS) << 4) | ((b & NOT_LEFT) << 3);
+	}
+
+	static int downRight(int b) {
+		return ((b & NOT_RIGHT) << 5) | ((b & ODD_ROWS) << 4);
+	}
+
+	static int upLeft(int b) {
+		return ((b & EVEN_ROWS) >>> 4) | ((b & NOT_LEFT) >>> 5);
+	}
+
+	static int upRight(int b) {
+		return ((b & NOT_RIGHT) >>> 3) | ((b & ODD_ROWS) >>> 4);
+	}
+
+	/**
+	 * Gets the checkers of a color that can make a capture move (a single jump)
+	 * @param forBlack true for the black checkers, false for the red ones
+	 * @return the bitboard of the checkers that can capture
+	 */
+	public int capturers(boolean forBlack) {
+		int own = forBlack ? black : red, opp = forBlack ? red : black, empty = getEmpty();
+		int down = upRight(upRight(empty) & opp) | upLeft(upLeft(empty) & opp);
+		int up = downLeft(downLeft(empty) & opp) | downRight(downRight(empty) & opp);
+		if (forBlack) return own & (down | (up & kings));
+		return own & (up | (down & kings));
+	}
+
+	/**
+	 * Gets the checkers of a color that can make any move, captures included
+	 * @param forBlack true for the black checkers, false for the red ones
+	 * @return the bitboard of the checkers that can move
+	 */
+	public int movers(boolean forBlack) {
+		int own = forBlack ? black : red, empty = getEmpty();
+		int down = upRight(empty) | upLeft(empty);
+		int up = downLeft(empty) | downRight(empty);
+		int steps = forBlack ? own & (down | (up & kings)) : own & (up | (down & kings));
+		return steps | capturers(forBlack);
+	}
+
+	/**
+	 * Checks if the checker on a square can make a capture move
+	 * @param row the row of the checker
+	 * @param col the column of the checker
+	 * @return true if the checker can capture, false otherwise
+	 */
+	public boolean canCapture(int row, int col) {
+		int sq = square(row, col);
+		if (sq < 0) return false;
+		int bit = 1 << sq;
+		return ((capturers(true) | capturers(false)) & bit) != 0;
+	}
+
+	/**
+	 * Checks if the checker on a square can move
+	 * @param row the row of the checker
+	 * @param col the column of the checker
+	 * @return true if the checker can move, false otherwise
+	 */
+	public boolean canMove(int row, int col) {
+		int sq = square(row, col);
+		if (sq < 0) return false;
+		int bit = 1 << sq;
+		return ((movers(true) | movers(false)) & bit) != 0;
+	}
+
+	/**
+	 * Checks if a single jump from one square to another captures an opponent checker
+	 * @param from the origin square
+	 * @param to the destination square
+	 * @return true if the jump is a legal capture for the checker on the origin square
+	 */
+	public boolean isJump(int from, int to) {
+		if (from < 0 || to < 0) return false;
+		int fromBit = 1 << from, toBit = 1 << to;
+		if ((getEmpty() & toBit) == 0) return false;
+		boolean isBlack = (black & fromBit) != 0, king = (kings & fromBit) != 0;
+		if (!isBlack && (red & fromBit) == 0) return false;
+		int opp = isBlack ? red : black;
+		for (int dir = 0; dir < Squares.DIRECTIONS; dir++) {
+			if (!king && (dir < 2) != isBlack) continue;
+			int i = Squares.index(dir, from);
+			if (Squares.JUMP[i] == toBit) return (Squares.NEIGHBOR[i] & opp) != 0;
+		}
+		return false;
+	}
+
+	/**
+	 * Generates every legal move for the side to move. Captures are mandatory, so only
+	 * complete capture sequences are generated when any capture exists
+	 * @param moves the buffer to write the moves to (at least MAX_MOVES long)
+	 * @return the number of moves written
+	 */
+	public int generateMoves(long[] moves) {
+		int n = generateCaptures(moves);
+		if (n > 0) return n;
+		int own = blackToMove ? black : red, empty = getEmpty();
+		int men = own & ~kings, ownKings = own & kings;
+		if (blackToMove) {
+			n = addSteps(moves, n, downLeft(men) & empty, 0, false);
+			n = addSteps(moves, n, downRight(men) & empty, 1, false);
+		}
+		else {
+			n = addSteps(moves, n, upLeft(men) & empty, 2, false);
+			n = addSteps(moves, n, upRight(men) & empty, 3, false);
+		}
+		n = addSteps(moves, n, downLeft(ownKings) & empty, 0, true);
+		n = addSteps(moves, n, downRight(ownKings) & empty, 1, true);
+		n = addSteps(moves, n, upLeft(ownKings) & empty, 2, true);
+		n = addSteps(moves, n, upRight(ownKings) & empty, 3, true);
+		return n;
+	}
+
+	/**
+	 * Generates only the capture moves for the side to move
+	 * @param moves the buffer to write the moves to (at least MAX_MOVES long)
+	 * @return the number of moves written
+	 */
+	public int generateCaptures(long[] moves) {
+		int n = 0;
+		for (int c = capturers(blackToMove); c != 0; c &= c - 1) {
+			int from = Integer.numberOfTrailingZeros(c);
+			boolean king = (kings & (1 << from)) != 0;
+			int empty = getEmpty() | (1 << from);
+			n = addJumps(moves, n, from, from, 0, empty, king);
+		}
+		return n;
+	}
+
+	/**
+	 * Checks if the side to move has any legal move
+	 * @return true if the side to move can move, false if it has lost
+	 */
+	public boolean hasMoves() {
+		return movers(blackToMove) != 0;
+	}
+
+	/**
+	 * Adds the non-capture moves that arrive on a set of destination squares
+	 * @param moves the move buffer
+	 * @param n the number of moves already in the buffer
+	 * @param targets the destination squares
+	 * @param dir the direction moved (0 down-left, 1 down-right, 2 up-left, 3 up-right)
+	 * @param king true if kings are moving
+	 * @return the new number of moves in the buffer
+	 */
+	private int addSteps(long[] moves, int n, int targets, int dir, boolean king) {
+		for (; targets != 0; targets &= targets - 1) {
+			int to = Integer.numberOfTrailingZeros(targets);
+			int fromBit = Squares.NEIGHBOR[Squares.index(Squares.opposite(dir), to)];
+			boolean promotes = !king && ((1 << to) & (blackToMove ? BLACK_KING_ROW : RED_KING_ROW)) != 0;
+			moves[n++] = Move.encode(Integer.numberOfTrailingZeros(fromBit), to, 0, 0, king, promotes);
+		}
+		return n;
+	}
+
+	/**
+	 * Follows every jump sequence from a square and adds the complete ones. A checker that
+	 * is crowned by a jump ends its move there
+	 * @param moves the move buffer
+	 * @param n the number of moves already in the buffer
+	 * @param from the square the move started on
+	 * @param sq the square the checker is on now
+	 * @param captured the squares captured so far
+	 * @param empty the empty squares (the origin square included)
+	 * @param king true if the moving checker is a king
+	 * @return the new number of moves in the buffer
+	 */
+	private int addJumps(long[] moves, int n, int from, int sq, int captured, int empty, boolean king) {
+		int opp = (blackToMove ? red : black) & ~captured;
+		boolean jumped = false;
+		//Black men jump down the board (directions 0 and 1), red men up (2 and 3), kings both ways
+		int first = king || blackToMove ? 0 : 2, last = king || !blackToMove ? 4 : 2;
+		for (int dir = first; dir < last; dir++) {
+			int mid = Squares.NEIGHBOR[Squares.index(dir, sq)] & opp;
+			if (mid == 0) continue;
+			int land = Squares.JUMP[Squares.index(dir, sq)] & empty;
+			if (land == 0) continue;
+			jumped = true;
+			int to = Integer.numberOfTrailingZeros(land);
+			boolean promotes = !king && (land & (blackToMove ? BLACK_KING_ROW : RED_KING_ROW)) != 0;
+			if (promotes) n = addCapture(moves, n, from, to, captured | mid, king, true);
+			else n = addJumps(moves, n, from, to, captured | mid, empty, king);
+		}
+		if (!jumped && captured != 0) n = addCapture(moves, n, from, sq, captured, king, false);
+		return n;
+	}
+
+	/**
+	 * Adds a complete capture move unless the same move is already in the buffer (a king can
+	 * reach the same result along different paths)
+	 */
+	private int addCapture(long[] moves, int n, int from, int to, int captured, boolean king, boolean promotes) {
+		long move = Move.encode(from, to, captured, captured & kings, king, promotes);
+		for (int i = 0; i < n; i++)
+			if (moves[i] == move) return n;
+		moves[n] = move;
+		return n + 1;
+	}
+
+	/**
+	 * Moves every checker of a bitboard one step in a direction
+	 * @param b the bitboard
+	 * @param dir 0 down-left, 1 down-right, 2 up-left, 3 up-right
+	 * @return the moved bitboard
+	 */
+	static int step(int b, int dir) {
+		switch (dir) {
+		case 0: return downLeft(b);
+		case 1: return downRight(b);
+		case 2: return upLeft(b);
+		default: return upRight(b);
+		}
+	}
+
+	/**
+	 * Plays a move generated for this position
+	 * @param move the packed move
+	 */
+	public void makeMove(long move) {
+		hash ^= hashChange(move, blackToMove);
+		int fromTo = (1 << Move.from(move)) ^ (1 << Move.to(move)), captured = Move.captured(move);
+		if (blackToMove) { black ^= fromTo; red &= ~captured; }
+		else { red ^= fromTo; black &= ~captured; }
+		kings &= ~captured;
+		if (Move.isKing(move)) kings ^= fromTo;
+		else if (Move.promotes(move)) kings |= 1 << Move.to(move);
+		blackToMove = !blackToMove;
+	}
+
+	/**
+	 * Takes back the last move played with makeMove
+	 * @param move the packed move to take back
+	 */
+	public void unmakeMove(long move) {
+		blackToMove = !blackToMove;
+		hash ^= hashChange(move, blackToMove);
+		int fromTo = (1 << Move.from(move)) ^ (1 << Move.to(move)), captured = Move.captured(move);
+		if (Move.isKing(move)) kings ^= fromTo;
+		else if (Move.promotes(move)) kings &= ~(1 << Move.to(move));
+		kings |= Move.capturedKings(move);
+		if (blackToMove) { black ^= fromTo; red |= captured; }
+		else { red ^= fromTo; black |= captured; }
+	}
+
+	/**
+	 * Gets the hash keys changed by a move, which are the same for making and unmaking it
+	 * @param move the packed move
+	 * @param black true if black makes the move
+	 * @return the XOR of the changed keys
+	 */
+	private static long hashChange(long move, boolean black) {
+		boolean king = Move.isKing(move);
+		long change = Zobrist.RED_TO_MOVE ^ Zobrist.key(Zobrist.type(black, king), Move.from(move))
+				^ Zobrist.key(Zobrist.type(black, king || Move.promotes(move)), Move.to(move));
+		int capturedKings = Move.capturedKings(move);
+		for (int c = Move.captured(move); c != 0; c &= c - 1) {
+			int sq = Integer.numberOfTrailingZeros(c);
+			change ^= Zobrist.key(Zobrist.type(!black, (capturedKings & (1 << sq)) != 0), sq);
+		}
+		return change;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (!(o instanceof Position)) return false;
+		Position p = (Position) o;
+		return black == p.black && red == p.red && kings == p.kings && blackToMove == p.blackToMove;
+	}
+
+	@Override
+	public int hashCode() {
+		return (int) (hash ^ (hash >>> 32));
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 8; i++) {
+			for (int j = 0; j < 8; j++)
+				sb.append((i + j) % 2 == 0 ? ' ' : get(i, j) == 'e' ? '.' : get(i, j));
+			sb.append('\n');
+		}
+		return sb.append(blackToMove ? "[Black turn]" : "[Red turn]").toString();
+	}
+}
@@ -0,0 +1,289 @@
+import java.util.function.BooleanSupplier;
+
+/**
+ * A class that finds the best move for the computer player with a negamax alpha-beta
+ * search, iterative deepening, a principal variation and a transposition table. Every buffer
+ * is allocated when the Search object is built, so the search itself doesn't create garbage
+ */
+public class Search {
+
+	//Constants
+	public static final int MAX_PLY = 64, WIN = 100000, INFINITE = 1000000;
+	private static final int CHECK_INTERVAL = 1023;
+
+	//Fields
+	private final Evaluator evaluator;
+	private final TranspositionTable table;
+	private final Position pos = new Position();
+	private final long[][] moves = new long[MAX_PLY + 1][Position.MAX_MOVES];
+	private final long[][] pv = new long[MAX_PLY + 1][MAX_PLY + 1];
+	private final int[] pvLength = new int[MAX_PLY + 1];
+	private long[] rootPv = new long[MAX_PLY];
+	private int rootPvLength, score, depth, helper;
+	private long nodes, deadline;
+	private volatile boolean stopped;
+	private BooleanSupplier abort;
+
+	/**
+	 * Constructs a Search object with the default evaluation
+	 */
+	public Search() {
+		this(new Evaluator(), new TranspositionTable(16));
+	}
+
+	/**
+	 * Constructs a Search object
+	 * @param evaluator the evaluation used at the leaves
+	 * @param table the transposition table
+	 */
+	public Search(Evaluator evaluator, TranspositionTable table) {
+		this.evaluator = evaluator;
+		this.table = table;
+	}
+
+	/**
+	 * Searches a position with iterative deepening until the time runs out or the maximum
+	 * depth is reached, and returns the best move of the deepest finished iteration
+	 * @param p the position to search (not changed)
+	 * @param millis the time budget in milliseconds (Long.MAX_VALUE for none)
+	 * @param maxDepth the deepest iteration to run
+	 * @return the best move, or 0 if the side to move has no moves
+	 */
+	public long search(Position p, long millis, int maxDepth) {
+		pos.copyFrom(p);
+		nodes = 0; depth = 0; score = 0; rootPvLength = 0;
+		stopped = false;
+		if (helper == 0) table.newSearch();
+		deadline = millis > Long.MAX_VALUE / 2000000L ? Long.MAX_VALUE : System.nanoTime() + millis * 1000000L;
+		long[] rootMoves = moves[0];
+		int n = pos.generateMoves(rootMoves);
+		if (n == 0) return 0;
+		rootPv[0] = rootMoves[0];
+		if (n == 1) { rootPvLength = 1; return rootMoves[0]; }
+		//Helper threads start on different depths and root moves so they fill the shared table
+		//with different parts of the tree
+		if (helper > 0) rotate(rootMoves, n, helper % n);
+		for (int d = 1 + (helper & 1); d <= Math.min(maxDepth, MAX_PLY); d++) {
+			int value = negamax(d, 0, -INFINITE, INFINITE);
+			if (stopped) break;
+			score = value; depth = d;
+			rootPvLength = pvLength[0];
+			System.arraycopy(pv[0], 0, rootPv, 0, rootPvLength);
+			if (Math.abs(value) > WIN - MAX_PLY) break;
+		}
+		return rootPv[0];
+	}
+
+	/**
+	 * Searches a position with a time budget only
+	 * @param p the position to search
+	 * @param millis the time budget in milliseconds
+	 * @return the best move, or 0 if the side to move has no moves
+	 */
+	public long search(Position p, long millis) {
+		return search(p, millis, MAX_PLY);
+	}
+
+	/**
+	 * Rotates the first moves of a list to its end
+	 * @param list the moves
+	 * @param n the number of moves
+	 * @param by the number of moves to rotate
+	 */
+	private static void rotate(long[] list, int n, int by) {
+		for (int r = 0; r < by; r++) {
+			long first = list[0];
+			System.arraycopy(list, 1, list, 0, n - 1);
+			list[n - 1] = first;
+		}
+	}
+
+	/**
+	 * Sets the helper number of the search when several threads search the same position
+	 * (0 for the main search, which also starts a new search age in the table)
+	 * @param helper the helper number
+	 */
+	public void setHelper(int helper) {
+		this.helper = helper;
+	}
+
+	/**
+	 * The negamax alpha-beta search
+	 * @param depth the remaining depth
+	 * @param ply the distance from the root
+	 * @param alpha the lower bound
+	 * @param beta the upper bound
+	 * @return the score for the side to move
+	 */
+	private int negamax(int depth, int ply, int alpha, int beta) {
+		pvLength[ply] = ply;
+		if ((++nodes & CHECK_INTERVAL) == 0 && (System.nanoTime() > deadline || (abort != null && abort.getAsBoolean())))
+			stopped = true;
+		if (stopped) return 0;
+		long[] list = moves[ply];
+		int n;
+		boolean quiescence = depth <= 0 || ply >= MAX_PLY;
+		if (quiescence) {
+			//Captures are forced, so keep searching them past the horizon
+			n = ply < MAX_PLY ? pos.generateCaptures(list) : 0;
+			if (n == 0) return evaluator.evaluate(pos);
+		}
+		else {
+			long entry = table.probe(pos.getHash());
+			int tableMove = 0;
+			if (entry != 0) {
+				tableMove = TranspositionTable.move(entry);
+				if (ply > 0 && TranspositionTable.depth(entry) >= depth) {
+					int value = fromTable(TranspositionTable.score(entry), ply);
+					int bound = TranspositionTable.bound(entry);
+					if (bound == TranspositionTable.EXACT || (bound == TranspositionTable.LOWER && value >= beta)
+							|| (bound == TranspositionTable.UPPER && value <= alpha))
+						return value;
+				}
+			}
+			n = pos.generateMoves(list);
+			if (n == 0) return -WIN + ply;
+			orderMoves(list, n, ply, tableMove);
+		}
+		int alphaStart = alpha;
+		long best = 0;
+		for (int i = 0; i < n; i++) {
+			long move = list[i];
+			pos.makeMove(move);
+			int value = -negamax(depth - 1, ply + 1, -beta, -alpha);
+			pos.unmakeMove(move);
+			if (stopped) return 0;
+			if (value > alpha) {
+				alpha = value;
+				best = move;
+				pv[ply][ply] = move;
+				System.arraycopy(pv[ply + 1], ply + 1, pv[ply], ply + 1, pvLength[ply + 1] - ply - 1);
+				pvLength[ply] = Math.max(pvLength[ply + 1], ply + 1);
+				if (alpha >= beta) break;
+			}
+		}
+		if (!quiescence) {
+			int bound = alpha >= beta ? TranspositionTable.LOWER
+					: alpha > alphaStart ? TranspositionTable.EXACT : TranspositionTable.UPPER;
+			table.store(pos.getHash(), best == 0 ? 0 : Move.compact(best), toTable(alpha, ply), depth, bound);
+		}
+		return alpha;
+	}
+
+	/**
+	 * Moves the transposition table move, or else the principal variation move of the
+	 * previous iteration, to the front
+	 * @param list the moves
+	 * @param n the number of moves
+	 * @param ply the distance from the root
+	 * @param tableMove the compact move from the transposition table, 0 if none
+	 */
+	private void orderMoves(long[] list, int n, int ply, int tableMove) {
+		if (tableMove == 0 && ply >= rootPvLength) return;
+		long pvMove = ply < rootPvLength ? rootPv[ply] : 0;
+		for (int i = 0; i < n; i++) {
+			if (tableMove != 0 ? Move.compact(list[i]) == tableMove : list[i] == pvMove) {
+				long best = list[i];
+				list[i] = list[0];
+				list[0] = best;
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Converts a win or loss score from distance-to-root to distance-to-node for storing
+	 * @param value the score
+	 * @param ply the distance from the root
+	 * @return the score to store
+	 */
+	private static int toTable(int value, int ply) {
+		if (value > WIN - MAX_PLY) return value + ply;
+		if (value < -WIN + MAX_PLY) return value - ply;
+		return value;
+	}
+
+	/**
+	 * Converts a stored win or loss score back to distance-to-root
+	 * @param value the stored score
+	 * @param ply the distance from the root
+	 * @return the score
+	 */
+	private static int fromTable(int value, int ply) {
+		if (value > WIN - MAX_PLY) return value - ply;
+		if (value < -WIN + MAX_PLY) return value + ply;
+		return value;
+	}
+
+	/**
+	 * Gets the transposition table used by the search
+	 * @return the transposition table
+	 */
+	public TranspositionTable getTable() {
+		return table;
+	}
+
+	/**
+	 * Stops a running search as soon as possible
+	 */
+	public void stop() {
+		stopped = true;
+	}
+
+	/**
+	 * Sets a condition that stops the search when it becomes true. Unlike stop, which only
+	 * stops a search that is running, the condition is checked by every search, so it can't
+	 * be missed by a search that is just starting
+	 * @param abort the condition, checked every 1024 nodes, or null for none
+	 */
+	public void setAbort(BooleanSupplier abort) {
+		this.abort = abort;
+	}
+
+	/**
+	 * Gets the score of the deepest finished iteration
+	 * @return the score for the side to move at the root
+	 */
+	public int getScore() {
+		return score;
+	}
+
+	/**
+	 * Gets the depth of the deepest finished iteration
+	 * @return the depth
+	 */
+	public int getDepth() {
+		return depth;
+	}
+
+	/**
+	 * Gets the number of nodes visited by the last search
+	 * @return the node count
+	 */
+	public long getNodes() {
+		return nodes;
+	}
+
+	/**
+	 * Gets the principal variation of the deepest finished iteration
+	 * @return the moves of the principal variation
+	 */
+	public long[] getPrincipalVariation() {
+		long[] line = new long[rootPvLength];
+		System.arraycopy(rootPv, 0, line, 0, rootPvLength);
+		return line;
+	}
+
+	/**
+	 * Formats the principal variation in the standard numeric notation
+	 * @return the principal variation as text
+	 */
+	public String getPrincipalVariationText() {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < rootPvLength; i++) {
+			if (i > 0) sb.append(' ');
+			sb.append(Move.toString(rootPv[i]));
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,226 @@
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A headless batch mode that plays complete games between two players on every core and
+ * prints the result of every game and the totals. Each game starts with a few random moves
+ * (seeded by the game number) so engine games differ, and every position reached can be
+ * written out with the final result as training data ("FEN;result" lines, result 1 for a
+ * black win, 0.5 for a draw and 0 for a red win). The moves of every game can also be
+ * written out as game records for OpeningBook, one game per line
+ *
+ * Usage: java SelfPlay [-games N] [-threads T] [-black spec] [-red spec] [-random-plies K]
+ *                      [-seed S] [-positions file] [-records file] [-quiet]
+ * where a player spec is any spec of Player.create, e.g. random, search:millis, depth:plies or smp:millis:threads
+ */
+public class SelfPlay {
+
+	//Fields
+	private final int games, threads, randomPlies;
+	private final String blackSpec, redSpec;
+	private final long seed;
+	private final boolean quiet;
+	private final Writer positionsOut, recordsOut;
+	private final int[] results, lengths;
+	private final AtomicLong totalPlies = new AtomicLong();
+
+	/**
+	 * Constructs a self-play run
+	 * @param games the number of games
+	 * @param threads the number of threads
+	 * @param blackSpec the black player spec
+	 * @param redSpec the red player spec
+	 * @param randomPlies the number of random moves at the start of every game
+	 * @param seed the random seed
+	 * @param quiet true to print only the totals
+	 * @param positionsOut where to write the training positions, null for nowhere
+	 * @param recordsOut where to write the game records, null for nowhere
+	 */
+	public SelfPlay(int games, int threads, String blackSpec, String redSpec, int randomPlies, long seed,
+			boolean quiet, Writer positionsOut, Writer recordsOut) {
+		this.games = games;
+		this.threads = threads;
+		this.blackSpec = blackSpec;
+		this.redSpec = redSpec;
+		this.randomPlies = randomPlies;
+		this.seed = seed;
+		this.quiet = quiet;
+		this.positionsOut = positionsOut;
+		this.recordsOut = recordsOut;
+		results = new int[games];
+		lengths = new int[games];
+	}
+
+	/**
+	 * Plays one game
+	 * @param game the game number
+	 * @param black the black player
+	 * @param red the red player
+	 * @return the finished game
+	 */
+	GameState play(int game, Player black, Player red) {
+		GameState g = new GameState();
+		Random random = new Random(seed + game);
+		long[] moves = new long[Position.MAX_MOVES];
+		while (g.getResult() == GameState.ONGOING) {
+			Position p = g.getPosition();
+			long move;
+			if (g.getPlies() < randomPlies) move = moves[random.nextInt(g.legalMoves(moves))];
+			else move = (p.isBlackToMove() ? black : red).chooseMove(p);
+			g.play(move);
+		}
+		return g;
+	}
+
+	/**
+	 * Plays every game on the thread pool and prints the results. The players of a thread are
+	 * reseeded from the game number before every game, so a seed gives the same games whatever
+	 * thread plays them. Players that search on several threads get fewer pool threads, so the
+	 * searches don't fight over the cores, and every player is closed at the end
+	 * @throws InterruptedException if interrupted while waiting for the games
+	 * @throws ExecutionException if a game failed; the games not started yet are cancelled
+	 */
+	public void run() throws InterruptedException, ExecutionException {
+		final int poolThreads = Player.poolThreads(threads, blackSpec, redSpec);
+		if (poolThreads < threads) System.out.println("using " + poolThreads + " threads, so the search threads of the players don't outnumber the cores");
+		final List<Player> created = Collections.synchronizedList(new ArrayList<Player>());
+		final ThreadLocal<Player[]> players = new ThreadLocal<Player[]>() {
+			protected Player[] initialValue() {
+				Player[] pair = { Player.create(blackSpec, seed), Player.create(redSpec, ~seed) };
+				Collections.addAll(created, pair);
+				return pair;
+			}
+		};
+		ExecutorService pool = Executors.newFixedThreadPool(poolThreads);
+		List<Future<?>> futures = new ArrayList<Future<?>>();
+		long start = System.nanoTime();
+		for (int i = 0; i < games; i++) {
+			final int game = i;
+			futures.add(pool.submit(new Runnable() {
+				public void run() {
+					Player[] pair = players.get();
+					pair[0].newGame(seed + game);
+					pair[1].newGame(~(seed + game));
+					GameState g = play(game, pair[0], pair[1]);
+					results[game] = g.getResult();
+					lengths[game] = g.getPlies();
+					totalPlies.addAndGet(g.getPlies());
+					if (!quiet) System.out.println("game " + game + ": " + GameState.resultText(g.getResult())
+							+ " in " + g.getPlies() + " plies");
+					if (positionsOut != null) writePositions(g);
+					if (recordsOut != null) writeRecord(g);
+				}
+			}));
+		}
+		pool.shutdown();
+		try {
+			for (Future<?> f : futures) f.get();
+		}
+		finally {
+			pool.shutdownNow();
+			synchronized (created) {
+				for (Player player : created) player.close();
+			}
+		}
+		printTotals((System.nanoTime() - start) / 1e9, poolThreads);
+	}
+
+	/**
+	 * Writes every position of a finished game with the result
+	 * @param g the finished game
+	 */
+	private void writePositions(GameState g) {
+		String result = g.getResult() == GameState.BLACK_WIN ? "1" : g.getResult() == GameState.RED_WIN ? "0" : "0.5";
+		StringBuilder sb = new StringBuilder();
+		Position p = g.getStart();
+		for (int ply = 0; ply < g.getPlies(); ply++) {
+			if (ply >= randomPlies) sb.append(p.toFen()).append(';').append(result).append('\n');
+			p.makeMove(g.getMove(ply));
+		}
+		write(positionsOut, sb.toString());
+	}
+
+	/**
+	 * Writes the moves of a finished game and the result on one line
+	 * @param g the finished game
+	 */
+	private void writeRecord(GameState g) {
+		StringBuilder sb = new StringBuilder();
+		for (int ply = 0; ply < g.getPlies(); ply++) sb.append(Move.toString(g.getMove(ply))).append(' ');
+		sb.append(g.getResult() == GameState.BLACK_WIN ? "1-0" : g.getResult() == GameState.RED_WIN ? "0-1" : "1/2-1/2");
+		write(recordsOut, sb.append('\n').toString());
+	}
+
+	/**
+	 * Writes text to an output shared by the threads
+	 * @param out the output
+	 * @param text the text
+	 */
+	private static void write(Writer out, String text) {
+		synchronized (out) {
+			try {
+				out.write(text);
+			}
+			catch (IOException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+	}
+
+	/**
+	 * Prints the win rates, the average game length and the speed
+	 * @param seconds the time taken by all the games
+	 * @param poolThreads the number of threads that played the games
+	 */
+	private void printTotals(double seconds, int poolThreads) {
+		int black = 0, red = 0, draws = 0;
+		for (int r : results) {
+			if (r == GameState.BLACK_WIN) black++;
+			else if (r == GameState.RED_WIN) red++;
+			else draws++;
+		}
+		System.out.printf("games: %d (%s vs %s, %d threads)%n", games, blackSpec, redSpec, poolThreads);
+		System.out.printf("black wins: %d (%.1f%%), red wins: %d (%.1f%%), draws: %d (%.1f%%)%n",
+				black, 100.0 * black / games, red, 100.0 * red / games, draws, 100.0 * draws / games);
+		System.out.printf("average length: %.1f plies%n", (double) totalPlies.get() / games);
+		System.out.printf("time: %.2f s, %.1f games/s%n", seconds, games / seconds);
+	}
+
+	//Main method
+	public static void main(String[] args) throws IOException, InterruptedException, ExecutionException {
+		int games = 1000, threads = Runtime.getRuntime().availableProcessors(), randomPlies = 4;
+		String black = "random", red = "random", positions = null, records = null;
+		long seed = 20200430L;
+		boolean quiet = false;
+		for (int i = 0; i < args.length; i++) {
+			switch (args[i]) {
+			case "-games": games = Integer.parseInt(args[++i]); break;
+			case "-threads": threads = Integer.parseInt(args[++i]); break;
+			case "-black": black = args[++i]; break;
+			case "-red": red = args[++i]; break;
+			case "-random-plies": randomPlies = Integer.parseInt(args[++i]); break;
+			case "-seed": seed = Long.parseLong(args[++i]); break;
+			case "-positions": positions = args[++i]; break;
+			case "-records": records = args[++i]; break;
+			case "-quiet": quiet = true; break;
+			default: throw new IllegalArgumentException("Unknown option: " + args[i]);
+			}
+		}
+		Writer out = positions == null ? null : new BufferedWriter(new FileWriter(positions));
+		Writer recordsOut = records == null ? null : new BufferedWriter(new FileWriter(records));
+		new SelfPlay(games, threads, black, red, randomPlies, seed, quiet, out, recordsOut).run();
+		if (out != null) out.close();
+		if (recordsOut != null) recordsOut.close();
+	}
+}
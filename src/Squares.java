@@ -0,0 +1,46 @@
+/**
+ * A class of static tables of the diagonal neighbors of every square, built once from the
+ * shift steps of Position. Each table is indexed by direction * 32 + square (directions 0
+ * down-left, 1 down-right, 2 up-left, 3 up-right, as in Position.step) and holds a bitboard
+ * of one square, or 0 where the step leaves the board, so following a diagonal one square
+ * at a time is a lookup with no bounds checks
+ */
+public class Squares {
+
+	//Constants
+	public static final int DIRECTIONS = 4;
+
+	/** The square one step away */
+	static final int[] NEIGHBOR = new int[DIRECTIONS * Position.SQUARES];
+
+	/** The square two steps away, where a jump over the neighbor lands */
+	static final int[] JUMP = new int[DIRECTIONS * Position.SQUARES];
+
+	static {
+		for (int dir = 0; dir < DIRECTIONS; dir++)
+			for (int sq = 0; sq < Position.SQUARES; sq++) {
+				int neighbor = Position.step(1 << sq, dir);
+				NEIGHBOR[index(dir, sq)] = neighbor;
+				JUMP[index(dir, sq)] = Position.step(neighbor, dir);
+			}
+	}
+
+	/**
+	 * Gets the table index of a square and direction
+	 * @param dir the direction
+	 * @param sq the square
+	 * @return the index
+	 */
+	static int index(int dir, int sq) {
+		return dir << 5 | sq;
+	}
+
+	/**
+	 * Gets the direction that goes back the way another one came
+	 * @param dir the direction
+	 * @return the opposite direction
+	 */
+	static int opposite(int dir) {
+		return 3 - dir;
+	}
+}
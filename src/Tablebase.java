@@ -0,0 +1,312 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A class that probes endgame databases built by TablebaseGenerator. The databases are
+ * read through memory-mapped files, so every process probing the same directory shares one
+ * copy in the OS page cache and nothing is loaded until it is needed.
+ *
+ * Positions are stored with black to move; a position with red to move is turned around
+ * (rotated 180 degrees with the colors swapped) first. Each slice of the database holds
+ * every position with a given number of black men, black kings, red men and red kings in one
+ * file, one byte per position: 0 for a draw, d + 1 when the side to move wins (d odd) or
+ * loses (d even) in d plies with best play, and INVALID for indexes that aren't positions
+ */
+public class Tablebase {
+
+	//Results
+	public static final int UNKNOWN = -1, LOSS = 0, DRAW = 1, WIN = 2;
+
+	//Constants
+	public static final int INVALID = 0xFF, HEADER = 16, MAX_PIECES = 8;
+	static final byte[] MAGIC = { 'C', 'K', 'D', 'B' };
+	private static final int MEN_SQUARES = 28;
+	static final long[][] BINOMIAL = new long[33][33];
+
+	static {
+		for (int n = 0; n <= 32; n++) {
+			BINOMIAL[n][0] = 1;
+			for (int k = 1; k <= n; k++) BINOMIAL[n][k] = BINOMIAL[n - 1][k - 1] + BINOMIAL[n - 1][k];
+		}
+	}
+
+	//Fields
+	private final File directory;
+	private final ConcurrentHashMap<Integer, ByteBuffer> slices = new ConcurrentHashMap<Integer, ByteBuffer>();
+	private final long[] moves = new long[Position.MAX_MOVES];
+
+	/**
+	 * Constructs a probe over a directory of database files
+	 * @param directory the directory
+	 */
+	public Tablebase(File directory) {
+		this.directory = directory;
+	}
+
+	/**
+	 * Gets the key of a slice
+	 * @param blackMen the number of black men
+	 * @param blackKings the number of black kings
+	 * @param redMen the number of red men
+	 * @param redKings the number of red kings
+	 * @return the slice key
+	 */
+	static int sliceKey(int blackMen, int blackKings, int redMen, int redKings) {
+		return blackMen | blackKings << 4 | redMen << 8 | redKings << 12;
+	}
+
+	/**
+	 * Gets the file of a slice
+	 * @param directory the database directory
+	 * @param key the slice key
+	 * @return the file
+	 */
+	static File sliceFile(File directory, int key) {
+		return new File(directory, "" + (key & 15) + (key >> 4 & 15) + (key >> 8 & 15) + (key >> 12 & 15) + ".cdb");
+	}
+
+	/**
+	 * Gets the number of positions in a slice
+	 * @param key the slice key
+	 * @return the number of indexes
+	 */
+	static long sliceSize(int key) {
+		int bm = key & 15, bk = key >> 4 & 15, rm = key >> 8 & 15, rk = key >> 12 & 15;
+		if (bm > MEN_SQUARES || rm > MEN_SQUARES || bm + rm + bk + rk > 32) return 0;
+		return BINOMIAL[MEN_SQUARES][bm] * BINOMIAL[MEN_SQUARES][rm] * BINOMIAL[32 - bm - rm][bk]
+				* BINOMIAL[32 - bm - rm - bk][rk];
+	}
+
+	/**
+	 * Gets the index of a position with black to move in its slice
+	 * @param black the black checkers
+	 * @param red the red checkers
+	 * @param kings the kings
+	 * @return the index, or -1 if men stand on their crowning row
+	 */
+	static long index(int black, int red, int kings) {
+		int blackMen = black & ~kings, redMen = red & ~kings;
+		if ((blackMen & 0xF0000000) != 0 || (redMen & 0x0000000F) != 0) return -1;
+		int bm = Integer.bitCount(blackMen), rm = Integer.bitCount(redMen);
+		int bk = Integer.bitCount(black & kings), rk = Integer.bitCount(red & kings);
+		int free = ~(blackMen | redMen);
+		long index = rank(blackMen);
+		index = index * BINOMIAL[MEN_SQUARES][rm] + rank(redMen >>> 4);
+		index = index * BINOMIAL[32 - bm - rm][bk] + rank(compress(black & kings, free));
+		index = index * BINOMIAL[32 - bm - rm - bk][rk] + rank(compress(red & kings, free & ~black));
+		return index;
+	}
+
+	/**
+	 * Turns an index of a slice back into a position with black to move
+	 * @param key the slice key
+	 * @param index the index
+	 * @param out receives black, red and kings
+	 * @return false if the index isn't a position (black and red men overlap)
+	 */
+	static boolean position(int key, long index, int[] out) {
+		int bm = key & 15, bk = key >> 4 & 15, rm = key >> 8 & 15, rk = key >> 12 & 15;
+		long bkCount = BINOMIAL[32 - bm - rm][bk], rkCount = BINOMIAL[32 - bm - rm - bk][rk];
+		long rkRank = index % rkCount; index /= rkCount;
+		long bkRank = index % bkCount; index /= bkCount;
+		long rmCount = BINOMIAL[MEN_SQUARES][rm];
+		long rmRank = index % rmCount; index /= rmCount;
+		int blackMen = unrank(index, bm), redMen = unrank(rmRank, rm) << 4;
+		if ((blackMen & redMen) != 0) return false;
+		int free = ~(blackMen | redMen);
+		int blackKings = expand(unrank(bkRank, bk), free);
+		int redKings = expand(unrank(rkRank, rk), free & ~blackKings);
+		out[0] = blackMen | blackKings;
+		out[1] = redMen | redKings;
+		out[2] = blackKings | redKings;
+		return true;
+	}
+
+	/**
+	 * Ranks a set of squares among all sets of the same size (combinatorial number system)
+	 * @param set the squares
+	 * @return the rank
+	 */
+	static long rank(int set) {
+		long rank = 0;
+		int i = 1;
+		for (int s = set; s != 0; s &= s - 1, i++)
+			rank += BINOMIAL[Integer.numberOfTrailingZeros(s)][i];
+		return rank;
+	}
+
+	/**
+	 * Turns a rank back into a set of squares
+	 * @param rank the rank
+	 * @param k the number of squares in the set
+	 * @return the squares
+	 */
+	static int unrank(long rank, int k) {
+		int set = 0, c = 31;
+		for (int i = k; i >= 1; i--) {
+			while (BINOMIAL[c][i] > rank) c--;
+			set |= 1 << c;
+			rank -= BINOMIAL[c][i];
+			c--;
+		}
+		return set;
+	}
+
+	/**
+	 * Packs the squares of a set that are in a mask next to each other, in mask order
+	 * @param set the squares
+	 * @param mask the squares that count
+	 * @return the packed set
+	 */
+	static int compress(int set, int mask) {
+		int packed = 0, j = 0;
+		for (int m = mask; m != 0; m &= m - 1, j++)
+			if ((set & m & -m) != 0) packed |= 1 << j;
+		return packed;
+	}
+
+	/**
+	 * Reverses compress
+	 * @param packed the packed set
+	 * @param mask the squares that count
+	 * @return the squares
+	 */
+	static int expand(int packed, int mask) {
+		int set = 0;
+		for (int m = mask; packed != 0 && m != 0; m &= m - 1, packed >>>= 1)
+			if ((packed & 1) != 0) set |= m & -m;
+		return set;
+	}
+
+	/**
+	 * Gets the raw database value of a position with black to move
+	 * @param black the black checkers
+	 * @param red the red checkers
+	 * @param kings the kings
+	 * @return the byte value (0 draw, d + 1 win or loss in d plies), or UNKNOWN if not covered
+	 */
+	int rawValue(int black, int red, int kings) {
+		if (black == 0) return 1;
+		if (red == 0) return UNKNOWN;
+		int key = sliceKey(Integer.bitCount(black & ~kings), Integer.bitCount(black & kings),
+				Integer.bitCount(red & ~kings), Integer.bitCount(red & kings));
+		ByteBuffer slice = slice(key);
+		long index = index(black, red, kings);
+		if (slice == null || index < 0) return UNKNOWN;
+		int value = slice.get(HEADER + (int) index) & 0xFF;
+		return value == INVALID ? UNKNOWN : value;
+	}
+
+	/**
+	 * Gets the raw database value of a position
+	 * @param p the position
+	 * @return the byte value (0 draw, d + 1 win or loss in d plies), or UNKNOWN if not covered
+	 */
+	public int probeRaw(Position p) {
+		if (p.isBlackToMove()) return rawValue(p.getBlack(), p.getRed(), p.getKings());
+		return rawValue(Integer.reverse(p.getRed()), Integer.reverse(p.getBlack()), Integer.reverse(p.getKings()));
+	}
+
+	/**
+	 * Looks up the result of a position for the side to move
+	 * @param p the position
+	 * @return WIN, LOSS, DRAW, or UNKNOWN if the position isn't in the databases
+	 */
+	public int probe(Position p) {
+		return result(probeRaw(p));
+	}
+
+	/**
+	 * Gets the result of a raw database value
+	 * @param raw the raw value
+	 * @return WIN, LOSS, DRAW or UNKNOWN
+	 */
+	public static int result(int raw) {
+		if (raw == UNKNOWN) return UNKNOWN;
+		if (raw == 0) return DRAW;
+		return (raw - 1) % 2 == 1 ? WIN : LOSS;
+	}
+
+	/**
+	 * Gets the number of plies to the end of the game of a raw database value
+	 * @param raw the raw value
+	 * @return the distance, or -1 for draws and unknown positions
+	 */
+	public static int distance(int raw) {
+		return raw <= 0 ? -1 : raw - 1;
+	}
+
+	/**
+	 * Finds the perfect move of a position: the fastest win, a move that keeps the draw, or
+	 * the slowest loss. Not thread-safe (one probe object per thread for this method)
+	 * @param p the position
+	 * @return the packed move, or 0 if the position isn't covered or has no moves
+	 */
+	public long bestMove(Position p) {
+		if (probeRaw(p) == UNKNOWN) return 0;
+		int n = p.generateMoves(moves);
+		Position next = new Position(p);
+		long best = 0;
+		int bestScore = Integer.MIN_VALUE;
+		for (int i = 0; i < n; i++) {
+			next.copyFrom(p);
+			next.makeMove(moves[i]);
+			int raw = probeRaw(next), score;
+			if (raw == UNKNOWN) return 0;
+			switch (result(raw)) {
+			case LOSS: score = 1000 - distance(raw); break;
+			case DRAW: score = 0; break;
+			default: score = -1000 + distance(raw);
+			}
+			if (score > bestScore) { bestScore = score; best = moves[i]; }
+		}
+		return best;
+	}
+
+	/**
+	 * Checks if the databases cover a position
+	 * @param p the position
+	 * @return true if the position can be probed
+	 */
+	public boolean covers(Position p) {
+		return probeRaw(p) != UNKNOWN;
+	}
+
+	/**
+	 * Gets the memory-mapped contents of a slice
+	 * @param key the slice key
+	 * @return the slice, or null if there is no file for it
+	 */
+	private ByteBuffer slice(int key) {
+		ByteBuffer slice = slices.get(key);
+		if (slice != null) return slice.capacity() == 0 ? null : slice;
+		slice = map(sliceFile(directory, key), key);
+		slices.putIfAbsent(key, slice);
+		return slice.capacity() == 0 ? null : slice;
+	}
+
+	/**
+	 * Maps a slice file into memory and checks its header
+	 * @param file the file
+	 * @param key the slice key
+	 * @return the mapped file, or an empty buffer if the file is missing or bad
+	 */
+	static ByteBuffer map(File file, int key) {
+		if (!file.isFile()) return ByteBuffer.allocate(0);
+		try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			for (int i = 0; i < MAGIC.length; i++)
+				if (buffer.get(i) != MAGIC[i]) return ByteBuffer.allocate(0);
+			if (buffer.getInt(4) != key || buffer.capacity() != HEADER + sliceSize(key)) return ByteBuffer.allocate(0);
+			return buffer;
+		}
+		catch (IOException e) {
+			return ByteBuffer.allocate(0);
+		}
+	}
+}
@@ -0,0 +1,281 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * A class that builds the endgame databases read by Tablebase with retrograde analysis.
+ * Slices are built from the fewest pieces up, so every capture or crowning leads into a
+ * slice that is already finished. A slice and its color-swapped twin are built together
+ * because quiet moves go back and forth between them.
+ *
+ * A first pass over the group (run on all cores) generates the moves of every position,
+ * looks up the moves that leave the group in the finished slices and counts the moves that
+ * stay in it. Results are then settled in order of distance: when a position is settled as
+ * lost, every position that can move into it (found by taking quiet moves back) is won one
+ * ply later, and when it is settled as won, the positions that move into it have one move
+ * fewer left to try and are lost once every move has been settled as a win. Whatever is
+ * never settled is a draw
+ *
+ * Usage: java TablebaseGenerator [max pieces] [directory]
+ */
+public class TablebaseGenerator {
+
+	//Constants
+	private static final int CHUNK = 1 << 14, MAX_DISTANCE = 253, NO_LOSS = 0xFF;
+
+	/**
+	 * A growable list of ints
+	 */
+	private static class IntList {
+		int[] items = new int[16];
+		int size;
+
+		void add(int item) {
+			if (size == items.length) items = Arrays.copyOf(items, size * 2);
+			items[size++] = item;
+		}
+	}
+
+	//Fields
+	private final File directory;
+	private final Tablebase finished;
+	private final ThreadLocal<long[]> buffers = ThreadLocal.withInitial(() -> new long[Position.MAX_MOVES]);
+
+	/**
+	 * Constructs a generator that writes into a directory
+	 * @param directory the database directory
+	 */
+	public TablebaseGenerator(File directory) {
+		this.directory = directory;
+		this.finished = new Tablebase(directory);
+	}
+
+	/**
+	 * Builds every slice with up to a given number of pieces, skipping slices already on disk
+	 * @param maxPieces the largest number of pieces (at most Tablebase.MAX_PIECES)
+	 * @throws IOException if a slice can't be written
+	 */
+	public void generate(int maxPieces) throws IOException {
+		if (maxPieces < 2 || maxPieces > Tablebase.MAX_PIECES) throw new IllegalArgumentException();
+		directory.mkdirs();
+		for (int pieces = 2; pieces <= maxPieces; pieces++) {
+			//Fewer men first, since crowning a man leads to a slice with one man less
+			for (int men = 0; men <= pieces; men++) {
+				for (int bm = 0; bm <= men; bm++) {
+					int rm = men - bm;
+					for (int bk = 0; bk <= pieces - men; bk++) {
+						int rk = pieces - men - bk;
+						if (bm + bk == 0 || rm + rk == 0) continue;
+						int key = Tablebase.sliceKey(bm, bk, rm, rk), twin = Tablebase.sliceKey(rm, rk, bm, bk);
+						if (twin < key) continue;
+						if (Tablebase.sliceFile(directory, key).isFile() && Tablebase.sliceFile(directory, twin).isFile()) {
+							continue;
+						}
+						generateGroup(key == twin ? new int[] { key } : new int[] { key, twin });
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Builds a slice, or a slice and its twin, and writes them to disk
+	 * @param keys the slice keys
+	 * @throws IOException if a slice can't be written
+	 */
+	private void generateGroup(final int[] keys) throws IOException {
+		long start = System.nanoTime();
+		final byte[][] values = new byte[keys.length][], counts = new byte[keys.length][];
+		final byte[][] crossWins = new byte[keys.length][], pending = new byte[keys.length][];
+		for (int s = 0; s < keys.length; s++) {
+			long size = Tablebase.sliceSize(keys[s]);
+			if (size + Tablebase.HEADER > Integer.MAX_VALUE) throw new IllegalStateException("Slice too large");
+			values[s] = new byte[(int) size];
+			counts[s] = new byte[(int) size];
+			crossWins[s] = new byte[(int) size];
+			pending[s] = new byte[(int) size];
+		}
+
+		//Look at every position once, in parallel
+		for (int s = 0; s < keys.length; s++) {
+			final int slice = s;
+			int chunks = (values[s].length + CHUNK - 1) / CHUNK;
+			IntStream.range(0, chunks).parallel().forEach(chunk ->
+					initChunk(keys[slice], chunk, values[slice], counts[slice], crossWins[slice], pending[slice]));
+		}
+		IntList[][] buckets = new IntList[keys.length][MAX_DISTANCE + 2];
+		for (int s = 0; s < keys.length; s++) {
+			for (int i = 0; i < pending[s].length; i++)
+				if (pending[s][i] != 0) bucket(buckets, s, (pending[s][i] & 0xFF) - 1).add(i);
+			pending[s] = null;
+		}
+
+		//Settle the positions in order of distance
+		int longest = 0;
+		int[] bits = new int[3];
+		Position p = new Position(0, 0, 0, true);
+		for (int level = 0; level <= MAX_DISTANCE; level++) {
+			for (int s = 0; s < keys.length; s++) {
+				IntList list = buckets[s][level];
+				if (list == null) continue;
+				for (int j = 0; j < list.size; j++) {
+					int i = list.items[j];
+					if (values[s][i] != 0) continue;
+					values[s][i] = (byte) (level + 1);
+					longest = level;
+					Tablebase.position(keys[s], i, bits);
+					p.set(Integer.reverse(bits[1]), Integer.reverse(bits[0]), Integer.reverse(bits[2]), false);
+					propagate(keys, values, counts, crossWins, buckets, p, level);
+				}
+				buckets[s][level] = null;
+			}
+		}
+		for (int s = 0; s < keys.length; s++)
+			if (buckets[s][MAX_DISTANCE + 1] != null) throw new IllegalStateException("Distance over " + MAX_DISTANCE);
+
+		for (int s = 0; s < keys.length; s++) write(keys[s], values[s]);
+		System.out.printf("%s: %,d positions, longest %d plies, %.1f s%n", Tablebase.sliceFile(directory, keys[0]).getName()
+				+ (keys.length > 1 ? " + " + Tablebase.sliceFile(directory, keys[1]).getName() : ""),
+				values[0].length + (keys.length > 1 ? values[1].length : 0), longest, (System.nanoTime() - start) / 1e9);
+	}
+
+	/**
+	 * Gets a bucket, creating it if needed
+	 */
+	private static IntList bucket(IntList[][] buckets, int slice, int level) {
+		level = Math.min(level, MAX_DISTANCE + 1);
+		if (buckets[slice][level] == null) buckets[slice][level] = new IntList();
+		return buckets[slice][level];
+	}
+
+	/**
+	 * Looks at every position of a chunk of a slice: marks the indexes that aren't positions,
+	 * counts the moves that stay in the group, and notes the distance at which the moves that
+	 * leave the group settle the position
+	 * @param key the slice key
+	 * @param chunk the chunk number
+	 * @param values the values of the slice
+	 * @param counts receives the number of moves that stay in the group
+	 * @param crossWins receives 1 + the longest win reached by a move that leaves the group,
+	 * or NO_LOSS if such a move reaches a draw or a loss
+	 * @param pending receives 1 + the distance at which the position is settled by moves
+	 * that leave the group, or 0
+	 */
+	private void initChunk(int key, int chunk, byte[] values, byte[] counts, byte[] crossWins, byte[] pending) {
+		long[] moves = buffers.get();
+		int[] bits = new int[3];
+		Position p = new Position(0, 0, 0, true), next = new Position(0, 0, 0, true);
+		int end = Math.min(values.length, (chunk + 1) * CHUNK);
+		for (int i = chunk * CHUNK; i < end; i++) {
+			if (!Tablebase.position(key, i, bits)) {
+				values[i] = (byte) Tablebase.INVALID;
+				continue;
+			}
+			p.set(bits[0], bits[1], bits[2], true);
+			int n = p.generateMoves(moves);
+			if (n == 0) {
+				pending[i] = 1;
+				continue;
+			}
+			int inGroup = 0, shortestLoss = Integer.MAX_VALUE, longestWin = -1;
+			boolean noLoss = false;
+			for (int m = 0; m < n; m++) {
+				if (!Move.isCapture(moves[m]) && !Move.promotes(moves[m])) {
+					inGroup++;
+					continue;
+				}
+				next.copyFrom(p);
+				next.makeMove(moves[m]);
+				int raw = successorValue(next), d = raw - 1;
+				if (raw == 0) noLoss = true;
+				else if (d % 2 == 0) { noLoss = true; shortestLoss = Math.min(shortestLoss, d); }
+				else longestWin = Math.max(longestWin, d);
+			}
+			counts[i] = (byte) inGroup;
+			crossWins[i] = (byte) (noLoss ? NO_LOSS : longestWin + 1);
+			if (shortestLoss != Integer.MAX_VALUE) pending[i] = (byte) Math.min(shortestLoss + 2, NO_LOSS);
+			else if (inGroup == 0 && !noLoss) pending[i] = (byte) Math.min(longestWin + 2, NO_LOSS);
+		}
+	}
+
+	/**
+	 * Takes back every quiet black move that leads to a settled position and updates the
+	 * positions it came from
+	 * @param keys the slice keys of the group
+	 * @param values the values of the group
+	 * @param counts the number of unsettled moves that stay in the group
+	 * @param crossWins the longest win of the moves that leave the group
+	 * @param buckets the positions waiting to be settled, by distance
+	 * @param after the settled position turned around, with red to move
+	 * @param level the distance of the settled position
+	 */
+	private void propagate(int[] keys, byte[][] values, byte[][] counts, byte[][] crossWins, IntList[][] buckets,
+			Position after, int level) {
+		int black = after.getBlack(), red = after.getRed(), kings = after.getKings(), empty = after.getEmpty();
+		int key = Tablebase.sliceKey(Integer.bitCount(black & ~kings), Integer.bitCount(black & kings),
+				Integer.bitCount(red & ~kings), Integer.bitCount(red & kings));
+		int s = keys[0] == key ? 0 : 1;
+		Position before = new Position(0, 0, 0, true);
+		for (int b = black; b != 0; b &= b - 1) {
+			int to = b & -b;
+			boolean king = (kings & to) != 0;
+			int origins = Position.upLeft(to) | Position.upRight(to);
+			if (king) origins |= Position.downLeft(to) | Position.downRight(to);
+			for (origins &= empty; origins != 0; origins &= origins - 1) {
+				int from = origins & -origins;
+				before.set(black ^ to ^ from, red, king ? kings ^ to ^ from : kings, true);
+				//The quiet move was only legal if there was nothing to capture
+				if (before.capturers(true) != 0) continue;
+				int i = (int) Tablebase.index(before.getBlack(), before.getRed(), before.getKings());
+				if (values[s][i] != 0) continue;
+				if (level % 2 == 0) bucket(buckets, s, level + 1).add(i);
+				else if (--counts[s][i] == 0 && (crossWins[s][i] & 0xFF) != NO_LOSS)
+					bucket(buckets, s, Math.max(level, (crossWins[s][i] & 0xFF) - 1) + 1).add(i);
+			}
+		}
+	}
+
+	/**
+	 * Gets the value of a position reached by a black move that leaves the group
+	 * @param next the position after the move (red to move)
+	 * @return the raw value for red
+	 */
+	private int successorValue(Position next) {
+		int value = finished.rawValue(Integer.reverse(next.getRed()), Integer.reverse(next.getBlack()),
+				Integer.reverse(next.getKings()));
+		if (value == Tablebase.UNKNOWN) throw new IllegalStateException("Missing slice for " + next.toFen());
+		return value;
+	}
+
+	/**
+	 * Writes a finished slice
+	 * @param key the slice key
+	 * @param values the values
+	 * @throws IOException if the file can't be written
+	 */
+	private void write(int key, byte[] values) throws IOException {
+		File file = Tablebase.sliceFile(directory, key), temp = new File(directory, file.getName() + ".tmp");
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp), 1 << 16))) {
+			out.write(Tablebase.MAGIC);
+			out.writeInt(key);
+			out.write(new byte[Tablebase.HEADER - 8]);
+			out.write(values);
+		}
+		if (!temp.renameTo(file)) throw new IOException("Can't rename " + temp);
+	}
+
+	//Main method
+	public static void main(String[] args) throws IOException {
+		int maxPieces = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+		File directory = new File(args.length > 1 ? args[1] : "endgame");
+		System.out.println("Building " + maxPieces + "-piece databases in " + directory + " on "
+				+ Runtime.getRuntime().availableProcessors() + " cores");
+		long start = System.nanoTime();
+		new TablebaseGenerator(directory).generate(maxPieces);
+		System.out.printf("Done in %.1f s%n", (System.nanoTime() - start) / 1e9);
+	}
+}
@@ -0,0 +1,423 @@
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A headless tool that plays matches between player configurations on every core: a round
+ * robin (everyone against everyone) or a gauntlet (the first player against each of the
+ * others). Every game starts from an opening of a pool of balanced positions, either read
+ * from a file or made of a few random moves whose shallow search score is close to even,
+ * and every opening is played twice with the colors swapped, so a lucky opening can't favor
+ * one side.
+ *
+ * Each match runs a sequential probability ratio test on the game pairs: H0 is that the
+ * first player is elo0 stronger than the second, H1 that it is elo1 stronger. The test uses
+ * the five possible results of a game pair (0, 0.5, 1, 1.5 or 2 points for the first
+ * player), which takes the correlation of the two games of an opening into account, and the
+ * normal approximation of the log-likelihood ratio. A match stops as soon as the ratio
+ * crosses a bound (or after the maximum number of games) and the whole run stops once every
+ * match is decided
+ *
+ * Usage: java Tournament -player spec -player spec [-player spec ...] [-gauntlet] [-games N]
+ *                        [-threads T] [-openings file] [-random-plies K] [-pool N] [-balance B]
+ *                        [-elo0 E0] [-elo1 E1] [-alpha A] [-beta B] [-seed S] [-quiet]
+ * where a player spec is any spec of Player.create, e.g. depth:6 or search:100:tuned.txt, and
+ * the openings file has one FEN per line (a SelfPlay positions file works too)
+ */
+public class Tournament {
+
+	//Constants
+	public static final int RUNNING = 0, H1 = 1, H0 = -1, UNDECIDED = 2;
+	private static final double[] PAIR_SCORES = { 0, 0.25, 0.5, 0.75, 1 };
+	private static final int BALANCE_DEPTH = 6;
+	//Every pair result starts with this count, so one-sided matches have a variance
+	private static final double PRIOR = 0.25;
+
+	//Fields
+	private final String[] specs;
+	private final Match[] matches;
+	private final Position[] openings;
+	private final int maxGames, threads;
+	private final double elo0, elo1, lower, upper, score0, score1;
+	private final long seed;
+	private final boolean quiet;
+	private final AtomicInteger gamesPlayed = new AtomicInteger();
+
+	/**
+	 * Constructs a tournament
+	 * @param specs the player specs
+	 * @param gauntlet true to play the first player against each of the others, false for a round robin
+	 * @param openings the starting positions; every one is played twice with the colors swapped
+	 * @param maxGames the most games of one match
+	 * @param threads the number of threads
+	 * @param elo0 the Elo difference of H0
+	 * @param elo1 the Elo difference of H1
+	 * @param alpha the chance of accepting H1 when H0 is true
+	 * @param beta the chance of accepting H0 when H1 is true
+	 * @param seed the random seed of the players
+	 * @param quiet true to print only the decisions and the totals
+	 * @throws IllegalArgumentException if there are less than two players or no openings
+	 */
+	public Tournament(String[] specs, boolean gauntlet, Position[] openings, int maxGames, int threads,
+			double elo0, double elo1, double alpha, double beta, long seed, boolean quiet) {
+		if (specs.length < 2) throw new IllegalArgumentException("A tournament needs two players or more");
+		if (openings.length == 0) throw new IllegalArgumentException("No openings");
+		this.specs = specs;
+		this.openings = openings;
+		this.maxGames = maxGames;
+		this.threads = threads;
+		this.seed = seed;
+		this.quiet = quiet;
+		this.elo0 = elo0;
+		this.elo1 = elo1;
+		lower = Math.log(beta / (1 - alpha));
+		upper = Math.log((1 - beta) / alpha);
+		score0 = expectedScore(elo0);
+		score1 = expectedScore(elo1);
+		List<Match> list = new ArrayList<Match>();
+		for (int i = 0; i < specs.length; i++)
+			for (int j = i + 1; j < specs.length; j++)
+				if (!gauntlet || i == 0) list.add(new Match(i, j));
+		matches = list.toArray(new Match[0]);
+	}
+
+	/**
+	 * Gets the expected score of a player with an Elo advantage
+	 * @param elo the Elo difference
+	 * @return the expected score, from 0 to 1
+	 */
+	static double expectedScore(double elo) {
+		return 1 / (1 + Math.pow(10, -elo / 400));
+	}
+
+	/**
+	 * Gets the Elo difference of an expected score
+	 * @param score the score, from 0 to 1
+	 * @return the Elo difference (infinite for a score of 0 or 1)
+	 */
+	static double elo(double score) {
+		return -400 * Math.log10(1 / score - 1);
+	}
+
+	/**
+	 * Makes a pool of balanced openings: positions after a few random moves from the start
+	 * whose shallow search score is close to even, without duplicates
+	 * @param count the number of openings
+	 * @param randomPlies the number of random moves
+	 * @param balance the largest score allowed, in hundredths of a man
+	 * @param seed the random seed
+	 * @return the openings
+	 * @throws IllegalStateException if too few balanced openings are found
+	 */
+	public static Position[] balancedOpenings(int count, int randomPlies, int balance, long seed) {
+		Random random = new Random(seed);
+		Search search = new Search(new Evaluator(), new TranspositionTable(8));
+		long[] moves = new long[Position.MAX_MOVES];
+		Set<Position> pool = new LinkedHashSet<Position>();
+		for (int tries = 0; pool.size() < count; tries++) {
+			if (tries >= count * 100) throw new IllegalStateException("Only " + pool.size() + " balanced openings found");
+			Position p = new Position();
+			int ply = 0;
+			for (int n; ply < randomPlies && (n = p.generateMoves(moves)) > 0; ply++) p.makeMove(moves[random.nextInt(n)]);
+			if (ply < randomPlies || !p.hasMoves() || pool.contains(p)) continue;
+			search.search(p, Long.MAX_VALUE, BALANCE_DEPTH);
+			if (Math.abs(search.getScore()) <= balance) pool.add(p);
+		}
+		return pool.toArray(new Position[0]);
+	}
+
+	/**
+	 * Reads openings from a file with one FEN per line. Anything after a ';' is ignored, so a
+	 * SelfPlay positions file can be used, and so are blank lines and lines starting with '#'
+	 * @param file the file name
+	 * @return the openings, without duplicates
+	 * @throws IOException if the file can't be read
+	 */
+	public static Position[] readOpenings(String file) throws IOException {
+		Set<Position> pool = new LinkedHashSet<Position>();
+		try (BufferedReader in = new BufferedReader(new FileReader(file))) {
+			for (String line; (line = in.readLine()) != null;) {
+				int end = line.indexOf(';');
+				String fen = (end < 0 ? line : line.substring(0, end)).trim();
+				if (fen.isEmpty() || fen.startsWith("#")) continue;
+				pool.add(Position.fromFen(fen));
+			}
+		}
+		return pool.toArray(new Position[0]);
+	}
+
+	/**
+	 * Plays one game from an opening
+	 * @param opening the starting position
+	 * @param black the black player
+	 * @param red the red player
+	 * @return the result, GameState.BLACK_WIN, RED_WIN or DRAW
+	 */
+	static int play(Position opening, Player black, Player red) {
+		GameState g = new GameState(opening);
+		while (g.getResult() == GameState.ONGOING) {
+			Position p = g.getPosition();
+			g.play((p.isBlackToMove() ? black : red).chooseMove(p));
+		}
+		return g.getResult();
+	}
+
+	/**
+	 * Gets the points of a game for a player, in half points
+	 * @param result the result of the game
+	 * @param black true if the player had black
+	 * @return 2 for a win, 1 for a draw and 0 for a loss
+	 */
+	private static int halfPoints(int result, boolean black) {
+		if (result == GameState.DRAW) return 1;
+		return (result == GameState.BLACK_WIN) == black ? 2 : 0;
+	}
+
+	/**
+	 * Plays every match on the thread pool until the tests decide, then prints the results.
+	 * Every game pair reseeds its players from the seed and the pair number, so a pair plays
+	 * the same games whatever thread it runs on. Players that search on several threads get
+	 * fewer pool threads, so the searches don't fight over the cores, and every player is
+	 * closed at the end
+	 * @throws InterruptedException if interrupted while waiting for the games
+	 * @throws ExecutionException if a game failed
+	 */
+	public void run() throws InterruptedException, ExecutionException {
+		final int poolThreads = Player.poolThreads(threads, specs);
+		if (poolThreads < threads) System.out.println("using " + poolThreads + " threads, so the search threads of the players don't outnumber the cores");
+		final List<Player> created = Collections.synchronizedList(new ArrayList<Player>());
+		final ThreadLocal<Player[]> players = new ThreadLocal<Player[]>() {
+			protected Player[] initialValue() {
+				Player[] all = new Player[specs.length];
+				for (int i = 0; i < all.length; i++) all[i] = Player.create(specs[i], seed + i);
+				Collections.addAll(created, all);
+				return all;
+			}
+		};
+		ExecutorService pool = Executors.newFixedThreadPool(poolThreads);
+		List<Future<?>> futures = new ArrayList<Future<?>>();
+		long start = System.nanoTime();
+		//The pairs are queued opening by opening, so all the matches move forward together
+		for (int k = 0; k < maxGames / 2; k++) {
+			final Position opening = openings[k % openings.length];
+			final long pairSeed = seed + 2L * k;
+			for (final Match m : matches) {
+				futures.add(pool.submit(new Runnable() {
+					public void run() {
+						if (m.decision != RUNNING) return;
+						Player[] all = players.get();
+						all[m.first].newGame(pairSeed);
+						all[m.second].newGame(~pairSeed);
+						int first = halfPoints(play(opening, all[m.first], all[m.second]), true);
+						all[m.first].newGame(pairSeed + 1);
+						all[m.second].newGame(~(pairSeed + 1));
+						int second = halfPoints(play(opening, all[m.second], all[m.first]), false);
+						gamesPlayed.addAndGet(2);
+						m.add(first, second);
+					}
+				}));
+			}
+		}
+		pool.shutdown();
+		try {
+			for (Future<?> f : futures) f.get();
+		}
+		finally {
+			pool.shutdownNow();
+			synchronized (created) {
+				for (Player player : created) player.close();
+			}
+		}
+		for (Match m : matches) m.finish();
+		printTotals((System.nanoTime() - start) / 1e9, poolThreads);
+	}
+
+	/**
+	 * Prints the result of every match and, for round robins, the points of every player
+	 * @param seconds the time taken by all the games
+	 * @param poolThreads the number of threads that played the games
+	 */
+	private void printTotals(double seconds, int poolThreads) {
+		System.out.printf("%d games, %d openings, %d threads, %.2f s, %.1f games/s%n", gamesPlayed.get(),
+				openings.length, poolThreads, seconds, gamesPlayed.get() / seconds);
+		System.out.printf("SPRT: elo0 %.1f, elo1 %.1f, bounds [%.2f, %.2f]%n", elo0, elo1, lower, upper);
+		for (Match m : matches) System.out.println(m.describe());
+		if (matches.length == 1) return;
+		int[] points = new int[specs.length], games = new int[specs.length];
+		for (Match m : matches) {
+			int n = m.wins + m.draws + m.losses;
+			points[m.first] += 2 * m.wins + m.draws;
+			points[m.second] += 2 * m.losses + m.draws;
+			games[m.first] += n;
+			games[m.second] += n;
+		}
+		System.out.println("standings:");
+		for (int i = 0; i < specs.length; i++)
+			System.out.printf("  %-24s %6.1f / %-6d %5.1f%%%n", specs[i], points[i] / 2.0, games[i],
+					games[i] == 0 ? 0 : 50.0 * points[i] / games[i]);
+	}
+
+	/**
+	 * A match between two players and its sequential probability ratio test
+	 */
+	private class Match {
+
+		private final int first, second;
+		private final int[] pairs = new int[PAIR_SCORES.length];
+		private int wins, draws, losses, late;
+		private double llr;
+		private volatile int decision = RUNNING;
+
+		/**
+		 * Constructs a match
+		 * @param first the index of the first player, the one the test is about
+		 * @param second the index of the second player
+		 */
+		Match(int first, int second) {
+			this.first = first;
+			this.second = second;
+		}
+
+		/**
+		 * Adds the result of a game pair and decides the test if a bound is crossed. A pair
+		 * that was already being played when the test was decided is only counted as late,
+		 * so the result is the one the test stopped on
+		 * @param black the half points of the first player with black
+		 * @param red the half points of the first player with red
+		 */
+		synchronized void add(int black, int red) {
+			if (decision != RUNNING) {
+				late++;
+				return;
+			}
+			for (int points : new int[] { black, red }) {
+				if (points == 2) wins++;
+				else if (points == 1) draws++;
+				else losses++;
+			}
+			pairs[black + red]++;
+			llr = logLikelihoodRatio();
+			if (llr >= upper) decision = H1;
+			else if (llr <= lower) decision = H0;
+			else return;
+			if (!quiet) System.out.println(specs[first] + " vs " + specs[second] + ": "
+					+ (decision == H1 ? "H1" : "H0") + " accepted after " + (wins + draws + losses) + " games");
+		}
+
+		/**
+		 * Marks the test as undecided if the games ran out before it crossed a bound
+		 */
+		synchronized void finish() {
+			if (decision == RUNNING) decision = UNDECIDED;
+		}
+
+		/**
+		 * Gets the number of game pairs
+		 * @return the number of pairs
+		 */
+		private int pairCount() {
+			int n = 0;
+			for (int c : pairs) n += c;
+			return n;
+		}
+
+		/**
+		 * Gets the number of game pairs with the prior added to every result
+		 * @return the weighted number of pairs
+		 */
+		private double weight() {
+			return pairCount() + PRIOR * pairs.length;
+		}
+
+		/**
+		 * Gets the mean score of the first player per game
+		 * @return the score, from 0 to 1
+		 */
+		private double mean() {
+			double sum = 0;
+			for (int i = 0; i < pairs.length; i++) sum += (pairs[i] + PRIOR) * PAIR_SCORES[i];
+			return sum / weight();
+		}
+
+		/**
+		 * Gets the variance of the pair scores
+		 * @return the variance of one pair
+		 */
+		private double variance() {
+			double mean = mean(), sum = 0;
+			for (int i = 0; i < pairs.length; i++) sum += (pairs[i] + PRIOR) * (PAIR_SCORES[i] - mean) * (PAIR_SCORES[i] - mean);
+			return sum / weight();
+		}
+
+		/**
+		 * Computes the log-likelihood ratio of H1 against H0 with the normal approximation
+		 * @return the ratio
+		 */
+		private double logLikelihoodRatio() {
+			return (score1 - score0) * (2 * mean() - score0 - score1) * pairCount() / (2 * variance());
+		}
+
+		/**
+		 * Describes the result of the match
+		 * @return the text, e.g. "depth:6 vs depth:4: +120 =260 -40, 60.0%, Elo +70.4 +/- 18.2, LLR 2.95 (H1), 3 late pairs ignored"
+		 */
+		synchronized String describe() {
+			StringBuilder sb = new StringBuilder(specs[first] + " vs " + specs[second] + ": ");
+			sb.append("+" + wins + " =" + draws + " -" + losses);
+			if (pairCount() == 0) return sb.toString();
+			double mean = mean(), margin = 1.96 * Math.sqrt(variance() / pairCount());
+			double high = Math.min(mean + margin, 1 - 1e-6), low = Math.max(mean - margin, 1e-6);
+			sb.append(String.format(", %.1f%%, Elo %+.1f +/- %.1f, LLR %.2f (%s)", 100 * mean, elo(mean),
+					(elo(high) - elo(low)) / 2, llr,
+					decision == H1 ? "H1" : decision == H0 ? "H0" : "undecided"));
+			if (late > 0) sb.append(", " + late + " late pairs ignored");
+			return sb.toString();
+		}
+	}
+
+	//Main method
+	public static void main(String[] args) throws IOException, InterruptedException, ExecutionException {
+		List<String> specs = new ArrayList<String>();
+		int games = 2000, threads = Runtime.getRuntime().availableProcessors(), randomPlies = 6, count = 256, balance = 30;
+		double elo0 = 0, elo1 = 20, alpha = 0.05, beta = 0.05;
+		String openingsFile = null;
+		long seed = 20200430L;
+		boolean gauntlet = false, quiet = false;
+		for (int i = 0; i < args.length; i++) {
+			switch (args[i]) {
+			case "-player": specs.add(args[++i]); break;
+			case "-gauntlet": gauntlet = true; break;
+			case "-games": games = Integer.parseInt(args[++i]); break;
+			case "-threads": threads = Integer.parseInt(args[++i]); break;
+			case "-openings": openingsFile = args[++i]; break;
+			case "-random-plies": randomPlies = Integer.parseInt(args[++i]); break;
+			case "-pool": count = Integer.parseInt(args[++i]); break;
+			case "-balance": balance = Integer.parseInt(args[++i]); break;
+			case "-elo0": elo0 = Double.parseDouble(args[++i]); break;
+			case "-elo1": elo1 = Double.parseDouble(args[++i]); break;
+			case "-alpha": alpha = Double.parseDouble(args[++i]); break;
+			case "-beta": beta = Double.parseDouble(args[++i]); break;
+			case "-seed": seed = Long.parseLong(args[++i]); break;
+			case "-quiet": quiet = true; break;
+			default: throw new IllegalArgumentException("Unknown option: " + args[i]);
+			}
+		}
+		//A bad spec fails here once instead of in every game
+		for (String spec : specs) Player.create(spec, seed).close();
+		Position[] openings = openingsFile != null ? readOpenings(openingsFile)
+				: balancedOpenings(count, randomPlies, balance, seed);
+		new Tournament(specs.toArray(new String[0]), gauntlet, openings, games, threads,
+				elo0, elo1, alpha, beta, seed, quiet).run();
+	}
+}
@@ -0,0 +1,165 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * A class that remembers the results of positions already searched, indexed by their
+ * Zobrist hash. The table is a fixed-size array of packed long entries that many threads
+ * can read and write at once without locks: every entry is stored as two longs, the data
+ * and the data XOR the hash, so an entry torn by two threads writing at once simply fails
+ * the hash check and is treated as a miss.
+ *
+ * Entries are grouped in buckets of four (one 64-byte cache line). A store replaces the
+ * entry of the same position if there is one, otherwise the entry with the least depth,
+ * where entries left over from older searches count as shallower
+ */
+public class TranspositionTable {
+
+	//Bound types
+	public static final int EXACT = 1, LOWER = 2, UPPER = 3;
+
+	//Constants
+	private static final int BUCKET = 4, ENTRY_BYTES = 16;
+	private static final VarHandle SLOT = MethodHandles.arrayElementVarHandle(long[].class);
+
+	//Data layout: move (16 bits) | score (21 bits) | depth (8 bits) | bound (2 bits) | age (8 bits)
+	private static final int SCORE_SHIFT = 16, DEPTH_SHIFT = 37, BOUND_SHIFT = 45, AGE_SHIFT = 47;
+	private static final int SCORE_BIAS = 1 << 20;
+
+	//Fields
+	private final long[] table;
+	private final int bucketMask;
+	private volatile int age;
+
+	/**
+	 * Constructs a table of a given size
+	 * @param megabytes the size of the table in MB (rounded down to a power of two number of buckets)
+	 */
+	public TranspositionTable(int megabytes) {
+		if (megabytes < 1) throw new IllegalArgumentException();
+		long buckets = Long.highestOneBit((long) megabytes * 1024 * 1024 / (BUCKET * ENTRY_BYTES));
+		buckets = Math.min(buckets, 1 << 26);
+		table = new long[(int) buckets * BUCKET * 2];
+		bucketMask = (int) buckets - 1;
+	}
+
+	/**
+	 * Starts a new search, so entries from older searches are replaced first
+	 */
+	public void newSearch() {
+		age = (age + 1) & 0xFF;
+	}
+
+	/**
+	 * Empties the table
+	 */
+	public void clear() {
+		for (int i = 0; i < table.length; i++) SLOT.setOpaque(table, i, 0L);
+	}
+
+	/**
+	 * Gets the size of the table
+	 * @return the number of entries
+	 */
+	public int capacity() {
+		return table.length / 2;
+	}
+
+	/**
+	 * Looks up a position
+	 * @param hash the Zobrist hash of the position
+	 * @return the packed entry data, or 0 if the position isn't in the table
+	 */
+	public long probe(long hash) {
+		int base = bucketIndex(hash);
+		for (int i = 0; i < BUCKET; i++) {
+			int slot = base + i * 2;
+			long check = (long) SLOT.getOpaque(table, slot), data = (long) SLOT.getOpaque(table, slot + 1);
+			if ((check ^ data) == hash && data != 0) return data;
+		}
+		return 0;
+	}
+
+	/**
+	 * Stores the result of a search
+	 * @param hash the Zobrist hash of the position
+	 * @param move the compact best move (see Move.compact), 0 if none
+	 * @param score the score
+	 * @param depth the depth searched
+	 * @param bound EXACT, LOWER (score is at least) or UPPER (score is at most)
+	 */
+	public void store(long hash, int move, int score, int depth, int bound) {
+		int base = bucketIndex(hash), replace = base, worst = Integer.MAX_VALUE, currentAge = age;
+		for (int i = 0; i < BUCKET; i++) {
+			int slot = base + i * 2;
+			long check = (long) SLOT.getOpaque(table, slot), data = (long) SLOT.getOpaque(table, slot + 1);
+			if ((check ^ data) == hash || data == 0) {
+				//Keep the old best move when the new result has none
+				if (move == 0 && data != 0) move = move(data);
+				replace = slot;
+				break;
+			}
+			int old = ((currentAge - age(data)) & 0xFF) * 4;
+			int value = depth(data) - old;
+			if (value < worst) { worst = value; replace = slot; }
+		}
+		long data = (move & 0xFFFFL) | ((long) (score + SCORE_BIAS) << SCORE_SHIFT)
+				| ((long) Math.max(0, Math.min(depth, 255)) << DEPTH_SHIFT) | ((long) bound << BOUND_SHIFT)
+				| ((long) currentAge << AGE_SHIFT);
+		SLOT.setOpaque(table, replace, data ^ hash);
+		SLOT.setOpaque(table, replace + 1, data);
+	}
+
+	/**
+	 * Gets the first slot of the bucket of a hash
+	 * @param hash the Zobrist hash
+	 * @return the index of the bucket in the array
+	 */
+	private int bucketIndex(long hash) {
+		return (int) ((hash >>> 32 ^ hash) & bucketMask) * BUCKET * 2;
+	}
+
+	/**
+	 * Gets the compact best move of an entry
+	 * @param data the packed entry data
+	 * @return the compact move
+	 */
+	public static int move(long data) {
+		return (int) data & 0xFFFF;
+	}
+
+	/**
+	 * Gets the score of an entry
+	 * @param data the packed entry data
+	 * @return the score
+	 */
+	public static int score(long data) {
+		return (int) (data >>> SCORE_SHIFT & 0x1FFFFF) - SCORE_BIAS;
+	}
+
+	/**
+	 * Gets the depth of an entry
+	 * @param data the packed entry data
+	 * @return the depth
+	 */
+	public static int depth(long data) {
+		return (int) (data >>> DEPTH_SHIFT) & 0xFF;
+	}
+
+	/**
+	 * Gets the bound type of an entry
+	 * @param data the packed entry data
+	 * @return EXACT, LOWER or UPPER
+	 */
+	public static int bound(long data) {
+		return (int) (data >>> BOUND_SHIFT) & 3;
+	}
+
+	/**
+	 * Gets the search age of an entry
+	 * @param data the packed entry data
+	 * @return the age
+	 */
+	private static int age(long data) {
+		return (int) (data >>> AGE_SHIFT) & 0xFF;
+	}
+}
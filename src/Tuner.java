@@ -0,0 +1,278 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * A command line tool that tunes the Evaluator weights on positions labeled with the result
+ * of their game (the "FEN;result" lines written by SelfPlay -positions, result 1 for a black
+ * win, 0.5 for a draw and 0 for a red win), the Texel way: the evaluation is turned into a
+ * win probability with a sigmoid, 1 / (1 + e^(-k * score)), and the weights are moved to
+ * make the mean squared error against the results as small as possible. The scaling k is
+ * fitted first to the starting weights, and the man weight stays at its value so the scores
+ * keep their scale.
+ *
+ * When a position is loaded only its features are kept, one byte each, with the result, so
+ * a position takes 7 bytes and a pass over all of them is a scan of one byte array, split
+ * over the threads. Positions where the side to move must capture are skipped by default,
+ * as their static score says little about them
+ *
+ * Usage: java Tuner [-threads T] [-iterations N] [-rate R] [-start weights] [-all]
+ *                   [-out weights] files...
+ */
+public class Tuner {
+
+	//Constants
+	private static final int F = Evaluator.FEATURES;
+	private static final double BETA1 = 0.9, BETA2 = 0.999, EPSILON = 1e-8;
+
+	//Fields
+	private byte[] features = new byte[1 << 20];
+	private byte[] results = new byte[(1 << 20) / F];
+	private int size, skipped;
+	private final boolean all;
+	private final ExecutorService pool;
+	private final int threads;
+
+	/**
+	 * Constructs a tuner
+	 * @param threads the number of threads
+	 * @param all true to keep positions where the side to move must capture
+	 */
+	public Tuner(int threads, boolean all) {
+		this.threads = threads;
+		this.all = all;
+		this.pool = Executors.newFixedThreadPool(threads);
+	}
+
+	/**
+	 * Loads the labeled positions of a file
+	 * @param file the file of "FEN;result" lines
+	 * @throws IOException if the file can't be read
+	 */
+	public void load(File file) throws IOException {
+		int[] values = new int[F];
+		try (BufferedReader in = new BufferedReader(new FileReader(file), 1 << 16)) {
+			for (String line = in.readLine(); line != null; line = in.readLine()) {
+				int semicolon = line.lastIndexOf(';');
+				if (semicolon < 0) {
+					skipped++;
+					continue;
+				}
+				Position p;
+				int result;
+				try {
+					p = Position.fromFen(line.substring(0, semicolon));
+					result = (int) Math.round(Double.parseDouble(line.substring(semicolon + 1).trim()) * 2);
+				}
+				catch (RuntimeException e) {
+					skipped++;
+					continue;
+				}
+				if (result < 0 || result > 2 || (!all && p.capturers(p.isBlackToMove()) != 0)) {
+					skipped++;
+					continue;
+				}
+				add(p, result, values);
+			}
+		}
+	}
+
+	/**
+	 * Adds a position
+	 * @param p the position
+	 * @param result the result of its game: 2 for a black win, 1 for a draw, 0 for a red win
+	 * @param values a buffer for the features
+	 */
+	private void add(Position p, int result, int[] values) {
+		if (size == results.length) {
+			byte[] longer = new byte[results.length * 2];
+			System.arraycopy(results, 0, longer, 0, size);
+			results = longer;
+			byte[] more = new byte[features.length * 2];
+			System.arraycopy(features, 0, more, 0, size * F);
+			features = more;
+		}
+		Evaluator.features(p, values);
+		for (int j = 0; j < F; j++) features[size * F + j] = (byte) Math.max(-128, Math.min(127, values[j]));
+		results[size++] = (byte) result;
+	}
+
+	/**
+	 * Gets the number of positions loaded
+	 * @return the number of positions
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Gets the number of lines that were not loaded
+	 * @return the number of lines
+	 */
+	public int getSkipped() {
+		return skipped;
+	}
+
+	/**
+	 * Computes the mean squared error of a set of weights, and its gradient, over every
+	 * position, splitting the positions over the threads
+	 * @param weights the weights
+	 * @param k the sigmoid scaling
+	 * @param gradient where to write the gradient, null if it isn't needed
+	 * @return the mean squared error
+	 */
+	public double error(double[] weights, double k, double[] gradient) {
+		List<Callable<double[]>> slices = new ArrayList<Callable<double[]>>();
+		for (int t = 0; t < threads; t++) {
+			final int from = (int) ((long) size * t / threads), to = (int) ((long) size * (t + 1) / threads);
+			slices.add(() -> slice(weights, k, from, to, gradient != null));
+		}
+		double[] total = new double[F + 1];
+		try {
+			for (Future<double[]> f : pool.invokeAll(slices)) {
+				double[] part = f.get();
+				for (int j = 0; j <= F; j++) total[j] += part[j];
+			}
+		}
+		catch (InterruptedException | ExecutionException e) {
+			throw new IllegalStateException(e);
+		}
+		if (gradient != null)
+			for (int j = 0; j < F; j++) gradient[j] = total[j + 1] * 2 * k / size;
+		return total[0] / size;
+	}
+
+	/**
+	 * Sums the squared errors, and the gradient terms, of a range of positions
+	 * @param weights the weights
+	 * @param k the sigmoid scaling
+	 * @param from the first position
+	 * @param to the position after the last
+	 * @param withGradient true to sum the gradient terms too
+	 * @return the sum of squared errors, followed by the gradient sums of every weight
+	 */
+	private double[] slice(double[] weights, double k, int from, int to, boolean withGradient) {
+		double[] sums = new double[F + 1];
+		byte[] x = features;
+		for (int i = from; i < to; i++) {
+			int base = i * F;
+			double score = 0;
+			for (int j = 0; j < F; j++) score += weights[j] * x[base + j];
+			double s = 1 / (1 + Math.exp(-k * score)), d = s - results[i] * 0.5;
+			sums[0] += d * d;
+			if (withGradient) {
+				double g = d * s * (1 - s);
+				for (int j = 0; j < F; j++) sums[j + 1] += g * x[base + j];
+			}
+		}
+		return sums;
+	}
+
+	/**
+	 * Finds the sigmoid scaling that fits a set of weights best, with a golden section
+	 * search over its logarithm
+	 * @param weights the weights
+	 * @return the scaling
+	 */
+	public double fitScaling(double[] weights) {
+		double lo = Math.log(1e-4), hi = Math.log(1e-1), ratio = (Math.sqrt(5) - 1) / 2;
+		double a = hi - ratio * (hi - lo), b = lo + ratio * (hi - lo);
+		double ea = error(weights, Math.exp(a), null), eb = error(weights, Math.exp(b), null);
+		for (int i = 0; i < 40; i++) {
+			if (ea < eb) {
+				hi = b; b = a; eb = ea;
+				a = hi - ratio * (hi - lo);
+				ea = error(weights, Math.exp(a), null);
+			}
+			else {
+				lo = a; a = b; ea = eb;
+				b = lo + ratio * (hi - lo);
+				eb = error(weights, Math.exp(b), null);
+			}
+		}
+		return Math.exp((lo + hi) / 2);
+	}
+
+	/**
+	 * Tunes the weights with Adam gradient descent, keeping the man weight fixed
+	 * @param start the starting weights
+	 * @param iterations the number of passes over the positions
+	 * @param rate the learning rate, in hundredths of a man per step
+	 * @return the tuned weights
+	 */
+	public int[] tune(int[] start, int iterations, double rate) {
+		double[] weights = new double[F], gradient = new double[F], m = new double[F], v = new double[F];
+		for (int j = 0; j < F; j++) weights[j] = start[j];
+		double k = fitScaling(weights);
+		System.out.printf("%d positions, k = %.6f, error %.6f%n", size, k, error(weights, k, null));
+		for (int t = 1; t <= iterations; t++) {
+			double e = error(weights, k, gradient);
+			for (int j = 0; j < F; j++) {
+				if (j == Evaluator.MAN) continue;
+				m[j] = BETA1 * m[j] + (1 - BETA1) * gradient[j];
+				v[j] = BETA2 * v[j] + (1 - BETA2) * gradient[j] * gradient[j];
+				double mHat = m[j] / (1 - Math.pow(BETA1, t)), vHat = v[j] / (1 - Math.pow(BETA2, t));
+				weights[j] -= rate * mHat / (Math.sqrt(vHat) + EPSILON);
+			}
+			if (t % 50 == 0 || t == iterations) System.out.printf("iteration %d: error %.6f%n", t, e);
+		}
+		int[] tuned = new int[F];
+		for (int j = 0; j < F; j++) tuned[j] = (int) Math.round(weights[j]);
+		return tuned;
+	}
+
+	/**
+	 * Stops the threads
+	 */
+	public void close() {
+		pool.shutdown();
+	}
+
+	//Main method
+	public static void main(String[] args) throws IOException {
+		int threads = Runtime.getRuntime().availableProcessors(), iterations = 500;
+		double rate = 0.5;
+		boolean all = false;
+		String start = null, output = null;
+		List<File> files = new ArrayList<File>();
+		for (int i = 0; i < args.length; i++) {
+			switch (args[i]) {
+			case "-threads": threads = Integer.parseInt(args[++i]); break;
+			case "-iterations": iterations = Integer.parseInt(args[++i]); break;
+			case "-rate": rate = Double.parseDouble(args[++i]); break;
+			case "-start": start = args[++i]; break;
+			case "-all": all = true; break;
+			case "-out": output = args[++i]; break;
+			default:
+				if (args[i].startsWith("-")) throw new IllegalArgumentException("Unknown option: " + args[i]);
+				files.add(new File(args[i]));
+			}
+		}
+		if (files.isEmpty()) throw new IllegalArgumentException("No position files given");
+		Tuner tuner = new Tuner(threads, all);
+		long begin = System.nanoTime();
+		for (File f : files) tuner.load(f);
+		System.out.printf("Loaded %d positions (%d lines skipped) in %.1f s%n", tuner.size(), tuner.getSkipped(),
+				(System.nanoTime() - begin) / 1e9);
+		Evaluator initial = start == null ? new Evaluator() : Evaluator.load(new File(start));
+		begin = System.nanoTime();
+		Evaluator tuned = new Evaluator(tuner.tune(initial.getWeights(), iterations, rate));
+		System.out.printf("Tuned in %.1f s%n", (System.nanoTime() - begin) / 1e9);
+		tuner.close();
+		try (Writer out = output == null ? new OutputStreamWriter(System.out) : new BufferedWriter(new FileWriter(output))) {
+			tuned.write(out);
+		}
+	}
+}
@@ -0,0 +1,296 @@
+import java.util.Arrays;
+
+/**
+ * A class that describes the board and rules of a draughts variant: the size of the board,
+ * how many rows of men each side starts with, whether kings fly (move and capture along a
+ * whole diagonal), whether men capture backward and whether the capture that takes the most
+ * checkers is mandatory. A man that reaches the crowning row in the middle of a capture stops
+ * there when men only capture forward (English rules) and jumps on as a man otherwise
+ * (international rules).
+ *
+ * The dark squares are numbered like Position does for 8x8 boards, row by row from the top
+ * (square = row * size / 2 + col / 2), but DraughtsPosition keeps them in bitboards with one
+ * unused "ghost" bit after every second row. With the ghost bits every diagonal step is the
+ * same shift on every row (size / 2 or size / 2 + 1), and a step off the left or right edge
+ * lands on a ghost bit, which is never part of the board, so move generation is a few shifts
+ * and masks on 64-bit words. A 10x10 board takes 54 bits; 12x12 boards don't fit
+ */
+public class Variant {
+
+	//Constants
+	public static final int DIRECTIONS = 4, MIN_SIZE = 4, MAX_SIZE = 10;
+	public static final Variant ENGLISH = new Variant("english", 8, 3, false, false, false);
+	public static final Variant INTERNATIONAL = new Variant("international", 10, 4, true, true, true);
+	public static final Variant BRAZILIAN = new Variant("brazilian", 8, 3, true, true, true);
+	public static final Variant[] PRESETS = { ENGLISH, INTERNATIONAL, BRAZILIAN };
+
+	//Fields
+	private final String name;
+	private final int size, rows, half;
+	private final boolean flyingKings, menCaptureBackward, maxCapture;
+	private final int[] bits, squares;
+	private final long board, blackKingRow, redKingRow;
+	private final int[] shifts;
+	private final long[] neighbors, rays;
+
+	/**
+	 * Constructs a variant
+	 * @param name the name of the variant
+	 * @param size the number of rows and columns (even, from 4 to 10)
+	 * @param rows the number of rows of men each side starts with
+	 * @param flyingKings true if kings move and capture along whole diagonals
+	 * @param menCaptureBackward true if men capture backward as well as forward
+	 * @param maxCapture true if the capture that takes the most checkers is mandatory
+	 */
+	public Variant(String name, int size, int rows, boolean flyingKings, boolean menCaptureBackward, boolean maxCapture) {
+		if (size < MIN_SIZE || size > MAX_SIZE || size % 2 != 0)
+			throw new IllegalArgumentException("The board size must be even and from " + MIN_SIZE + " to " + MAX_SIZE);
+		if (rows < 1 || 2 * rows >= size) throw new IllegalArgumentException("Bad number of rows of men: " + rows);
+		this.name = name;
+		this.size = size;
+		this.rows = rows;
+		this.half = size / 2;
+		this.flyingKings = flyingKings;
+		this.menCaptureBackward = menCaptureBackward;
+		this.maxCapture = maxCapture;
+		int count = size * half;
+		bits = new int[count];
+		squares = new int[64];
+		Arrays.fill(squares, -1);
+		long all = 0, blackRow = 0, redRow = 0;
+		for (int sq = 0; sq < count; sq++) {
+			int row = sq / half;
+			bits[sq] = sq + row / 2;
+			squares[bits[sq]] = sq;
+			all |= 1L << bits[sq];
+			if (row == size - 1) blackRow |= 1L << bits[sq];
+			if (row == 0) redRow |= 1L << bits[sq];
+		}
+		board = all;
+		blackKingRow = blackRow;
+		redKingRow = redRow;
+		//Directions 0 down-left, 1 down-right, 2 up-left and 3 up-right, as in Position.step
+		shifts = new int[] { half, half + 1, -(half + 1), -half };
+		neighbors = new long[DIRECTIONS * 64];
+		rays = new long[DIRECTIONS * 64];
+		for (int dir = 0; dir < DIRECTIONS; dir++)
+			for (int sq = 0; sq < count; sq++) {
+				long ray = 0, b = step(1L << bits[sq], dir);
+				neighbors[index(dir, bits[sq])] = b;
+				for (; b != 0; b = step(b, dir)) ray |= b;
+				rays[index(dir, bits[sq])] = ray;
+			}
+	}
+
+	/**
+	 * Gets a preset variant by name, optionally played on another board size, e.g.
+	 * "international" or "international:8"
+	 * @param spec the name, and the size after a colon
+	 * @return the variant
+	 * @throws IllegalArgumentException if the name or the size is unknown
+	 */
+	public static Variant forName(String spec) {
+		String[] parts = spec.split(":");
+		for (Variant v : PRESETS) {
+			if (!v.name.equals(parts[0])) continue;
+			if (parts.length == 1) return v;
+			int size = Integer.parseInt(parts[1]);
+			if (size == v.size) return v;
+			return new Variant(v.name + ":" + size, size, (size - 2) / 2, v.flyingKings, v.menCaptureBackward, v.maxCapture);
+		}
+		throw new IllegalArgumentException("Unknown variant: " + spec);
+	}
+
+	/**
+	 * Steps every checker of a bitboard one square in a direction
+	 * @param b the bitboard
+	 * @param dir the direction
+	 * @return the bitboard of the squares stepped to (those off the board are dropped)
+	 */
+	long step(long b, int dir) {
+		int shift = shifts[dir];
+		return (shift > 0 ? b << shift : b >>> -shift) & board;
+	}
+
+	/**
+	 * Gets the table index of a bit and direction
+	 * @param dir the direction
+	 * @param bit the bit of the square
+	 * @return the index
+	 */
+	static int index(int dir, int bit) {
+		return dir << 6 | bit;
+	}
+
+	/**
+	 * Gets the square one step away from a square
+	 * @param dir the direction
+	 * @param bit the bit of the square
+	 * @return the bitboard of the neighbor, or 0 off the board
+	 */
+	long neighbor(int dir, int bit) {
+		return neighbors[index(dir, bit)];
+	}
+
+	/**
+	 * Gets every square along a diagonal from a square, the square itself left out
+	 * @param dir the direction
+	 * @param bit the bit of the square
+	 * @return the bitboard of the ray
+	 */
+	long ray(int dir, int bit) {
+		return rays[index(dir, bit)];
+	}
+
+	/**
+	 * Finds the checker nearest to a square along a ray
+	 * @param dir the direction of the ray
+	 * @param blockers the checkers on the ray (not 0)
+	 * @return the bit of the nearest one
+	 */
+	static int nearest(int dir, long blockers) {
+		//Down the board the bits grow, up the board they shrink
+		return dir < 2 ? Long.numberOfTrailingZeros(blockers) : 63 - Long.numberOfLeadingZeros(blockers);
+	}
+
+	/**
+	 * Gets the bit of a square
+	 * @param square the square number (0 index)
+	 * @return the bit
+	 */
+	public int bit(int square) {
+		return bits[square];
+	}
+
+	/**
+	 * Gets the square of a bit
+	 * @param bit the bit
+	 * @return the square number, or -1 for a ghost bit
+	 */
+	public int square(int bit) {
+		return squares[bit];
+	}
+
+	/**
+	 * Gets the square number of a dark square
+	 * @param row the row (0 index)
+	 * @param col the column (0 index)
+	 * @return the square number, or -1 if the square is light
+	 */
+	public int square(int row, int col) {
+		return (row + col) % 2 == 1 ? row * half + col / 2 : -1;
+	}
+
+	/**
+	 * Gets the row of a square
+	 * @param square the square number
+	 * @return the row
+	 */
+	public int row(int square) {
+		return square / half;
+	}
+
+	/**
+	 * Gets the column of a square
+	 * @param square the square number
+	 * @return the column
+	 */
+	public int col(int square) {
+		int row = square / half;
+		return (square % half) * 2 + (row % 2 == 0 ? 1 : 0);
+	}
+
+	/**
+	 * Builds the starting board
+	 * @return the status of every square by rows and columns (e, b or r)
+	 */
+	public char[][] initialBoardStatus() {
+		char[][] status = new char[size][size];
+		for (int row = 0; row < size; row++)
+			for (int col = 0; col < size; col++) {
+				status[row][col] = 'e';
+				if ((row + col) % 2 == 0) continue;
+				if (row < rows) status[row][col] = 'b';
+				if (row >= size - rows) status[row][col] = 'r';
+			}
+		return status;
+	}
+
+	/**
+	 * Gets the name of the variant
+	 * @return the name
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Gets the number of rows and columns of the board
+	 * @return the size
+	 */
+	public int getSize() {
+		return size;
+	}
+
+	/**
+	 * Gets the number of dark squares
+	 * @return the number of squares
+	 */
+	public int getSquares() {
+		return bits.length;
+	}
+
+	/**
+	 * Gets the number of checkers each side starts with
+	 * @return the number of checkers
+	 */
+	public int getCheckers() {
+		return rows * half;
+	}
+
+	/**
+	 * Gets the bitboard of every dark square
+	 * @return the bitboard
+	 */
+	public long getBoard() {
+		return board;
+	}
+
+	/**
+	 * Gets the row where the men of a side are crowned
+	 * @param black true for black, false for red
+	 * @return the bitboard of the row
+	 */
+	public long getKingRow(boolean black) {
+		return black ? blackKingRow : redKingRow;
+	}
+
+	/**
+	 * Checks if kings fly
+	 * @return true if kings move and capture along whole diagonals
+	 */
+	public boolean hasFlyingKings() {
+		return flyingKings;
+	}
+
+	/**
+	 * Checks if men capture backward
+	 * @return true if men capture backward as well as forward
+	 */
+	public boolean menCaptureBackward() {
+		return menCaptureBackward;
+	}
+
+	/**
+	 * Checks if the capture that takes the most checkers is mandatory
+	 * @return true if it is
+	 */
+	public boolean hasMaxCapture() {
+		return maxCapture;
+	}
+
+	@Override
+	public String toString() {
+		return name + " (" + size + "x" + size + ")";
+	}
+}
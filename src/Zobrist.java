@@ -0,0 +1,77 @@
+/**
+ * A class of the random keys that give every position a 64-bit Zobrist hash. The hash of a
+ * position is the XOR of the keys of every checker on its square, plus the side key when
+ * it's red turn, so a move only needs to XOR the keys of the squares it changes
+ */
+public final class Zobrist {
+
+	//Piece types used to index the keys
+	public static final int BLACK_MAN = 0, BLACK_KING = 1, RED_MAN = 2, RED_KING = 3;
+
+	private static final long[][] KEYS = new long[4][Position.SQUARES];
+	public static final long RED_TO_MOVE;
+
+	static {
+		//A fixed seed so hashes (and opening books keyed by them) are the same in every run
+		long seed = 0x436865636B657273L;
+		for (int type = 0; type < 4; type++)
+			for (int sq = 0; sq < Position.SQUARES; sq++)
+				KEYS[type][sq] = seed = next(seed);
+		RED_TO_MOVE = next(seed);
+	}
+
+	private Zobrist() {}
+
+	/**
+	 * Steps the SplitMix64 generator
+	 * @param seed the previous value
+	 * @return the next value
+	 */
+	private static long next(long seed) {
+		long z = seed + 0x9E3779B97F4A7C15L;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	/**
+	 * Gets the key of a checker on a square
+	 * @param type the piece type (BLACK_MAN, BLACK_KING, RED_MAN or RED_KING)
+	 * @param square the square index
+	 * @return the key
+	 */
+	public static long key(int type, int square) {
+		return KEYS[type][square];
+	}
+
+	/**
+	 * Gets the piece type of a checker
+	 * @param black true for a black checker
+	 * @param king true for a king
+	 * @return the piece type
+	 */
+	public static int type(boolean black, boolean king) {
+		return (black ? 0 : 2) + (king ? 1 : 0);
+	}
+
+	/**
+	 * Computes the hash of a position from scratch
+	 * @param black the squares that hold black checkers
+	 * @param red the squares that hold red checkers
+	 * @param kings the squares that hold kings
+	 * @param blackToMove true if it's black turn
+	 * @return the hash
+	 */
+	public static long hash(int black, int red, int kings, boolean blackToMove) {
+		long h = blackToMove ? 0 : RED_TO_MOVE;
+		for (int b = black; b != 0; b &= b - 1) {
+			int sq = Integer.numberOfTrailingZeros(b);
+			h ^= KEYS[(kings & (1 << sq)) != 0 ? BLACK_KING : BLACK_MAN][sq];
+		}
+		for (int b = red; b != 0; b &= b - 1) {
+			int sq = Integer.numberOfTrailingZeros(b);
+			h ^= KEYS[(kings & (1 << sq)) != 0 ? RED_KING : RED_MAN][sq];
+		}
+		return h;
+	}
+}